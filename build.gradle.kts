@@ -14,6 +14,9 @@ repositories {
 dependencies {
     // Gson for JSON parsing
     implementation("com.google.code.gson:gson:2.10.1")
+
+    // 单元测试
+    testImplementation("junit:junit:4.13.2")
 }
 
 // 配置 IntelliJ Platform Plugin
@@ -4,7 +4,6 @@ import com.github.annotations.services.AnnotationService;
 import com.github.annotations.services.MappingLibraryService;
 import com.github.annotations.ui.AddAnnotationDialog;
 import com.github.annotations.utils.I18nUtils;
-import com.intellij.ide.projectView.ProjectView;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.CommonDataKeys;
@@ -104,28 +103,19 @@ public class AddAnnotationAction extends AnAction {
                 return;
             }
             
-
-            
-            for (VirtualFile file : files) {
-                String relativePath = getRelativePath(project, file);
-                if (relativePath != null) {
-                    if (file.isDirectory()) {
-                        annotationService.setPackageAnnotation(relativePath, annotation, selectedColor);
-                    } else {
-                        annotationService.setAnnotation(relativePath, annotation, selectedColor);
+            // 批量写入，只保存一次并只刷新一次项目视图
+            annotationService.applyBatch(batch -> {
+                for (VirtualFile file : files) {
+                    String relativePath = getRelativePath(project, file);
+                    if (relativePath != null) {
+                        if (file.isDirectory()) {
+                            batch.setPackageAnnotation(relativePath, annotation, selectedColor);
+                        } else {
+                            batch.setAnnotation(relativePath, annotation, selectedColor);
+                        }
                     }
                 }
-            }
-            
-            // 保存后立即刷新VFS和项目视图（修复多选文件不刷新问题）
-            try {
-                java.lang.reflect.Method refreshMethod = annotationService.getClass().getDeclaredMethod("refreshAfterSave");
-                refreshMethod.setAccessible(true);
-                refreshMethod.invoke(annotationService);
-            } catch (Exception ex) {
-                // 如果反射失败，使用备用刷新方法
-                ProjectView.getInstance(project).refresh();
-            }
+            });
         }
     }
     
@@ -1,6 +1,7 @@
 package com.github.annotations.actions;
 
 import com.github.annotations.services.AnnotationService;
+import com.github.annotations.services.PluginTaskScheduler;
 import com.github.annotations.ui.ExtractCommentDialog;
 import com.github.annotations.utils.I18nUtils;
 import com.intellij.notification.Notification;
@@ -77,7 +78,7 @@ public class ExtractCommentAnnotationAction extends AnAction {
         }
         
         // 在后台线程中提取注释内容
-        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+        PluginTaskScheduler.getInstance().execute("extract-comments", project, () -> {
             List<VirtualFile> javaFiles = collectJavaFiles(files);
             Map<VirtualFile, String> extractedComments = new HashMap<>();
             
@@ -106,17 +107,15 @@ public class ExtractCommentAnnotationAction extends AnAction {
                     // 保存所有提取的注释
                     AnnotationService service = AnnotationService.getInstance(project);
                     if (service != null) {
-                        int successCount = 0;
-                        for (Map.Entry<VirtualFile, String> entry : extractedComments.entrySet()) {
-                            VirtualFile file = entry.getKey();
-                            String comment = entry.getValue();
-                            String relativePath = getRelativePath(project, file);
-                            
-                            if (relativePath != null) {
-                                service.setAnnotationAndRefresh(relativePath, comment, selectedColor);
-                                successCount++;
+                        // 批量写入，只保存一次并只刷新一次项目视图
+                        int successCount = service.applyBatch(batch -> {
+                            for (Map.Entry<VirtualFile, String> entry : extractedComments.entrySet()) {
+                                String relativePath = getRelativePath(project, entry.getKey());
+                                if (relativePath != null) {
+                                    batch.setAnnotation(relativePath, entry.getValue(), selectedColor);
+                                }
                             }
-                        }
+                        });
                         
                         // 显示成功通知
                         showNotification(project, successCount, javaFiles.size());
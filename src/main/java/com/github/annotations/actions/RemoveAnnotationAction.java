@@ -2,7 +2,6 @@ package com.github.annotations.actions;
 
 import com.github.annotations.services.AnnotationService;
 import com.github.annotations.utils.I18nUtils;
-import com.intellij.ide.projectView.ProjectView;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.CommonDataKeys;
@@ -84,46 +83,20 @@ public class RemoveAnnotationAction extends AnAction {
         );
         
         if (result == Messages.YES) {
-            int deletedCount = 0;
-            
-            for (VirtualFile file : files) {
-                String relativePath = getRelativePath(project, file);
-                if (relativePath != null) {
+            // 批量删除，只保存一次并只刷新一次项目视图
+            annotationService.applyBatch(batch -> {
+                for (VirtualFile file : files) {
+                    String relativePath = getRelativePath(project, file);
+                    String path = relativePath != null ? relativePath : file.getPath();
                     if (file.isDirectory()) {
-                        if (annotationService.hasPackageAnnotation(relativePath)) {
-                            annotationService.removePackageAnnotation(relativePath);
-                            deletedCount++;
-                        }
-                    } else {
-                        if (annotationService.hasAnnotation(relativePath)) {
-                            annotationService.removeAnnotation(relativePath);
-                            deletedCount++;
-                        }
-                    }
-                } else {
-                    if (file.isDirectory()) {
-                        if (annotationService.hasPackageAnnotation(file.getPath())) {
-                            annotationService.removePackageAnnotation(file.getPath());
-                            deletedCount++;
-                        }
-                    } else {
-                        if (annotationService.hasAnnotation(file.getPath())) {
-                            annotationService.removeAnnotation(file.getPath());
-                            deletedCount++;
+                        if (annotationService.hasPackageAnnotation(path)) {
+                            batch.removePackageAnnotation(path);
                         }
+                    } else if (annotationService.hasAnnotation(path)) {
+                        batch.removeAnnotation(path);
                     }
                 }
-            }
-            
-            // 使用AnnotationService的刷新机制，确保JSON文件和UI同步更新
-            try {
-                java.lang.reflect.Method refreshMethod = annotationService.getClass().getDeclaredMethod("refreshAfterSave");
-                refreshMethod.setAccessible(true);
-                refreshMethod.invoke(annotationService);
-            } catch (Exception ex) {
-                // 如果反射调用失败，回退到基本的项目视图刷新
-                ProjectView.getInstance(project).refresh();
-            }
+            });
         }
     }
 
@@ -161,29 +134,16 @@ public class RemoveAnnotationAction extends AnAction {
         
         if (result == Messages.YES) {
             String relativePath = getRelativePath(project, file);
-            if (relativePath != null) {
-                if (file.isDirectory()) {
-                    annotationService.removePackageAnnotation(relativePath);
-                } else {
-                    annotationService.removeAnnotation(relativePath);
-                }
-            } else {
+            String path = relativePath != null ? relativePath : file.getPath();
+            
+            // 通过批量接口删除，只刷新该节点
+            annotationService.applyBatch(batch -> {
                 if (file.isDirectory()) {
-                    annotationService.removePackageAnnotation(file.getPath());
+                    batch.removePackageAnnotation(path);
                 } else {
-                    annotationService.removeAnnotation(file.getPath());
+                    batch.removeAnnotation(path);
                 }
-            }
-            
-            // 使用AnnotationService的刷新机制，确保JSON文件和UI同步更新
-            try {
-                java.lang.reflect.Method refreshMethod = annotationService.getClass().getDeclaredMethod("refreshAfterSave");
-                refreshMethod.setAccessible(true);
-                refreshMethod.invoke(annotationService);
-            } catch (Exception ex) {
-                // 如果反射调用失败，回退到基本的项目视图刷新
-                ProjectView.getInstance(project).refresh();
-            }
+            });
         }
     }
     
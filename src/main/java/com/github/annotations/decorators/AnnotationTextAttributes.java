@@ -0,0 +1,58 @@
+package com.github.annotations.decorators;
+
+import com.github.annotations.utils.AnnotationColors;
+import com.intellij.ui.SimpleTextAttributes;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 备注文本属性缓存
+ * 同一颜色共享同一个 SimpleTextAttributes，重绘项目树时不再为每个节点创建 Color 和文本属性
+ * 颜色的解析和无效颜色的警告由 AnnotationColors 负责，无效颜色使用默认颜色
+ */
+public final class AnnotationTextAttributes {
+
+    // 缓存上限，超出后整体清空（实际使用的颜色通常只有几种）
+    private static final int MAX_ENTRIES = 256;
+
+    /**
+     * 默认的备注文本属性：斜体浅灰色 #BBBBBB
+     */
+    public static final SimpleTextAttributes DEFAULT =
+        new SimpleTextAttributes(SimpleTextAttributes.STYLE_ITALIC, new Color(187, 187, 187));
+
+    // 颜色字符串 -> 文本属性，无效颜色映射到 DEFAULT
+    private static final Map<String, SimpleTextAttributes> CACHE = new ConcurrentHashMap<>();
+
+    private AnnotationTextAttributes() {
+    }
+
+    /**
+     * 获取颜色对应的文本属性，颜色为空或无效时返回 DEFAULT
+     */
+    @NotNull
+    public static SimpleTextAttributes forColor(@Nullable String colorHex) {
+        if (colorHex == null) {
+            return DEFAULT;
+        }
+        SimpleTextAttributes cached = CACHE.get(colorHex);
+        if (cached != null) {
+            return cached;
+        }
+
+        Color color = AnnotationColors.parse(colorHex);
+        SimpleTextAttributes attributes = color != null
+            ? new SimpleTextAttributes(SimpleTextAttributes.STYLE_ITALIC, color)
+            : DEFAULT;
+
+        if (CACHE.size() >= MAX_ENTRIES) {
+            CACHE.clear();
+        }
+        SimpleTextAttributes existing = CACHE.putIfAbsent(colorHex, attributes);
+        return existing != null ? existing : attributes;
+    }
+}
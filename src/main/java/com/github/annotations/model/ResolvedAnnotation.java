@@ -0,0 +1,76 @@
+package com.github.annotations.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * 一次解析得到的节点备注
+ * 同时携带备注文本、来源层、字体颜色和命中的规则，
+ * 装饰器无需再通过比较备注文本反推来源和颜色
+ */
+public final class ResolvedAnnotation {
+    
+    /**
+     * 备注来源层，按解析优先级排列
+     */
+    public enum Source {
+        LIVE,                   // 正在编辑的映射文件（实时缓存）
+        USER_FILE,              // 用户文件备注
+        USER_PACKAGE,           // 用户包备注
+        USER_FILE_MATCH,        // 用户文件匹配模式
+        USER_PACKAGE_MATCH,     // 用户包匹配模式
+        BUILTIN_FILE,           // 内置文件映射
+        BUILTIN_PACKAGE,        // 内置包映射
+        BUILTIN_FILE_MATCH,     // 内置文件匹配模式
+        BUILTIN_PACKAGE_MATCH   // 内置包匹配模式
+    }
+    
+    private final String text;
+    private final Source source;
+    private final String textColor;
+    private final String matchedRule;
+    
+    public ResolvedAnnotation(@NotNull String text, @NotNull Source source, @Nullable String textColor, @Nullable String matchedRule) {
+        this.text = text;
+        this.source = source;
+        this.textColor = textColor;
+        this.matchedRule = matchedRule;
+    }
+    
+    /**
+     * 备注文本
+     */
+    @NotNull
+    public String getText() {
+        return text;
+    }
+    
+    /**
+     * 备注来源层
+     */
+    @NotNull
+    public Source getSource() {
+        return source;
+    }
+    
+    /**
+     * 备注字体颜色，未配置时为null（使用默认颜色）
+     */
+    @Nullable
+    public String getTextColor() {
+        return textColor;
+    }
+    
+    /**
+     * 命中的规则：精确映射为相对路径或名称，模式映射为模式本身，未知时为null
+     */
+    @Nullable
+    public String getMatchedRule() {
+        return matchedRule;
+    }
+    
+    @Override
+    public String toString() {
+        return source + ":" + matchedRule + " -> " + text;
+    }
+}
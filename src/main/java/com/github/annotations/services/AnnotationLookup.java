@@ -0,0 +1,44 @@
+package com.github.annotations.services;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * 备注查询接口
+ * 由 AnnotationService 和 RealTimeAnnotationService 实现，
+ * 装饰器通过该接口直接查询备注和颜色，不再依赖反射
+ * 所有路径均为相对于项目根目录、使用 / 分隔的路径
+ */
+public interface AnnotationLookup {
+    
+    /**
+     * 获取文件备注
+     */
+    @Nullable
+    String getFileAnnotation(@NotNull String filePath);
+    
+    /**
+     * 获取包/目录备注
+     */
+    @Nullable
+    String getPackageAnnotation(@NotNull String packagePath);
+    
+    /**
+     * 获取文件备注字体颜色
+     */
+    @Nullable
+    String getFileTextColor(@NotNull String filePath);
+    
+    /**
+     * 获取包备注字体颜色
+     */
+    @Nullable
+    String getPackageTextColor(@NotNull String packagePath);
+    
+    /**
+     * 是否可能包含备注，返回 false 时调用方可以跳过按路径查询
+     */
+    default boolean hasAnnotations() {
+        return true;
+    }
+}
@@ -0,0 +1,1148 @@
+package com.github.annotations.services;
+
+import com.github.annotations.utils.PinyinUtils;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 备注搜索索引（项目服务）
+ * 按备注文本建立倒排索引：拉丁字母和数字按单词切分，中日韩文字按相邻两字切分；
+ * 模式规则和内置文件名映射对应的项目路径在后台通过 ProjectFileNameIndex 展开，搜索时用倒排表跳过不可能包含查询的备注
+ * 搜索按前缀、驼峰、拼音首字母、子序列和编辑距离对备注和路径打分，只保留得分最高的前 N 条；
+ * 打分前先用倒排表和二元组索引选出候选，子序列和编辑距离只在前几档结果不足时计算
+ * 索引随 AnnotationService 的版本号和文件名索引的修改计数失效，过期时在后台重建
+ */
+public class AnnotationSearchIndex {
+
+    private static final Logger LOG = Logger.getInstance(AnnotationSearchIndex.class);
+
+    /**
+     * 搜索结果来源层，按显示优先级排列
+     */
+    public enum Layer {
+        USER_FILE("用户文件映射"),
+        USER_PACKAGE("用户包映射"),
+        USER_FILE_MATCH("用户文件匹配映射"),
+        USER_PACKAGE_MATCH("用户包匹配映射"),
+        BUILTIN_FILE("内置文件映射"),
+        BUILTIN_PACKAGE("内置包映射"),
+        BUILTIN_FILE_MATCH("内置文件匹配映射"),
+        BUILTIN_PACKAGE_MATCH("内置包匹配映射");
+
+        public final String label;
+
+        Layer(String label) {
+            this.label = label;
+        }
+
+        public boolean isUser() {
+            return ordinal() <= USER_PACKAGE_MATCH.ordinal();
+        }
+    }
+
+    /**
+     * 单条搜索结果
+     */
+    public static final class Hit {
+        public final String path;
+        public final String annotation;
+        public final Layer layer;
+        // 相关度得分，越高越相关
+        public final int score;
+
+        Hit(@NotNull String path, @NotNull String annotation, @NotNull Layer layer, int score) {
+            this.path = path;
+            this.annotation = annotation;
+            this.layer = layer;
+            this.score = score;
+        }
+    }
+
+    /**
+     * 一次搜索的结果：按相关度排列的前 N 条及匹配总数
+     */
+    public static final class Results {
+        public final List<Hit> hits;
+        public final int matched;
+        // 是否统计了所有匹配；前 N 条已确定时不再统计只有模糊匹配的条目，matched 只是下限
+        public final boolean complete;
+
+        Results(@NotNull List<Hit> hits, int matched, boolean complete) {
+            this.hits = hits;
+            this.matched = matched;
+            this.complete = complete;
+        }
+
+        /**
+         * 是否因达到上限而只保留了部分结果
+         */
+        public boolean isTruncated() {
+            return matched > hits.size();
+        }
+    }
+
+    // 结果排序：得分高的在前，同分时用户映射优先，再按路径排序
+    private static final Comparator<Hit> BY_RELEVANCE = Comparator.<Hit>comparingInt(hit -> -hit.score)
+        .thenComparing(hit -> hit.layer)
+        .thenComparing(hit -> hit.path, String.CASE_INSENSITIVE_ORDER);
+
+    private final Project project;
+
+    // 最近一次构建的索引，尚未构建时为null
+    private volatile Index index;
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean(false);
+    // 重建完成后在 EDT 上执行的回调，由 this 保护
+    private final List<Runnable> readyCallbacks = new ArrayList<>();
+
+    public AnnotationSearchIndex(Project project) {
+        this.project = project;
+    }
+
+    /**
+     * 获取项目的搜索索引实例
+     */
+    public static AnnotationSearchIndex getInstance(@NotNull Project project) {
+        return project.getService(AnnotationSearchIndex.class);
+    }
+
+    /**
+     * 最近一次构建的索引（可能已过期），尚未构建时返回null
+     */
+    @Nullable
+    public Index getLatest() {
+        return index;
+    }
+
+    /**
+     * 确保索引是最新的
+     * 已是最新时返回true；否则在后台重建，完成后在 EDT 上执行 onRebuilt 并返回false
+     */
+    public boolean ensureUpToDate(@Nullable Runnable onRebuilt) {
+        Index current = index;
+        if (current != null && current.generation == AnnotationService.getInstance(project).getGeneration()
+                && current.namesVersion == ProjectFileNameIndex.getInstance(project).getModificationCount()) {
+            return true;
+        }
+        if (onRebuilt != null) {
+            synchronized (this) {
+                readyCallbacks.add(onRebuilt);
+            }
+        }
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            PluginTaskScheduler.getInstance().execute("search-index-rebuild", project, this::rebuild);
+        }
+        return false;
+    }
+
+    private void rebuild() {
+        long generation = AnnotationService.getInstance(project).getGeneration();
+        try {
+            long startTime = System.nanoTime();
+            Index built = build(generation);
+            index = built;
+            LOG.info("备注搜索索引已重建: " + built.rules.length + " 条规则, " + built.pathCount + " 个路径, "
+                + built.postings.size() + " 个词项, 耗时 " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms");
+        } catch (Exception e) {
+            LOG.warn("重建备注搜索索引失败: " + e.getMessage(), e);
+            // 发布空索引，避免搜索一直等待
+            if (index == null) {
+                index = new Index(generation, ProjectFileNameIndex.getInstance(project).getModificationCount(), new Rule[0]);
+            }
+        } finally {
+            rebuildScheduled.set(false);
+            List<Runnable> callbacks;
+            synchronized (this) {
+                callbacks = new ArrayList<>(readyCallbacks);
+                readyCallbacks.clear();
+            }
+            // 搜索对话框是模态的，回调需要在任意模态状态下执行
+            for (Runnable callback : callbacks) {
+                ApplicationManager.getApplication().invokeLater(callback, ModalityState.any(), project.getDisposed());
+            }
+        }
+    }
+
+    /**
+     * 读取当前备注数据并展开为带路径的规则，再建立倒排索引
+     */
+    @NotNull
+    private Index build(long generation) {
+        AnnotationService annotationService = AnnotationService.getInstance(project);
+        ProjectFileNameIndex names = ProjectFileNameIndex.getInstance(project);
+
+        List<Rule> rules = new ArrayList<>();
+
+        for (Map.Entry<String, String> entry : annotationService.getAllAnnotations().entrySet()) {
+            addRule(rules, Layer.USER_FILE, entry.getValue(), Collections.singletonList(entry.getKey()));
+        }
+        for (Map.Entry<String, String> entry : annotationService.getAllPackageAnnotations().entrySet()) {
+            addRule(rules, Layer.USER_PACKAGE, entry.getValue(), Collections.singletonList(entry.getKey()));
+        }
+        for (Map.Entry<String, String> entry : annotationService.getAllFileMatchAnnotations().entrySet()) {
+            addRule(rules, Layer.USER_FILE_MATCH, entry.getValue(), names.findFiles(entry.getKey(), false));
+        }
+        for (Map.Entry<String, String> entry : annotationService.getAllPackageMatchAnnotations().entrySet()) {
+            addRule(rules, Layer.USER_PACKAGE_MATCH, entry.getValue(), names.findDirectories(entry.getKey()));
+        }
+
+        // 内置映射库只搜索项目中实际存在的文件和包
+        if (annotationService.isBuiltinMappingsEnabled()) {
+            MappingLibraryService libraryService = MappingLibraryService.getInstance();
+            List<Rule> builtinFiles = new ArrayList<>();
+            List<Rule> builtinPackages = new ArrayList<>();
+            for (Map.Entry<String, String> entry : libraryService.getAllMappings().entrySet()) {
+                String key = entry.getKey();
+                if (isFileName(key)) {
+                    addRule(builtinFiles, Layer.BUILTIN_FILE, entry.getValue(), findBuiltinFile(names, key));
+                } else if (packageExists(names, key)) {
+                    addRule(builtinPackages, Layer.BUILTIN_PACKAGE, entry.getValue(), Collections.singletonList(key));
+                }
+            }
+            rules.addAll(builtinFiles);
+            rules.addAll(builtinPackages);
+            for (Map.Entry<String, String> entry : libraryService.getAllFileMatchPatterns().entrySet()) {
+                addRule(rules, Layer.BUILTIN_FILE_MATCH, entry.getValue(), names.findFiles(entry.getKey(), false));
+            }
+            for (Map.Entry<String, String> entry : libraryService.getAllPackageMatchPatterns().entrySet()) {
+                addRule(rules, Layer.BUILTIN_PACKAGE_MATCH, entry.getValue(), names.findDirectories(entry.getKey()));
+            }
+        }
+
+        // 展开完成后再读取文件名索引的版本，展开期间索引若有变化，下次搜索时会再次重建
+        return new Index(generation, names.getModificationCount(), rules.toArray(new Rule[0]));
+    }
+
+    /**
+     * 文件名完全相同的所有文件；没有时若该名称本身是存在的相对路径则返回它
+     */
+    @NotNull
+    private static List<String> findBuiltinFile(@NotNull ProjectFileNameIndex names, @NotNull String name) {
+        List<String> paths = names.findFiles(name, true);
+        if (paths.isEmpty() && names.containsFile(name)) {
+            return Collections.singletonList(name);
+        }
+        return paths;
+    }
+
+    /**
+     * 检查包路径是否存在于常见的源码目录下，例如：org.springframework.boot -> src/main/java/org/springframework/boot
+     */
+    private static boolean packageExists(@NotNull ProjectFileNameIndex names, @NotNull String packageName) {
+        if (packageName.isEmpty()) {
+            return false;
+        }
+        String packagePath = packageName.replace(".", "/");
+        return names.containsDirectory("src/main/java/" + packagePath)
+            || names.containsDirectory("src/" + packagePath)
+            || names.containsDirectory("src/test/java/" + packagePath)
+            || names.containsDirectory(packagePath);
+    }
+
+    private static void addRule(@NotNull List<Rule> rules, @NotNull Layer layer, @Nullable String annotation,
+                                @NotNull List<String> paths) {
+        if (annotation != null && !annotation.isEmpty() && !paths.isEmpty()) {
+            rules.add(new Rule(layer, annotation, paths.toArray(new String[0])));
+        }
+    }
+
+    /**
+     * 判断是否为文件名（而不是包名）
+     */
+    private static boolean isFileName(String name) {
+        // 包含文件扩展名的肯定是文件
+        if (name.contains(".") && (name.endsWith(".xml") || name.endsWith(".yml") || name.endsWith(".yaml") ||
+            name.endsWith(".properties") || name.endsWith(".json") || name.endsWith(".gradle") ||
+            name.endsWith(".md") || name.endsWith(".txt") || name.endsWith(".gitignore") ||
+            name.endsWith(".java") || name.endsWith(".kt") || name.endsWith(".js") || name.endsWith(".ts"))) {
+            return true;
+        }
+
+        // 特殊文件名（无扩展名）
+        return name.equals(".gitignore") || name.equals("Dockerfile") || name.equals("Jenkinsfile") ||
+            name.equals("Makefile") || name.equals("README");
+    }
+
+    /**
+     * 一条带展开路径的备注规则
+     */
+    static final class Rule {
+        final Layer layer;
+        final String annotation;
+        final String lowerAnnotation;
+        // 备注中拉丁单词的首字母串，如 "Spring Boot 配置" -> "sb"
+        final String wordInitials;
+        // 备注的拼音首字母串，没有汉字时为null
+        final String pinyinInitials;
+        // 备注中的拉丁单词，用于编辑距离匹配
+        final String[] words;
+        final String[] paths;
+        // 以下与 paths 一一对应：小写路径、小写文件名、文件名的驼峰首字母串
+        final String[] lowerPaths;
+        final String[] lowerNames;
+        final String[] nameHumps;
+
+        Rule(@NotNull Layer layer, @NotNull String annotation, @NotNull String[] paths) {
+            this.layer = layer;
+            this.annotation = annotation;
+            this.lowerAnnotation = annotation.toLowerCase(Locale.ROOT);
+            this.pinyinInitials = PinyinUtils.initials(annotation);
+            this.paths = paths;
+
+            List<String> latinWords = new ArrayList<>();
+            StringBuilder initials = new StringBuilder();
+            int length = lowerAnnotation.length();
+            for (int i = 0; i < length; ) {
+                char ch = lowerAnnotation.charAt(i);
+                if (Character.isLetterOrDigit(ch) && !isCjk(ch)) {
+                    int start = i;
+                    while (i < length && Character.isLetterOrDigit(lowerAnnotation.charAt(i)) && !isCjk(lowerAnnotation.charAt(i))) {
+                        i++;
+                    }
+                    latinWords.add(lowerAnnotation.substring(start, i));
+                    initials.append(ch);
+                } else {
+                    i++;
+                }
+            }
+            this.words = latinWords.toArray(new String[0]);
+            this.wordInitials = initials.toString();
+
+            this.lowerPaths = new String[paths.length];
+            this.lowerNames = new String[paths.length];
+            this.nameHumps = new String[paths.length];
+            for (int i = 0; i < paths.length; i++) {
+                String name = paths[i].substring(paths[i].lastIndexOf('/') + 1);
+                lowerPaths[i] = paths[i].toLowerCase(Locale.ROOT);
+                lowerNames[i] = name.toLowerCase(Locale.ROOT);
+                nameHumps[i] = humps(name);
+            }
+        }
+
+        /**
+         * 名称的驼峰首字母串：大写字母、分隔符后的字母和数字开头各取一个，如 "ProjectViewService.java" -> "pvsj"
+         */
+        @NotNull
+        private static String humps(@NotNull String name) {
+            StringBuilder humps = new StringBuilder();
+            char previous = 0;
+            for (int i = 0; i < name.length(); i++) {
+                char ch = name.charAt(i);
+                boolean start = Character.isLetterOrDigit(ch) && (i == 0
+                    || !Character.isLetterOrDigit(previous)
+                    || Character.isUpperCase(ch) && !Character.isUpperCase(previous)
+                    || Character.isDigit(ch) != Character.isDigit(previous));
+                if (start) {
+                    humps.append(Character.toLowerCase(ch));
+                }
+                previous = ch;
+            }
+            return humps.toString();
+        }
+    }
+
+    /**
+     * 预处理后的查询及打分规则，只在一次搜索的线程内使用
+     * 分档：完全相同 1000，前缀 900，单词开头 800，包含 700，驼峰或拼音首字母 600，路径包含 500，
+     * 子序列 400，拼写错误（编辑距离）300；同档内多余字符越少、位置越靠前得分越高
+     */
+    static final class Query {
+        private static final int EXACT = 1000;
+        private static final int PREFIX = 900;
+        private static final int WORD_START = 800;
+        private static final int CONTAINS = 700;
+        private static final int INITIALS = 600;
+        private static final int PATH_CONTAINS = 500;
+        private static final int SUBSEQUENCE = 400;
+        private static final int TYPO = 300;
+        // 只以子序列或拼写纠错匹配的条目可能达到的最高得分（路径子序列加上备注拼写纠错的加分）
+        static final int FUZZY_MAX = SUBSEQUENCE + TYPO / 10;
+
+        // 小写查询及去掉空白后的形式
+        final String text;
+        final String compact;
+        // 可用于首字母和子序列匹配（只含字母数字）
+        final boolean alphanumeric;
+        // 允许的最大编辑距离，0 表示不做拼写纠错
+        final int maxDistance;
+        // 编辑距离计算复用的两行
+        private int[] previousRow;
+        private int[] currentRow;
+
+        Query(@NotNull String keyword) {
+            this.text = keyword.trim().toLowerCase(Locale.ROOT);
+            StringBuilder builder = new StringBuilder(text.length());
+            boolean onlyLettersAndDigits = true;
+            for (int i = 0; i < text.length(); i++) {
+                char ch = text.charAt(i);
+                if (!Character.isWhitespace(ch)) {
+                    builder.append(ch);
+                    onlyLettersAndDigits &= Character.isLetterOrDigit(ch) && !isCjk(ch);
+                }
+            }
+            this.compact = builder.toString();
+            this.alphanumeric = onlyLettersAndDigits && compact.length() >= 2;
+            this.maxDistance = !onlyLettersAndDigits ? 0 : compact.length() >= 7 ? 2 : compact.length() >= 4 ? 1 : 0;
+            this.previousRow = new int[compact.length() + 1];
+            this.currentRow = new int[compact.length() + 1];
+        }
+
+        /**
+         * 是否可能以子序列或拼写纠错方式匹配
+         */
+        boolean hasFuzzyTiers() {
+            return maxDistance > 0 || alphanumeric && compact.length() >= 3;
+        }
+
+        /**
+         * 备注的相关度，不匹配时为 0
+         *
+         * @param candidate 倒排索引是否认为该备注可能包含查询
+         */
+        int scoreAnnotation(@NotNull Rule rule, boolean candidate) {
+            int score = candidate ? substring(rule.lowerAnnotation) : 0;
+            if (score == 0) {
+                score = Math.max(initials(rule.pinyinInitials), initials(rule.wordInitials));
+            }
+            if (score == 0) {
+                for (String word : rule.words) {
+                    score = Math.max(score, typo(word, word.length()));
+                }
+            }
+            return score;
+        }
+
+        /**
+         * 规则中第 i 个路径的相关度，不匹配时为 0
+         */
+        int scorePath(@NotNull Rule rule, int i) {
+            String name = rule.lowerNames[i];
+            int score = substring(name);
+            if (score == 0) {
+                score = initials(rule.nameHumps[i]);
+            }
+            if (score == 0) {
+                String path = rule.lowerPaths[i];
+                if (path.contains(text)) {
+                    score = PATH_CONTAINS - Math.min(99, (path.length() - text.length()) / 4);
+                }
+            }
+            if (score == 0) {
+                score = subsequence(name);
+            }
+            if (score == 0) {
+                // 与去掉扩展名的文件名比较
+                int dot = name.lastIndexOf('.');
+                score = typo(name, dot > 0 ? dot : name.length());
+            }
+            return score;
+        }
+
+        private int substring(@NotNull String lowerText) {
+            int index = lowerText.indexOf(text);
+            if (index < 0) {
+                return 0;
+            }
+            int extra = lowerText.length() - text.length();
+            if (extra == 0) {
+                return EXACT;
+            }
+            int tier = index == 0 ? PREFIX : isWordStart(lowerText, index) ? WORD_START : CONTAINS;
+            return tier - Math.min(99, extra / 2 + index);
+        }
+
+        private int initials(@Nullable String initials) {
+            if (!alphanumeric || initials == null) {
+                return 0;
+            }
+            int index = initials.indexOf(compact);
+            if (index < 0) {
+                return 0;
+            }
+            return INITIALS - Math.min(99, index * 10 + initials.length() - compact.length());
+        }
+
+        /**
+         * 查询的字符按顺序出现在名称中，且首字符与名称开头相同，如 "prjsvc" 匹配 "projectservice.java"
+         */
+        private int subsequence(@NotNull String lowerName) {
+            if (!alphanumeric || compact.length() < 3 || lowerName.isEmpty() || lowerName.charAt(0) != compact.charAt(0)) {
+                return 0;
+            }
+            int matched = 1;
+            int end = 0;
+            for (int i = 1; i < lowerName.length() && matched < compact.length(); i++) {
+                if (lowerName.charAt(i) == compact.charAt(matched)) {
+                    matched++;
+                    end = i;
+                }
+            }
+            if (matched < compact.length()) {
+                return 0;
+            }
+            int gaps = end + 1 - compact.length();
+            return SUBSEQUENCE - Math.min(99, gaps * 3);
+        }
+
+        /**
+         * word 的前 length 个字符与查询的编辑距离在允许范围内时返回拼写纠错得分
+         */
+        private int typo(@NotNull String word, int length) {
+            if (maxDistance == 0 || Math.abs(length - compact.length()) > maxDistance) {
+                return 0;
+            }
+            int distance = editDistance(word, length);
+            return distance <= maxDistance ? TYPO - distance * 30 : 0;
+        }
+
+        /**
+         * 有界的 Levenshtein 距离，超过 maxDistance 时提前返回 maxDistance + 1
+         */
+        private int editDistance(@NotNull String word, int length) {
+            int queryLength = compact.length();
+            for (int j = 0; j <= queryLength; j++) {
+                previousRow[j] = j;
+            }
+            for (int i = 1; i <= length; i++) {
+                currentRow[0] = i;
+                int rowMin = i;
+                char ch = word.charAt(i - 1);
+                for (int j = 1; j <= queryLength; j++) {
+                    int cost = ch == compact.charAt(j - 1) ? 0 : 1;
+                    currentRow[j] = Math.min(Math.min(currentRow[j - 1] + 1, previousRow[j] + 1), previousRow[j - 1] + cost);
+                    rowMin = Math.min(rowMin, currentRow[j]);
+                }
+                if (rowMin > maxDistance) {
+                    return maxDistance + 1;
+                }
+                int[] swap = previousRow;
+                previousRow = currentRow;
+                currentRow = swap;
+            }
+            return previousRow[queryLength];
+        }
+
+        private static boolean isWordStart(@NotNull String text, int index) {
+            char previous = text.charAt(index - 1);
+            return !Character.isLetterOrDigit(previous) || isCjk(previous) != isCjk(text.charAt(index));
+        }
+    }
+
+    /**
+     * 不可变的索引版本，可被多个线程并发查询
+     * 条目即（规则，路径）对，按规则顺序连续编号；除备注倒排表外，另为首字母、单词、文件名、驼峰首字母和父目录
+     * 建立二元组索引，搜索时只为这些索引选出的候选条目打分
+     */
+    public static final class Index {
+        final long generation;
+        // 构建时项目文件名索引的修改计数
+        final long namesVersion;
+        // 按来源层优先级排列，规则编号即数组下标
+        final Rule[] rules;
+        // 词项 -> 按升序排列的规则编号
+        final Map<String, int[]> postings;
+        // 全部词项及其二元组索引、单字符 -> 含该字符的词项，用于查找包含查询片段的词项
+        private final String[] terms;
+        private final GramIndex termGrams;
+        private final Map<Character, int[]> termsByChar;
+        final int pathCount;
+
+        // 规则编号 -> 其第一个条目的编号，最后一项为条目总数
+        private final int[] ruleEntries;
+        // 条目编号 -> 规则编号
+        private final int[] entryRules;
+        // 条目编号 -> 去重后的路径编号，同一路径可能出现在多个规则中
+        private final int[] entryPaths;
+        private final int distinctPaths;
+        // 备注首字母串（拉丁单词首字母和拼音首字母）及拉丁单词的二元组索引，文档为规则
+        private final GramIndex initialsGrams;
+        private final GramIndex wordGrams;
+        // 文件名及其驼峰首字母串的二元组索引，文档为条目
+        private final GramIndex nameGrams;
+        private final GramIndex humpGrams;
+        // 去重后的父目录（小写，以 / 结尾，根目录下为空串）、其二元组索引及所含条目
+        private final String[] directories;
+        private final GramIndex directoryGrams;
+        private final int[][] directoryEntries;
+        // 文件名首字符 -> 条目，及各条目文件名所含字符的位集合，用于选出子序列匹配的候选
+        private final Map<Character, int[]> entriesByFirstChar;
+        private final long[] nameMasks;
+
+        Index(long generation, long namesVersion, @NotNull Rule[] rules) {
+            this.generation = generation;
+            this.namesVersion = namesVersion;
+            this.rules = rules;
+
+            Map<String, List<Integer>> building = new HashMap<>();
+            int paths = 0;
+            for (int id = 0; id < rules.length; id++) {
+                Set<String> ruleTerms = new HashSet<>();
+                tokenize(rules[id].lowerAnnotation, ruleTerms);
+                for (String term : ruleTerms) {
+                    building.computeIfAbsent(term, k -> new ArrayList<>()).add(id);
+                }
+                paths += rules[id].paths.length;
+            }
+            this.pathCount = paths;
+            this.postings = new HashMap<>(building.size() * 2);
+            for (Map.Entry<String, List<Integer>> entry : building.entrySet()) {
+                List<Integer> ids = entry.getValue();
+                int[] array = new int[ids.size()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = ids.get(i);
+                }
+                postings.put(entry.getKey(), array);
+            }
+            this.terms = postings.keySet().toArray(new String[0]);
+            this.termGrams = new GramIndex(terms);
+            Map<Character, IntList> termChars = new HashMap<>();
+            for (int id = 0; id < terms.length; id++) {
+                String term = terms[id];
+                for (int i = 0; i < term.length(); i++) {
+                    if (term.indexOf(term.charAt(i)) == i) {
+                        termChars.computeIfAbsent(term.charAt(i), k -> new IntList()).add(id);
+                    }
+                }
+            }
+            this.termsByChar = new HashMap<>(termChars.size() * 2);
+            for (Map.Entry<Character, IntList> bucket : termChars.entrySet()) {
+                termsByChar.put(bucket.getKey(), bucket.getValue().toArray());
+            }
+
+            String[] ruleInitials = new String[rules.length];
+            String[] ruleWords = new String[rules.length];
+            this.ruleEntries = new int[rules.length + 1];
+            this.entryRules = new int[paths];
+            this.entryPaths = new int[paths];
+            Map<String, Integer> pathIds = new HashMap<>(paths * 2);
+            String[] names = new String[paths];
+            String[] humps = new String[paths];
+            this.nameMasks = new long[paths];
+            Map<String, Integer> directoryIds = new HashMap<>();
+            List<IntList> entriesOfDirectory = new ArrayList<>();
+            Map<Character, IntList> firstChars = new HashMap<>();
+            int entry = 0;
+            for (int id = 0; id < rules.length; id++) {
+                Rule rule = rules[id];
+                ruleInitials[id] = rule.pinyinInitials != null ? rule.wordInitials + " " + rule.pinyinInitials : rule.wordInitials;
+                ruleWords[id] = String.join(" ", rule.words);
+                ruleEntries[id] = entry;
+                for (int i = 0; i < rule.paths.length; i++, entry++) {
+                    entryRules[entry] = id;
+                    Integer pathId = pathIds.putIfAbsent(rule.paths[i], pathIds.size());
+                    entryPaths[entry] = pathId != null ? pathId : pathIds.size() - 1;
+                    names[entry] = rule.lowerNames[i];
+                    humps[entry] = rule.nameHumps[i];
+                    nameMasks[entry] = charMask(rule.lowerNames[i]);
+                    if (!rule.lowerNames[i].isEmpty()) {
+                        firstChars.computeIfAbsent(rule.lowerNames[i].charAt(0), k -> new IntList()).add(entry);
+                    }
+                    String lowerPath = rule.lowerPaths[i];
+                    String directory = lowerPath.substring(0, lowerPath.lastIndexOf('/') + 1);
+                    Integer directoryId = directoryIds.get(directory);
+                    if (directoryId == null) {
+                        directoryId = entriesOfDirectory.size();
+                        directoryIds.put(directory, directoryId);
+                        entriesOfDirectory.add(new IntList());
+                    }
+                    entriesOfDirectory.get(directoryId).add(entry);
+                }
+            }
+            ruleEntries[rules.length] = entry;
+            this.distinctPaths = pathIds.size();
+
+            this.initialsGrams = new GramIndex(ruleInitials);
+            this.wordGrams = new GramIndex(ruleWords);
+            this.nameGrams = new GramIndex(names);
+            this.humpGrams = new GramIndex(humps);
+            this.directories = new String[directoryIds.size()];
+            for (Map.Entry<String, Integer> directory : directoryIds.entrySet()) {
+                directories[directory.getValue()] = directory.getKey();
+            }
+            this.directoryGrams = new GramIndex(directories);
+            this.directoryEntries = new int[entriesOfDirectory.size()][];
+            for (int i = 0; i < directoryEntries.length; i++) {
+                directoryEntries[i] = entriesOfDirectory.get(i).toArray();
+            }
+            this.entriesByFirstChar = new HashMap<>(firstChars.size() * 2);
+            for (Map.Entry<Character, IntList> bucket : firstChars.entrySet()) {
+                entriesByFirstChar.put(bucket.getKey(), bucket.getValue().toArray());
+            }
+        }
+
+        /**
+         * 按备注和路径的相关度搜索，返回得分最高的 limit 条
+         * 先为倒排表和二元组索引选出的候选打分（子串、首字母、路径包含各档）；
+         * 只有这些结果不足 limit 条或可能被子序列、拼写纠错匹配超过时，才为这两档的候选打分
+         * 同一路径只保留得分最高的一条，同分时来源层优先级高的优先，去重后再用大小为 limit 的最小堆选出前 limit 名；
+         * 可通过当前线程的 ProgressIndicator 取消
+         */
+        @NotNull
+        public Results search(@NotNull String keyword, int limit) {
+            Query query = new Query(keyword);
+            if (query.text.isEmpty() || limit <= 0) {
+                return new Results(Collections.emptyList(), 0, true);
+            }
+            Collector collector = new Collector(query, limit, candidates(query.text));
+            BitSet scored = cheapCandidates(query, collector.annotationCandidates);
+            collector.collect(scored);
+
+            boolean complete = true;
+            if (query.hasFuzzyTiers() && scored.cardinality() < pathCount) {
+                if (collector.aboveFuzzy < limit) {
+                    BitSet fuzzy = fuzzyCandidates(query);
+                    fuzzy.andNot(scored);
+                    collector.collect(fuzzy);
+                } else {
+                    // 前 limit 名已确定，不再统计只有模糊匹配的条目
+                    complete = false;
+                }
+            }
+
+            List<Hit> hits = collector.finish();
+            return new Results(hits, collector.matched, complete);
+        }
+
+        /**
+         * 可能以子串、首字母或路径包含方式匹配的条目；查询太短或没有可索引的词项时返回全部条目
+         */
+        @NotNull
+        private BitSet cheapCandidates(@NotNull Query query, @Nullable BitSet annotationCandidates) {
+            BitSet result = new BitSet(pathCount);
+            if (query.text.length() < 2 || annotationCandidates == null) {
+                result.set(0, pathCount);
+                return result;
+            }
+            addRuleEntries(result, annotationCandidates);
+            if (query.alphanumeric) {
+                addRuleEntries(result, initialsGrams.containing(query.compact));
+                result.or(humpGrams.containing(query.compact));
+            }
+            result.or(nameGrams.containing(query.text));
+            addPathContains(result, query.text);
+            return result;
+        }
+
+        /**
+         * 路径中包含查询的条目：查询位于父目录中，或跨过最后一个 / 从父目录延续到文件名开头
+         * （完全位于文件名中的情况由文件名索引覆盖）
+         */
+        private void addPathContains(@NotNull BitSet result, @NotNull String text) {
+            BitSet inDirectory = directoryGrams.containing(text);
+            for (int id = inDirectory.nextSetBit(0); id >= 0; id = inDirectory.nextSetBit(id + 1)) {
+                if (directories[id].contains(text)) {
+                    or(result, directoryEntries[id]);
+                }
+            }
+            int slash = text.lastIndexOf('/');
+            if (slash < 0) {
+                return;
+            }
+            String head = text.substring(0, slash + 1);
+            String tail = text.substring(slash + 1);
+            BitSet heads = directoryGrams.containing(head);
+            if (heads == null) {
+                // 只有一个 / 时无法筛选，逐个检查去重后的目录
+                heads = new BitSet(directories.length);
+                heads.set(0, directories.length);
+            }
+            for (int id = heads.nextSetBit(0); id >= 0; id = heads.nextSetBit(id + 1)) {
+                if (directories[id].endsWith(head)) {
+                    for (int entry : directoryEntries[id]) {
+                        if (nameOf(entry).startsWith(tail)) {
+                            result.set(entry);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * 可能以子序列或拼写纠错方式匹配的条目
+         * 编辑距离不超过 k 的两个串至少有 |查询| - 1 - 2k 个二元组位置相同，据此用二元组索引筛选
+         */
+        @NotNull
+        private BitSet fuzzyCandidates(@NotNull Query query) {
+            BitSet result = new BitSet(pathCount);
+            if (query.maxDistance > 0) {
+                int minShared = query.compact.length() - 1 - 2 * query.maxDistance;
+                addRuleEntries(result, wordGrams.sharing(query.compact, minShared));
+                result.or(nameGrams.sharing(query.compact, minShared));
+            }
+            if (query.alphanumeric && query.compact.length() >= 3) {
+                int[] bucket = entriesByFirstChar.get(query.compact.charAt(0));
+                long mask = charMask(query.compact);
+                if (bucket != null) {
+                    for (int entry : bucket) {
+                        if ((nameMasks[entry] & mask) == mask) {
+                            result.set(entry);
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+
+        private void addRuleEntries(@NotNull BitSet result, @Nullable BitSet ruleIds) {
+            if (ruleIds == null) {
+                return;
+            }
+            for (int id = ruleIds.nextSetBit(0); id >= 0; id = ruleIds.nextSetBit(id + 1)) {
+                result.set(ruleEntries[id], ruleEntries[id + 1]);
+            }
+        }
+
+        @NotNull
+        private String nameOf(int entry) {
+            int ruleId = entryRules[entry];
+            return rules[ruleId].lowerNames[entry - ruleEntries[ruleId]];
+        }
+
+        /**
+         * 文本所含字符的位集合：a-z 和 0-9 各占一位，其余字符共用一位
+         */
+        private static long charMask(@NotNull String text) {
+            long mask = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char ch = text.charAt(i);
+                if (ch >= 'a' && ch <= 'z') {
+                    mask |= 1L << (ch - 'a');
+                } else if (ch >= '0' && ch <= '9') {
+                    mask |= 1L << (26 + ch - '0');
+                } else {
+                    mask |= 1L << 63;
+                }
+            }
+            return mask;
+        }
+
+        /**
+         * 一次搜索的打分和结果收集，按条目编号升序处理候选
+         */
+        private final class Collector {
+            final Query query;
+            final int limit;
+            // 倒排表认为可能包含查询的规则，null 表示无法筛选
+            final BitSet annotationCandidates;
+            // 路径编号 -> 目前的最高得分（0 表示未匹配）及其条目
+            private final int[] bestScores = new int[distinctPaths];
+            private final int[] bestEntries = new int[distinctPaths];
+            private final IntList matchedPaths = new IntList();
+            int matched;
+            // 最高得分超过模糊匹配上限的路径数，达到 limit 时模糊匹配不可能进入前 limit 名
+            int aboveFuzzy;
+            // 同一规则的条目连续出现，备注得分只计算一次
+            private int lastRule = -1;
+            private int lastAnnotationScore;
+
+            Collector(@NotNull Query query, int limit, @Nullable BitSet annotationCandidates) {
+                this.query = query;
+                this.limit = limit;
+                this.annotationCandidates = annotationCandidates;
+            }
+
+            void collect(@NotNull BitSet entries) {
+                for (int entry = entries.nextSetBit(0); entry >= 0; entry = entries.nextSetBit(entry + 1)) {
+                    int ruleId = entryRules[entry];
+                    Rule rule = rules[ruleId];
+                    if (ruleId != lastRule) {
+                        ProgressManager.checkCanceled();
+                        lastRule = ruleId;
+                        lastAnnotationScore = query.scoreAnnotation(rule,
+                            annotationCandidates == null || annotationCandidates.get(ruleId));
+                    }
+                    int pathScore = query.scorePath(rule, entry - ruleEntries[ruleId]);
+                    if (lastAnnotationScore == 0 && pathScore == 0) {
+                        continue;
+                    }
+                    // 备注和路径同时匹配时略微加分
+                    int score = Math.max(lastAnnotationScore, pathScore) + Math.min(lastAnnotationScore, pathScore) / 10;
+                    int pathId = entryPaths[entry];
+                    int best = bestScores[pathId];
+                    if (best == 0) {
+                        matched++;
+                        matchedPaths.add(pathId);
+                    } else if (score < best || (score == best && entryRules[bestEntries[pathId]] <= ruleId)) {
+                        // 规则按来源层优先级排列，同分时保留编号小的规则
+                        continue;
+                    }
+                    if (best <= Query.FUZZY_MAX && score > Query.FUZZY_MAX) {
+                        aboveFuzzy++;
+                    }
+                    bestScores[pathId] = score;
+                    bestEntries[pathId] = entry;
+                }
+            }
+
+            /**
+             * 从各路径的最佳匹配中选出前 limit 条，按相关度排列
+             */
+            @NotNull
+            List<Hit> finish() {
+                PriorityQueue<Hit> top = new PriorityQueue<>(limit, BY_RELEVANCE.reversed());
+                for (int pathId : matchedPaths.toArray()) {
+                    int entry = bestEntries[pathId];
+                    Rule rule = rules[entryRules[entry]];
+                    offer(top, limit, rule, rule.paths[entry - ruleEntries[entryRules[entry]]], bestScores[pathId]);
+                }
+                List<Hit> hits = new ArrayList<>(top);
+                hits.sort(BY_RELEVANCE);
+                return hits;
+            }
+        }
+
+        private static void offer(@NotNull PriorityQueue<Hit> top, int limit, @NotNull Rule rule, @NotNull String path, int score) {
+            if (top.size() < limit) {
+                top.add(new Hit(path, rule.annotation, rule.layer, score));
+                return;
+            }
+            Hit worst = top.peek();
+            if (score < worst.score) {
+                return;
+            }
+            Hit hit = new Hit(path, rule.annotation, rule.layer, score);
+            if (BY_RELEVANCE.compare(hit, worst) < 0) {
+                top.poll();
+                top.add(hit);
+            }
+        }
+
+        /**
+         * 对查询的各个词项求交，得到可能匹配的规则；查询中没有可索引的词项时返回null（需逐条检查）
+         */
+        @Nullable
+        private BitSet candidates(@NotNull String needle) {
+            Set<String> queryTerms = new LinkedHashSet<>();
+            tokenize(needle, queryTerms);
+            if (queryTerms.isEmpty()) {
+                return null;
+            }
+            BitSet result = null;
+            for (String term : queryTerms) {
+                BitSet matching = rulesContaining(term);
+                if (result == null) {
+                    result = matching;
+                } else {
+                    result.and(matching);
+                }
+                if (result.isEmpty()) {
+                    break;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * 查询词项对应的规则集合
+         * 两字词项直接查倒排表；拉丁单词和单个汉字可能只是文档词项的一部分，合并所有包含它的词项，
+         * 这些词项通过词项的二元组索引（单字符通过字符表）查找，不逐个扫描词典
+         */
+        @NotNull
+        private BitSet rulesContaining(@NotNull String term) {
+            BitSet result = new BitSet(rules.length);
+            if (term.length() == 2 && isCjk(term.charAt(0))) {
+                or(result, postings.get(term));
+                return result;
+            }
+            if (term.length() == 1) {
+                int[] ids = termsByChar.get(term.charAt(0));
+                if (ids != null) {
+                    for (int id : ids) {
+                        or(result, postings.get(terms[id]));
+                    }
+                }
+                return result;
+            }
+            // 二元组索引选出的词项还需确认确实包含查询词项
+            BitSet candidates = termGrams.containing(term);
+            for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+                if (terms[id].contains(term)) {
+                    or(result, postings.get(terms[id]));
+                }
+            }
+            return result;
+        }
+
+        private static void or(@NotNull BitSet target, @Nullable int[] ids) {
+            if (ids != null) {
+                for (int id : ids) {
+                    target.set(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * 二元组倒排索引：相邻两个字符 -> 包含它的文档编号（升序），用于在打分前筛选候选
+     */
+    private static final class GramIndex {
+        private final int documentCount;
+        private final Map<Integer, int[]> postings;
+
+        GramIndex(@NotNull String[] documents) {
+            this.documentCount = documents.length;
+            Map<Integer, IntList> building = new HashMap<>();
+            for (int id = 0; id < documents.length; id++) {
+                String document = documents[id];
+                for (int i = 0; i + 1 < document.length(); i++) {
+                    building.computeIfAbsent(gram(document, i), k -> new IntList()).addOnce(id);
+                }
+            }
+            this.postings = new HashMap<>(building.size() * 2);
+            for (Map.Entry<Integer, IntList> entry : building.entrySet()) {
+                postings.put(entry.getKey(), entry.getValue().toArray());
+            }
+        }
+
+        /**
+         * 包含 needle 全部二元组的文档，即 needle 子串匹配的候选；needle 少于两个字符时返回null（无法筛选）
+         */
+        @Nullable
+        BitSet containing(@NotNull String needle) {
+            if (needle.length() < 2) {
+                return null;
+            }
+            List<int[]> lists = new ArrayList<>(needle.length() - 1);
+            for (int i = 0; i + 1 < needle.length(); i++) {
+                int[] ids = postings.get(gram(needle, i));
+                if (ids == null) {
+                    return new BitSet();
+                }
+                lists.add(ids);
+            }
+            // 从最短的倒排表开始求交
+            lists.sort(Comparator.comparingInt(ids -> ids.length));
+            BitSet result = toBitSet(lists.get(0));
+            for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+                result.and(toBitSet(lists.get(i)));
+            }
+            return result;
+        }
+
+        /**
+         * 至少有 minShared 个 needle 二元组位置（按在 needle 中的出现次数计）在文档中出现的文档
+         */
+        @NotNull
+        BitSet sharing(@NotNull String needle, int minShared) {
+            Map<Integer, Integer> grams = new HashMap<>();
+            for (int i = 0; i + 1 < needle.length(); i++) {
+                grams.merge(gram(needle, i), 1, Integer::sum);
+            }
+            int[] counts = new int[documentCount];
+            BitSet result = new BitSet(documentCount);
+            for (Map.Entry<Integer, Integer> gram : grams.entrySet()) {
+                int[] ids = postings.get(gram.getKey());
+                if (ids == null) {
+                    continue;
+                }
+                for (int id : ids) {
+                    counts[id] += gram.getValue();
+                    if (counts[id] >= minShared) {
+                        result.set(id);
+                    }
+                }
+            }
+            return result;
+        }
+
+        private static int gram(@NotNull String text, int index) {
+            return text.charAt(index) << 16 | text.charAt(index + 1);
+        }
+
+        @NotNull
+        private static BitSet toBitSet(@NotNull int[] ids) {
+            BitSet bits = new BitSet();
+            for (int id : ids) {
+                bits.set(id);
+            }
+            return bits;
+        }
+    }
+
+    /**
+     * 构建索引和收集结果时使用的可增长 int 数组
+     */
+    private static final class IntList {
+        private int[] items = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = value;
+        }
+
+        /**
+         * 按升序添加时跳过与上一个相同的值
+         */
+        void addOnce(int value) {
+            if (size == 0 || items[size - 1] != value) {
+                add(value);
+            }
+        }
+
+        @NotNull
+        int[] toArray() {
+            return Arrays.copyOf(items, size);
+        }
+    }
+
+    /**
+     * 把小写文本切分为词项：连续的字母数字为一个单词，连续的中日韩文字按相邻两字切分（单字则保留单字）
+     */
+    static void tokenize(@NotNull String text, @NotNull Set<String> sink) {
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char ch = text.charAt(i);
+            if (isCjk(ch)) {
+                int start = i;
+                while (i < length && isCjk(text.charAt(i))) {
+                    i++;
+                }
+                if (i - start == 1) {
+                    sink.add(text.substring(start, i));
+                } else {
+                    for (int j = start; j + 1 < i; j++) {
+                        sink.add(text.substring(j, j + 2));
+                    }
+                }
+            } else if (Character.isLetterOrDigit(ch)) {
+                int start = i;
+                while (i < length && Character.isLetterOrDigit(text.charAt(i)) && !isCjk(text.charAt(i))) {
+                    i++;
+                }
+                sink.add(text.substring(start, i));
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private static boolean isCjk(char ch) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(ch);
+        return script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+            || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL;
+    }
+}
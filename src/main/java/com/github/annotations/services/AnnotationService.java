@@ -1,20 +1,25 @@
 package com.github.annotations.services;
 
 import com.github.annotations.model.LocalMappingFile;
+import com.github.annotations.model.ResolvedAnnotation;
+import com.github.annotations.utils.AnnotationColors;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.FieldNamingPolicy;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonSyntaxException;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.startup.StartupManager;
+import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.openapi.vfs.newvfs.BulkFileListener;
 import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
 import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
-import com.intellij.ide.projectView.ProjectView;
 import com.intellij.util.messages.MessageBusConnection;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -26,11 +31,27 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -39,7 +60,7 @@ import java.util.stream.Stream;
  * 基于项目根目录的 .td-maps/ 目录下的 JSON 文件
  * 支持多个映射文件，主文件为 local-description.json
  */
-public class AnnotationService {
+public class AnnotationService implements AnnotationLookup, Disposable {
     
     private static final Logger LOG = Logger.getInstance(AnnotationService.class);
     private static final Gson gson = new GsonBuilder()
@@ -50,62 +71,248 @@ public class AnnotationService {
     private static final String LOCAL_DESCRIPTION_FILE = "local-description.json";
     
     private final Project project;
-    private Map<String, String> annotations = new LinkedHashMap<>(); // 文件备注
-    private Map<String, String> packageAnnotations = new LinkedHashMap<>(); // 包备注
-    private Map<String, String> fileMatchAnnotations = new LinkedHashMap<>(); // 文件匹配模式备注
-    private Map<String, String> packageMatchAnnotations = new LinkedHashMap<>(); // 包匹配模式备注
     
-    // 新增：备注字体颜色配置
-    private Map<String, String> packagesTextColor = new LinkedHashMap<>(); // 包备注字体颜色
-    private Map<String, String> filesTextColor = new LinkedHashMap<>(); // 文件备注字体颜色
+    // 备注数据（文件/包备注、匹配模式、字体颜色及模式索引）的不可变快照，写入时整体替换
+    private final AtomicReference<AnnotationSnapshot> store = new AtomicReference<>(AnnotationSnapshot.EMPTY);
     
-    private boolean builtinMappingsEnabled = true; // 内置映射库开关状态
+    // 映射数据版本号，任何备注变更或重新加载时递增，装饰器据此使缓存失效
+    private final AtomicLong generation = new AtomicLong();
+    
+    // 串行化备注数据的写入，读取方直接读取快照，无需加锁
+    private final Object mappingLock = new Object();
+    
+    // local-description.json 写回器，变更合并后在后台写入
+    private final MappingFilePersister persister;
+    
+    // 映射文件解析结果的二进制快照，未变化的文件启动时无需重新解析
+    private final MappingSnapshotCache snapshotCache;
+    
+    // 后台加载状态
+    private final AtomicBoolean loadStarted = new AtomicBoolean(false);
+    // 实际执行加载的线程已确定（排队中的加载任务尚未开始时为false）
+    private final AtomicBoolean loadClaimed = new AtomicBoolean(false);
+    private final CountDownLatch loadedLatch = new CountDownLatch(1);
+    private volatile boolean loaded = false;
+    // 加载完成前在 EDT 上提交的修改，加载完成后按顺序执行，由 mappingLock 保护
+    private final List<Runnable> pendingMutations = new ArrayList<>();
+    // 加载期间映射文件在外部发生变化，加载完成后需要再重新加载一次，由 mappingLock 保护
+    private boolean reloadAfterLoad = false;
+    
+    private volatile boolean builtinMappingsEnabled = true; // 内置映射库开关状态
     private boolean projectTreeAnnotationsEnabled = true; // 项目树备注显示开关状态
     private String language = "en"; // 语言设置，默认为英文
-    private MessageBusConnection messageBusConnection;
     
-    // 新增：存储所有映射文件的内容
-    private Map<String, LocalMappingFile> allMappingFiles = new HashMap<>();
+    // 本地修改计数，由 mappingLock 保护；重新加载期间有新的修改时放弃替换，避免覆盖更新的编辑
+    private long localEdits = 0;
+    
+    // 重新加载时因本地修改而重试的最大次数
+    private static final int MAX_RELOAD_ATTEMPTS = 3;
+    
+    // 项目关闭时等待后台加载完成（以便执行排队的修改）的最长时间（毫秒）
+    private static final long DISPOSE_LOAD_TIMEOUT_MS = Long.getLong("tree.description.dispose.load.timeout.ms", 10_000L);
+    private MessageBusConnection messageBusConnection;
     
     // 新增：JSON文件监听器
     private JsonFileWatcher jsonFileWatcher;
     
     // 新增：实时备注服务（基于DocumentListener）
-    private RealTimeAnnotationService realTimeAnnotationService;
+    private volatile RealTimeAnnotationService realTimeAnnotationService;
     
     // 新增：文件编辑器监听器
     private FileEditorListener fileEditorListener;
     
     public AnnotationService(Project project) {
         this.project = project;
+        this.persister = createPersister();
+        this.snapshotCache = MappingSnapshotCache.forProject(project);
         setupFileWatcher();
-        // 启动时从 .td-maps 目录加载所有映射文件
-        loadFromMappingsDirectory();
-        // 延迟初始化JSON文件监听器，避免循环依赖
-        // setupJsonFileWatcher(); // 移除立即初始化
-        
-        // 初始化实时备注服务，启用双向监听
-        setupRealTimeAnnotationService();
+        // 映射文件的加载移到后台，由 ProjectInitActivity 或首次装饰节点时触发，见 startBackgroundLoad()
         
         // 注册项目启动监听器（新API方式）
         registerProjectListener();
     }
     
     /**
-     * 清理资源
+     * 在后台开始加载映射数据，重复调用无副作用
+     */
+    public void startBackgroundLoad() {
+        if (loadStarted.compareAndSet(false, true)) {
+            PluginTaskScheduler.getInstance().execute("mapping-load", project, this::loadIfUnclaimed);
+        }
+    }
+    
+    private void loadIfUnclaimed() {
+        if (loadClaimed.compareAndSet(false, true)) {
+            initialize();
+        }
+    }
+    
+    /**
+     * 映射数据是否已加载完成，未完成前装饰器不显示任何备注
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+    
+    /**
+     * 确保映射数据已加载完成后再读取
+     * EDT 上不等待：只触发后台加载，读取到的是当前快照（加载完成后会整体刷新）
+     * 其他线程：加载任务尚未开始执行时在当前线程直接加载，避免占满调度线程等待排队中的加载任务；否则等待加载结束
+     */
+    public void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        if (ApplicationManager.getApplication().isDispatchThread()) {
+            startBackgroundLoad();
+            return;
+        }
+        if (loadClaimed.compareAndSet(false, true)) {
+            loadStarted.set(true);
+            initialize();
+            return;
+        }
+        try {
+            loadedLatch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * 在映射数据加载完成后执行修改，避免加载结果覆盖修改
+     * 已加载时直接执行；在 EDT 上且加载未完成时排队，由加载线程在加载完成后执行，不阻塞 UI；其他线程先等待加载完成
+     *
+     * @return 是否已在当前线程执行（false 表示已排队）
+     */
+    private boolean runWhenLoaded(@NotNull Runnable mutation) {
+        if (!loaded && ApplicationManager.getApplication().isDispatchThread()) {
+            synchronized (mappingLock) {
+                if (!loaded) {
+                    pendingMutations.add(mutation);
+                    startBackgroundLoad();
+                    return false;
+                }
+            }
+        }
+        ensureLoaded();
+        mutation.run();
+        return true;
+    }
+    
+    /**
+     * 按提交顺序执行加载期间排队的修改，直到队列为空后才标记为已加载，保证排队的修改先于后续修改执行
+     */
+    private void drainPendingMutationsAndMarkLoaded() {
+        while (true) {
+            List<Runnable> queued;
+            synchronized (mappingLock) {
+                if (pendingMutations.isEmpty()) {
+                    loaded = true;
+                    return;
+                }
+                queued = new ArrayList<>(pendingMutations);
+                pendingMutations.clear();
+            }
+            for (Runnable mutation : queued) {
+                try {
+                    mutation.run();
+                } catch (Exception e) {
+                    LOG.warn("执行加载期间排队的备注修改失败: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+    
+    /**
+     * 加载映射数据并初始化监听器，完成后整体刷新一次项目视图
+     */
+    private void initialize() {
+        long startTime = System.nanoTime();
+        try {
+            // 从 .td-maps 目录加载所有映射文件
+            loadFromMappingsDirectory();
+            
+            // 初始化实时备注服务，启用双向监听
+            setupRealTimeAnnotationService();
+            
+            // 语言设置来自映射文件，加载后再同步
+            initializeLanguageSettings();
+        } catch (Exception e) {
+            LOG.error("初始化备注数据失败: " + e.getMessage(), e);
+        } finally {
+            if (persister != null) {
+                persister.markReady();
+            }
+            drainPendingMutationsAndMarkLoaded();
+            loadedLatch.countDown();
+        }
+        
+        LOG.info("备注数据初始化完成, 耗时 " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms");
+        
+        // 加载期间映射文件发生变化时，加载器可能已读取过旧内容，再重新加载一次
+        boolean reloadNeeded;
+        synchronized (mappingLock) {
+            reloadNeeded = reloadAfterLoad;
+            reloadAfterLoad = false;
+        }
+        if (reloadNeeded && !project.isDisposed()) {
+            LOG.info("加载期间映射文件发生变化，重新加载");
+            reloadAfterExternalChange();
+        }
+        if (!project.isDisposed()) {
+            ProjectViewRefreshService.getInstance(project).refreshProjectView();
+        }
+    }
+    
+    /**
+     * 清理资源，项目关闭前写入尚未保存的备注
      */
+    @Override
     public void dispose() {
+        finishLoadForPendingMutations();
+        if (persister != null) {
+            persister.dispose();
+        }
         if (jsonFileWatcher != null) {
             jsonFileWatcher.dispose();
         }
-        if (realTimeAnnotationService != null) {
-            realTimeAnnotationService.dispose();
-        }
         if (fileEditorListener != null) {
             fileEditorListener.dispose();
         }
     }
     
+    /**
+     * 项目关闭时仍有加载期间排队的修改：先完成加载并执行这些修改，再由写回器写入磁盘，避免修改丢失
+     * 加载已在后台进行时最多等待 DISPOSE_LOAD_TIMEOUT_MS，超时则记录被丢弃的修改数
+     */
+    private void finishLoadForPendingMutations() {
+        int pending;
+        synchronized (mappingLock) {
+            pending = loaded ? 0 : pendingMutations.size();
+        }
+        if (pending == 0) {
+            return;
+        }
+        LOG.info("项目关闭时有 " + pending + " 个备注修改等待加载完成，先完成加载再保存");
+        if (loadClaimed.compareAndSet(false, true)) {
+            loadStarted.set(true);
+            initialize();
+            return;
+        }
+        try {
+            if (!loadedLatch.await(DISPOSE_LOAD_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                synchronized (mappingLock) {
+                    pending = pendingMutations.size();
+                }
+                LOG.warn("等待备注数据加载超时，丢弃 " + pending + " 个尚未执行的备注修改");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("等待备注数据加载被中断，丢弃尚未执行的备注修改");
+        }
+    }
+    
     /**
      * 初始化JSON文件监听器（延迟初始化）
      */
@@ -126,7 +333,7 @@ public class AnnotationService {
     private void setupRealTimeAnnotationService() {
         try {
             if (realTimeAnnotationService == null) {
-                realTimeAnnotationService = new RealTimeAnnotationService(project);
+                realTimeAnnotationService = RealTimeAnnotationService.getInstance(project);
                 LOG.info("实时备注服务初始化成功");
                 
                 // 初始化文件编辑器监听器
@@ -185,29 +392,79 @@ public class AnnotationService {
         return project.getService(AnnotationService.class);
     }
     
+    /**
+     * 获取映射数据版本号
+     * 任何备注、颜色、模式规则或开关的变更以及重新加载都会使版本号递增
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+    
+    /**
+     * 递增映射数据版本号，使所有基于旧版本的解析缓存失效
+     */
+    public void bumpGeneration() {
+        generation.incrementAndGet();
+    }
+    
+    /**
+     * 当前备注数据快照
+     */
+    @NotNull
+    private AnnotationSnapshot snapshot() {
+        return store.get();
+    }
+    
+    /**
+     * 基于当前快照构建并发布新版本，写入方之间由 mappingLock 串行化
+     */
+    private void update(@NotNull Consumer<AnnotationSnapshot.Builder> mutation) {
+        AnnotationSnapshot previous;
+        AnnotationSnapshot next;
+        synchronized (mappingLock) {
+            previous = store.get();
+            AnnotationSnapshot.Builder builder = previous.toBuilder();
+            mutation.accept(builder);
+            next = builder.build();
+            store.set(next);
+            localEdits++;
+        }
+        prewarmTextColors(previous, next);
+    }
+    
+    /**
+     * 在锁外预先解析新快照中发生变化的字体颜色，无效颜色此时按路径报告一次
+     */
+    private static void prewarmTextColors(@Nullable AnnotationSnapshot previous, @NotNull AnnotationSnapshot next) {
+        if (previous == null || previous.filesTextColor != next.filesTextColor) {
+            AnnotationColors.prewarm(next.filesTextColor);
+        }
+        if (previous == null || previous.packagesTextColor != next.packagesTextColor) {
+            AnnotationColors.prewarm(next.packagesTextColor);
+        }
+    }
+    
     /**
      * 添加或更新文件备注
      */
     public void setAnnotation(@NotNull String filePath, @NotNull String annotation) {
-        annotations.put(filePath, annotation);
-        saveToFile(); // 立即保存到文件
+        runWhenLoaded(() -> {
+            update(data -> data.files().put(filePath, annotation));
+            bumpGeneration();
+            saveToFile(); // 立即保存到文件
+        });
     }
     
     /**
      * 添加或更新文件备注（带颜色）
      */
     public void setAnnotation(@NotNull String filePath, @NotNull String annotation, @Nullable String textColor) {
-        annotations.put(filePath, annotation);
-        
-        // 设置颜色（只有非默认颜色才保存）
-        if (textColor != null && !textColor.equals("#BBBBBB") && !textColor.trim().isEmpty()) {
-            filesTextColor.put(filePath, textColor);
-        } else {
-            // 如果是默认颜色或空值，移除颜色配置
-            filesTextColor.remove(filePath);
-        }
+        runWhenLoaded(() -> {
+            update(data -> putFileAnnotation(data, filePath, annotation, textColor));
         
-        saveToFile(); // 立即保存到文件
+            bumpGeneration();
+            saveToFile(); // 立即保存到文件
+        });
     }
     
     /**
@@ -216,33 +473,31 @@ public class AnnotationService {
     public void setAnnotationAndRefresh(@NotNull String filePath, @NotNull String annotation, @Nullable String textColor) {
         setAnnotation(filePath, annotation, textColor);
         
-        // 立即刷新VFS和项目视图
-        refreshAfterSave();
+        // 只刷新该文件对应的节点，VFS 在文件写入后刷新
+        refreshAfterSave(Collections.singletonList(filePath));
     }
     
     /**
      * 添加或更新包/目录备注
      */
     public void setPackageAnnotation(@NotNull String packagePath, @NotNull String annotation) {
-        packageAnnotations.put(packagePath, annotation);
-        saveToFile(); // 立即保存到文件
+        runWhenLoaded(() -> {
+            update(data -> data.packages().put(packagePath, annotation));
+            bumpGeneration();
+            saveToFile(); // 立即保存到文件
+        });
     }
     
     /**
      * 添加或更新包/目录备注（带颜色）
      */
     public void setPackageAnnotation(@NotNull String packagePath, @NotNull String annotation, @Nullable String textColor) {
-        packageAnnotations.put(packagePath, annotation);
+        runWhenLoaded(() -> {
+            update(data -> putPackageAnnotation(data, packagePath, annotation, textColor));
         
-        // 设置颜色（只有非默认颜色才保存）
-        if (textColor != null && !textColor.equals("#BBBBBB") && !textColor.trim().isEmpty()) {
-            packagesTextColor.put(packagePath, textColor);
-        } else {
-            // 如果是默认颜色或空值，移除颜色配置
-            packagesTextColor.remove(packagePath);
-        }
-        
-        saveToFile(); // 立即保存到文件
+            bumpGeneration();
+            saveToFile(); // 立即保存到文件
+        });
     }
     
     /**
@@ -251,43 +506,193 @@ public class AnnotationService {
     public void setPackageAnnotationAndRefresh(@NotNull String packagePath, @NotNull String annotation, @Nullable String textColor) {
         setPackageAnnotation(packagePath, annotation, textColor);
         
-        // 立即刷新VFS和项目视图
-        refreshAfterSave();
+        // 只刷新该目录对应的节点，VFS 在文件写入后刷新
+        refreshAfterSave(Collections.singletonList(packagePath));
+    }
+    
+    /**
+     * 批量应用备注变更
+     * 所有变更合并为一个新快照发布，只保存一次，并只刷新发生变化的节点
+     * 
+     * @return 实际发生变化的条目数（删除不存在的备注不计入）；加载完成前在 EDT 上调用时变更排队执行，返回0
+     */
+    public int applyBatch(@NotNull Consumer<MutationBatch> mutations) {
+        int[] changed = new int[1];
+        runWhenLoaded(() -> changed[0] = applyBatchNow(mutations));
+        return changed[0];
+    }
+    
+    private int applyBatchNow(@NotNull Consumer<MutationBatch> mutations) {
+        MutationBatch batch = new MutationBatch();
+        mutations.accept(batch);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        
+        List<String> changedPaths = new ArrayList<>();
+        update(data -> {
+            for (MutationBatch.Operation operation : batch.getOperations()) {
+                boolean changed = true;
+                switch (operation.kind) {
+                    case SET_FILE:
+                        putFileAnnotation(data, operation.path, operation.annotation, operation.textColor);
+                        break;
+                    case SET_PACKAGE:
+                        putPackageAnnotation(data, operation.path, operation.annotation, operation.textColor);
+                        break;
+                    case REMOVE_FILE:
+                        changed = removeFileAnnotationEntry(data, operation.path);
+                        break;
+                    case REMOVE_PACKAGE:
+                        changed = removePackageAnnotationEntry(data, operation.path);
+                        break;
+                }
+                if (changed) {
+                    changedPaths.add(operation.path);
+                }
+            }
+        });
+        
+        if (!changedPaths.isEmpty()) {
+            bumpGeneration();
+            saveToFile();
+            refreshAfterSave(changedPaths);
+        }
+        LOG.info("批量备注变更完成: " + batch.getOperations().size() + " 项操作, " + changedPaths.size() + " 项生效");
+        return changedPaths.size();
+    }
+    
+    /**
+     * 写入文件备注及颜色（只有非默认颜色才保存）
+     */
+    private static void putFileAnnotation(@NotNull AnnotationSnapshot.Builder data, @NotNull String filePath,
+                                          @NotNull String annotation, @Nullable String textColor) {
+        data.files().put(filePath, annotation);
+        putTextColor(data, data.peekFilesTextColor(), true, filePath, textColor);
+    }
+    
+    /**
+     * 写入包备注及颜色（只有非默认颜色才保存）
+     */
+    private static void putPackageAnnotation(@NotNull AnnotationSnapshot.Builder data, @NotNull String packagePath,
+                                             @NotNull String annotation, @Nullable String textColor) {
+        data.packages().put(packagePath, annotation);
+        putTextColor(data, data.peekPackagesTextColor(), false, packagePath, textColor);
+    }
+    
+    /**
+     * 写入或移除字体颜色，颜色没有变化时不复制颜色映射
+     */
+    private static void putTextColor(@NotNull AnnotationSnapshot.Builder data, @NotNull Map<String, String> current,
+                                     boolean file, @NotNull String path, @Nullable String textColor) {
+        if (textColor != null && !textColor.equals("#BBBBBB") && !textColor.trim().isEmpty()) {
+            if (!textColor.equals(current.get(path))) {
+                (file ? data.filesTextColor() : data.packagesTextColor()).put(path, textColor);
+            }
+        } else if (current.containsKey(path)) {
+            // 如果是默认颜色或空值，移除颜色配置
+            (file ? data.filesTextColor() : data.packagesTextColor()).remove(path);
+        }
+    }
+    
+    /**
+     * 删除文件备注并清理颜色配置
+     */
+    private static boolean removeFileAnnotationEntry(@NotNull AnnotationSnapshot.Builder data, @NotNull String filePath) {
+        if (!data.peekFiles().containsKey(filePath) && !data.peekFilesTextColor().containsKey(filePath)) {
+            return false;
+        }
+        boolean removed = data.files().remove(filePath) != null;
+        data.filesTextColor().remove(filePath);
+        return removed;
+    }
+    
+    /**
+     * 删除包备注并清理颜色配置
+     */
+    private static boolean removePackageAnnotationEntry(@NotNull AnnotationSnapshot.Builder data, @NotNull String packagePath) {
+        if (!data.peekPackages().containsKey(packagePath) && !data.peekPackagesTextColor().containsKey(packagePath)) {
+            return false;
+        }
+        boolean removed = data.packages().remove(packagePath) != null;
+        data.packagesTextColor().remove(packagePath);
+        return removed;
+    }
+    
+    /**
+     * 创建 local-description.json 的写回器
+     */
+    @Nullable
+    private MappingFilePersister createPersister() {
+        String basePath = project.getBasePath();
+        if (basePath == null) {
+            return null;
+        }
+        Path localDescriptionPath = Paths.get(basePath, MAPPINGS_DIR_NAME, LOCAL_DESCRIPTION_FILE);
+        return new MappingFilePersister(
+            localDescriptionPath,
+            () -> gson.toJson(createLocalMappingFile()),
+            this::refreshLocalDescriptionInVfs
+        );
     }
     
     /**
      * 保存到项目根目录的 .td-maps/local-description.json 文件
+     * 只标记为待保存，由写回器在合并窗口结束后统一写入
      */
     private void saveToFile() {
-        try {
-            String basePath = project.getBasePath();
-            if (basePath != null) {
-                // 创建 .td-maps 目录
-        Path mappingsDir = Paths.get(basePath, MAPPINGS_DIR_NAME);
-                Files.createDirectories(mappingsDir);
-                
-                // 主映射文件路径
-                Path localDescriptionPath = mappingsDir.resolve(LOCAL_DESCRIPTION_FILE);
-                
-                // 创建或更新主映射文件
-                LocalMappingFile localMapping = createLocalMappingFile();
-                
-                // 序列化为 JSON
-                String jsonContent = gson.toJson(localMapping);
-                
-                // 写入文件
-                Files.writeString(localDescriptionPath, jsonContent);
-                LOG.info("备注已保存到: " + localDescriptionPath);
-            }
-        } catch (IOException e) {
-            LOG.error("保存备注文件失败: " + e.getMessage(), e);
+        // 插件内的修改以内存数据为准，不再被编辑器中的旧实时内容覆盖
+        clearLiveView();
+        if (persister != null) {
+            persister.markDirty();
+        }
+    }
+    
+    /**
+     * 清空实时备注缓存（实时服务尚未创建时无需处理）
+     */
+    private void clearLiveView() {
+        RealTimeAnnotationService liveService = realTimeAnnotationService;
+        if (liveService != null) {
+            liveService.clearLiveView();
+        }
+    }
+    
+    /**
+     * 立即写入尚未保存的备注
+     */
+    public void flushNow() {
+        if (persister != null) {
+            persister.flushNow();
+        }
+    }
+    
+    /**
+     * 指定路径的文件是否仍是本插件最后一次写入的内容，用于忽略自身写入引起的文件事件
+     */
+    boolean isOwnMappingWrite(@NotNull String path) {
+        return persister != null && persister.isOwnWrite(path);
+    }
+    
+    /**
+     * 写入完成后刷新VFS中的 local-description.json
+     */
+    private void refreshLocalDescriptionInVfs() {
+        String basePath = project.getBasePath();
+        if (basePath == null) {
+            return;
         }
+        ApplicationManager.getApplication().invokeLater(() -> {
+            VFSRefreshService vfsService = new VFSRefreshService(project);
+            vfsService.refreshJsonFile(basePath + "/" + MAPPINGS_DIR_NAME + "/" + LOCAL_DESCRIPTION_FILE);
+        }, project.getDisposed());
     }
     
     /**
      * 获取JSON格式的备注内容（用于导出）
      */
     public String getJsonContentForExport() {
+        ensureLoaded();
         LocalMappingFile localMapping = createLocalMappingFile();
         return gson.toJson(localMapping);
     }
@@ -307,13 +712,15 @@ public class AnnotationService {
         localMapping.setLanguage(language);
         
         // 设置映射内容 - 按照期望的顺序
+        // 快照不可变，直接序列化，无需加锁或复制
         LocalMappingFile.Mappings mappings = localMapping.getMappings();
-        mappings.setFiles(new LinkedHashMap<>(annotations));
-        mappings.setPackages(new LinkedHashMap<>(packageAnnotations));
-        mappings.setFileMatch(new LinkedHashMap<>(fileMatchAnnotations));
-        mappings.setPackageMatch(new LinkedHashMap<>(packageMatchAnnotations));
-        mappings.setFilesTextColor(new LinkedHashMap<>(filesTextColor));
-        mappings.setPackagesTextColor(new LinkedHashMap<>(packagesTextColor));
+        AnnotationSnapshot data = snapshot();
+        mappings.setFiles(Collections.unmodifiableMap(data.files));
+        mappings.setPackages(Collections.unmodifiableMap(data.packages));
+        mappings.setFileMatch(Collections.unmodifiableMap(data.fileMatch));
+        mappings.setPackageMatch(Collections.unmodifiableMap(data.packageMatch));
+        mappings.setFilesTextColor(Collections.unmodifiableMap(data.filesTextColor));
+        mappings.setPackagesTextColor(Collections.unmodifiableMap(data.packagesTextColor));
         
         return localMapping;
     }
@@ -325,7 +732,16 @@ public class AnnotationService {
      */
     @Nullable
     public String getAnnotation(@NotNull String filePath) {
-        return annotations.get(filePath);
+        return snapshot().files.get(filePath);
+    }
+    
+    /**
+     * 获取文件备注（相对路径版本）
+     */
+    @Override
+    @Nullable
+    public String getFileAnnotation(@NotNull String filePath) {
+        return getAnnotation(filePath);
     }
     
     /**
@@ -333,8 +749,8 @@ public class AnnotationService {
      */
     @Nullable
     public String getAnnotation(@NotNull VirtualFile file) {
-        String relativePath = getRelativePath(file);
-        return relativePath != null ? getAnnotation(relativePath) : null;
+        VirtualFile baseDir = getProjectBaseDir();
+        return baseDir != null ? snapshot().files.get(file, baseDir) : null;
     }
     
     /**
@@ -342,21 +758,128 @@ public class AnnotationService {
      */
     @Nullable
     public String getPackageAnnotation(@NotNull VirtualFile file) {
-        String relativePath = getRelativePath(file);
-        if (relativePath != null) {
-            // packages 映射使用原始文件系统路径（包含/），不进行标准化
-            return getPackageAnnotation(relativePath);
-        }
-        return null;
+        // packages 映射使用原始文件系统路径（包含/），按父目录链直接查找
+        VirtualFile baseDir = getProjectBaseDir();
+        return baseDir != null ? snapshot().packages.get(file, baseDir) : null;
     }
     
     /**
      * 获取包备注（字符串路径版本）
      */
+    @Override
     @Nullable
     public String getPackageAnnotation(@NotNull String packagePath) {
         // 直接查找，不进行路径标准化
-        return packageAnnotations.get(packagePath);
+        return snapshot().packages.get(packagePath);
+    }
+    
+    /**
+     * 一次性解析节点备注，同时确定来源层、字体颜色和命中的规则
+     * 解析顺序：实时缓存 -> 用户文件 -> 用户包 -> 用户文件匹配 -> 用户包匹配 -> 内置映射库
+     * @return 解析结果，没有任何备注时返回null
+     */
+    @Nullable
+    public ResolvedAnnotation resolveAnnotation(@NotNull VirtualFile file) {
+        String name = file.getName();
+        if (name.isEmpty() || name.startsWith(".") && name.length() < 3) {
+            return null;
+        }
+        
+        boolean directory = file.isDirectory();
+        AnnotationSnapshot data = snapshot();
+        VirtualFile baseDir = getProjectBaseDir();
+        // 相对路径只在实时缓存、命中结果和模式匹配需要时才拼接
+        String relativePath = null;
+        boolean relativePathResolved = false;
+        
+        if (baseDir != null && VfsUtilCore.isAncestor(baseDir, file, false)) {
+            // 0. 优先从实时服务获取数据（正在编辑的映射文件）
+            AnnotationLookup liveLookup = realTimeAnnotationService;
+            if (liveLookup != null && liveLookup.hasAnnotations()) {
+                relativePath = getRelativePath(file);
+                relativePathResolved = true;
+            }
+            if (relativePath != null) {
+                String liveAnnotation = directory
+                    ? liveLookup.getPackageAnnotation(relativePath)
+                    : liveLookup.getFileAnnotation(relativePath);
+                if (liveAnnotation != null && !liveAnnotation.isEmpty()) {
+                    String liveColor = directory
+                        ? liveLookup.getPackageTextColor(relativePath)
+                        : liveLookup.getFileTextColor(relativePath);
+                    return new ResolvedAnnotation(liveAnnotation.trim(), ResolvedAnnotation.Source.LIVE, liveColor, relativePath);
+                }
+            }
+            
+            // 1. 用户文件映射（按父目录链在前缀树中查找）
+            String userFileAnnotation = data.files.get(file, baseDir);
+            if (userFileAnnotation != null && !userFileAnnotation.isEmpty()) {
+                String path = relativePathResolved ? relativePath : getRelativePath(file);
+                return new ResolvedAnnotation(userFileAnnotation.trim(), ResolvedAnnotation.Source.USER_FILE,
+                    path != null ? data.filesTextColor.get(path) : null, path);
+            }
+            
+            // 2. 用户包映射
+            String userPackageAnnotation = data.packages.get(file, baseDir);
+            if (userPackageAnnotation != null && !userPackageAnnotation.isEmpty()) {
+                String path = relativePathResolved ? relativePath : getRelativePath(file);
+                return new ResolvedAnnotation(userPackageAnnotation.trim(), ResolvedAnnotation.Source.USER_PACKAGE,
+                    path != null ? data.packagesTextColor.get(path) : null, path);
+            }
+        }
+        
+        boolean needsPath = directory ? !data.packageMatchIndex.isEmpty() || builtinMappingsEnabled : !data.fileMatchIndex.isEmpty();
+        if (needsPath && !relativePathResolved) {
+            relativePath = getRelativePath(file);
+        }
+        
+        if (!directory) {
+            // 3. 用户文件匹配映射（仅对文件生效，使用完整相对路径进行混合匹配）
+            Map.Entry<String, String> fileMatch = data.fileMatchIndex.matchFileRule(name, relativePath);
+            if (fileMatch != null && !fileMatch.getValue().isEmpty()) {
+                return new ResolvedAnnotation(fileMatch.getValue().trim(), ResolvedAnnotation.Source.USER_FILE_MATCH,
+                    data.filesTextColor.get(name), fileMatch.getKey());
+            }
+        } else {
+            // 4. 用户包匹配映射（仅对目录/包生效）
+            Map.Entry<String, String> packageMatch = data.packageMatchIndex.matchPackageRule(relativePath != null ? relativePath : name);
+            if (packageMatch != null && !packageMatch.getValue().isEmpty()) {
+                return new ResolvedAnnotation(packageMatch.getValue().trim(), ResolvedAnnotation.Source.USER_PACKAGE_MATCH,
+                    relativePath != null ? data.packagesTextColor.get(relativePath) : null, packageMatch.getKey());
+            }
+        }
+        
+        // 5. 检查内置映射库（如果启用）
+        if (builtinMappingsEnabled) {
+            MappingLibraryService mappingService = MappingLibraryService.getInstance();
+            // 5.1 内置文件映射
+            String builtinFileMapping = mappingService.searchFileMapping(name);
+            if (builtinFileMapping != null) {
+                return new ResolvedAnnotation(builtinFileMapping, ResolvedAnnotation.Source.BUILTIN_FILE, null, name);
+            }
+            
+            // 5.2 内置包映射
+            String builtinPackageMapping = mappingService.searchPackageMapping(name);
+            if (builtinPackageMapping != null) {
+                return new ResolvedAnnotation(builtinPackageMapping, ResolvedAnnotation.Source.BUILTIN_PACKAGE, null, name);
+            }
+            
+            if (!directory) {
+                // 5.3 内置文件匹配映射（仅对文件生效）
+                String builtinFileMatchMapping = mappingService.searchFileMatchMapping(name);
+                if (builtinFileMatchMapping != null) {
+                    return new ResolvedAnnotation(builtinFileMatchMapping, ResolvedAnnotation.Source.BUILTIN_FILE_MATCH, null, null);
+                }
+            } else {
+                // 5.4 内置包匹配映射（仅对目录/包生效）
+                String builtinPackageMatchMapping = mappingService.searchPatternMapping(relativePath != null ? relativePath : name);
+                if (builtinPackageMatchMapping != null) {
+                    return new ResolvedAnnotation(builtinPackageMatchMapping, ResolvedAnnotation.Source.BUILTIN_PACKAGE_MATCH, null, null);
+                }
+            }
+        }
+        
+        return null;
     }
     
     /**
@@ -379,33 +902,8 @@ public class AnnotationService {
      */
     @Nullable
     public String getFileMatchAnnotation(@NotNull String fileName, @Nullable String relativePath) {
-        if (fileMatchAnnotations.isEmpty()) {
-            return null;
-        }
-        
-        // 优先进行完全匹配
-        String exactMatch = fileMatchAnnotations.get(fileName);
-        if (exactMatch != null) {
-            return exactMatch;
-        }
-        
-        // 按优先级进行模式匹配
-        return fileMatchAnnotations.entrySet().stream()
-            .filter(entry -> {
-                String pattern = entry.getKey();
-                String value = entry.getValue();
-                
-                // 跳过空值
-                if (value == null || value.trim().isEmpty()) {
-                    return false;
-                }
-                
-                // 使用精确匹配逻辑
-                return matchesFilePattern(fileName, pattern, relativePath);
-            })
-            .map(Map.Entry::getValue)
-            .findFirst()
-            .orElse(null);
+        // 优先完全匹配，再按优先级进行预编译的模式匹配
+        return snapshot().fileMatchIndex.matchFile(fileName, relativePath);
     }
     
     /**
@@ -417,53 +915,30 @@ public class AnnotationService {
      */
     @Nullable
     public String getPackageMatchAnnotation(@NotNull String packageName) {
-        if (packageMatchAnnotations.isEmpty()) {
-            return null;
-        }
-        
-        // 优先进行完全匹配
-        String exactMatch = packageMatchAnnotations.get(packageName);
-        if (exactMatch != null) {
-            return exactMatch;
-        }
-        
-        // 按优先级进行模式匹配
-        return packageMatchAnnotations.entrySet().stream()
-            .filter(entry -> {
-                String pattern = entry.getKey();
-                String value = entry.getValue();
-                
-                // 跳过空值
-                if (value == null || value.trim().isEmpty()) {
-                    return false;
-                }
-                
-                // 使用精确匹配逻辑
-                return matchesPackagePattern(packageName, pattern);
-            })
-            .map(Map.Entry::getValue)
-            .findFirst()
-            .orElse(null);
+        // 优先完全匹配，再按优先级进行预编译的模式匹配
+        return snapshot().packageMatchIndex.matchPackage(packageName);
     }
     
     /**
      * 删除文件备注
      */
     public void removeAnnotation(@NotNull String filePath) {
-        annotations.remove(filePath);
-        // 同时清理颜色配置
-        filesTextColor.remove(filePath);
-        saveToFile(); // 立即保存到文件
+        runWhenLoaded(() -> {
+            update(data -> removeFileAnnotationEntry(data, filePath));
+            bumpGeneration();
+            saveToFile(); // 立即保存到文件
+        });
     }
     
     /**
      * 删除包/目录备注
      */
     public void removePackageAnnotation(@NotNull String packagePath) {
-        packageAnnotations.remove(packagePath);
-        // 同时清理颜色配置
-        packagesTextColor.remove(packagePath);
-        saveToFile(); // 立即保存到文件
+        runWhenLoaded(() -> {
+            update(data -> removePackageAnnotationEntry(data, packagePath));
+            bumpGeneration();
+            saveToFile(); // 立即保存到文件
+        });
     }
     
     /**
@@ -480,38 +955,39 @@ public class AnnotationService {
      * 检查是否有文件备注
      */
     public boolean hasAnnotation(@NotNull String filePath) {
-        return annotations.containsKey(filePath);
+        return snapshot().files.containsKey(filePath);
     }
     
     /**
      * 检查是否有包/目录备注
      */
     public boolean hasPackageAnnotation(@NotNull String packagePath) {
-        return packageAnnotations.containsKey(packagePath);
+        return snapshot().packages.containsKey(packagePath);
     }
     
     /**
      * 检查是否有文件备注（VirtualFile版本）
      */
     public boolean hasAnnotation(@NotNull VirtualFile file) {
-        String relativePath = getRelativePath(file);
-        return relativePath != null && hasAnnotation(relativePath);
+        VirtualFile baseDir = getProjectBaseDir();
+        return baseDir != null && snapshot().files.containsKey(file, baseDir);
     }
     
     /**
      * 检查是否有包/目录备注（VirtualFile版本）
      */
     public boolean hasPackageAnnotation(@NotNull VirtualFile file) {
-        String relativePath = getRelativePath(file);
-        return relativePath != null && hasPackageAnnotation(relativePath);
+        VirtualFile baseDir = getProjectBaseDir();
+        return baseDir != null && snapshot().packages.containsKey(file, baseDir);
     }
     
     /**
-     * 获取所有文件备注
+     * 获取所有文件备注（当前快照的只读视图，不复制）
      */
     @NotNull
     public Map<String, String> getAllAnnotations() {
-        return new HashMap<>(annotations);
+        ensureLoaded();
+        return Collections.unmodifiableMap(snapshot().files);
     }
     
     /**
@@ -519,7 +995,8 @@ public class AnnotationService {
      */
     @NotNull
     public Map<String, String> getAllPackageAnnotations() {
-        return new HashMap<>(packageAnnotations);
+        ensureLoaded();
+        return Collections.unmodifiableMap(snapshot().packages);
     }
     
     /**
@@ -527,7 +1004,8 @@ public class AnnotationService {
      */
     @NotNull
     public Map<String, String> getAllFileMatchAnnotations() {
-        return new HashMap<>(fileMatchAnnotations);
+        ensureLoaded();
+        return Collections.unmodifiableMap(snapshot().fileMatch);
     }
     
     /**
@@ -535,51 +1013,62 @@ public class AnnotationService {
      */
     @NotNull
     public Map<String, String> getAllPackageMatchAnnotations() {
-        return new HashMap<>(packageMatchAnnotations);
+        ensureLoaded();
+        return Collections.unmodifiableMap(snapshot().packageMatch);
     }
     
     /**
      * 获取包备注字体颜色
      */
+    @Override
     public String getPackageTextColor(@NotNull String packagePath) {
-        return packagesTextColor.get(packagePath);
+        return snapshot().packagesTextColor.get(packagePath);
     }
     
     /**
      * 获取文件备注字体颜色
      */
+    @Override
     public String getFileTextColor(@NotNull String filePath) {
-        return filesTextColor.get(filePath);
+        return snapshot().filesTextColor.get(filePath);
     }
     
     /**
      * 设置包备注字体颜色
      */
     public void setPackageTextColor(@NotNull String packagePath, @NotNull String color) {
-        packagesTextColor.put(packagePath, color);
-        saveToFile();
+        runWhenLoaded(() -> {
+            update(data -> data.packagesTextColor().put(packagePath, color));
+            bumpGeneration();
+            saveToFile();
+        });
     }
     
     /**
      * 设置文件备注字体颜色
      */
     public void setFileTextColor(@NotNull String filePath, @NotNull String color) {
-        filesTextColor.put(filePath, color);
-        saveToFile();
+        runWhenLoaded(() -> {
+            update(data -> data.filesTextColor().put(filePath, color));
+            bumpGeneration();
+            saveToFile();
+        });
     }
     
     /**
      * 获取所有包备注字体颜色
      */
     public Map<String, String> getAllPackageTextColors() {
-        return new HashMap<>(packagesTextColor);
+        ensureLoaded();
+        return Collections.unmodifiableMap(snapshot().packagesTextColor);
     }
     
     /**
      * 获取所有文件备注字体颜色
      */
     public Map<String, String> getAllFileTextColors() {
-        return new HashMap<>(filesTextColor);
+        ensureLoaded();
+        return Collections.unmodifiableMap(snapshot().filesTextColor);
     }
     
     /**
@@ -593,128 +1082,142 @@ public class AnnotationService {
      * 设置内置映射库开关状态
      */
     public void setBuiltinMappingsEnabled(boolean enabled) {
-        if (this.builtinMappingsEnabled != enabled) {
-            this.builtinMappingsEnabled = enabled;
-            saveToFile(); // 立即保存到文件
-        }
+        runWhenLoaded(() -> {
+            if (this.builtinMappingsEnabled != enabled) {
+                synchronized (mappingLock) {
+                    this.builtinMappingsEnabled = enabled;
+                    localEdits++;
+                }
+                bumpGeneration();
+                saveToFile(); // 立即保存到文件
+            }
+        });
     }
     
     /**
      * 批量设置文件备注
      */
     public void setAnnotations(@NotNull Map<String, String> newAnnotations) {
-        annotations.putAll(newAnnotations);
-        saveToFile(); // 立即保存到文件
+        runWhenLoaded(() -> {
+            update(data -> data.files().putAll(newAnnotations));
+            bumpGeneration();
+            saveToFile(); // 立即保存到文件
+        });
     }
     
     /**
      * 批量设置包备注
      */
     public void setPackageAnnotations(@NotNull Map<String, String> newAnnotations) {
-        packageAnnotations.putAll(newAnnotations);
-        saveToFile(); // 立即保存到文件
+        runWhenLoaded(() -> {
+            update(data -> data.packages().putAll(newAnnotations));
+            bumpGeneration();
+            saveToFile(); // 立即保存到文件
+        });
     }
     
     /**
      * 添加或更新单个文件匹配模式备注
      */
     public void setFileMatchAnnotation(@NotNull String pattern, @NotNull String annotation) {
-        fileMatchAnnotations.put(pattern, annotation);
-        saveToFile(); // 立即保存到文件
+        runWhenLoaded(() -> {
+            update(data -> data.fileMatch().put(pattern, annotation));
+            bumpGeneration();
+            saveToFile(); // 立即保存到文件
+        });
     }
     
     /**
      * 添加或更新单个包匹配模式备注
      */
     public void setPackageMatchAnnotation(@NotNull String pattern, @NotNull String annotation) {
-        packageMatchAnnotations.put(pattern, annotation);
-        saveToFile(); // 立即保存到文件
+        runWhenLoaded(() -> {
+            update(data -> data.packageMatch().put(pattern, annotation));
+            bumpGeneration();
+            saveToFile(); // 立即保存到文件
+        });
     }
     
     /**
      * 批量设置文件匹配模式备注
      */
     public void setFileMatchAnnotations(@NotNull Map<String, String> newAnnotations) {
-        fileMatchAnnotations.putAll(newAnnotations);
-        saveToFile(); // 立即保存到文件
+        runWhenLoaded(() -> {
+            update(data -> data.fileMatch().putAll(newAnnotations));
+            bumpGeneration();
+            saveToFile(); // 立即保存到文件
+        });
     }
     
     /**
      * 批量设置包匹配模式备注
      */
     public void setPackageMatchAnnotations(@NotNull Map<String, String> newAnnotations) {
-        packageMatchAnnotations.putAll(newAnnotations);
-        saveToFile(); // 立即保存到文件
+        runWhenLoaded(() -> {
+            update(data -> data.packageMatch().putAll(newAnnotations));
+            bumpGeneration();
+            saveToFile(); // 立即保存到文件
+        });
     }
     
     /**
      * 清空所有备注
      */
     public void clearAllAnnotations() {
-        annotations.clear();
-        packageAnnotations.clear();
-        fileMatchAnnotations.clear();
-        packageMatchAnnotations.clear();
-        packagesTextColor.clear();
-        filesTextColor.clear();
+        runWhenLoaded(() -> {
+            update(AnnotationSnapshot.Builder::clear);
         
-        // 清空.td-maps目录下除local-description.json外的其他文件
-        clearMappingsDirectory();
+            // 清空.td-maps目录下除local-description.json外的其他文件
+            clearMappingsDirectory();
         
-        saveToFile(); // 立即保存到文件
+            bumpGeneration();
+            saveToFile();
+            // 编辑器需要读取清空后的文件内容，这里同步写入
+            flushNow();
         
-        // 强制刷新UI和编辑器内容
-        forceRefreshUIAndEditors();
+            // 强制刷新UI和编辑器内容
+            forceRefreshUIAndEditors();
+        });
+    }
+    
+    /**
+     * 获取项目根目录，用于按父目录链查找备注
+     */
+    @Nullable
+    private VirtualFile getProjectBaseDir() {
+        return ProjectPathResolver.getInstance(project).getBaseDir();
     }
     
     /**
      * 获取文件相对于项目根目录的路径
+     * 由 ProjectPathResolver 按文件缓存，重复查询不再拼接字符串
      */
     @Nullable
     private String getRelativePath(@NotNull VirtualFile file) {
-        String projectPath = project.getBasePath();
-        if (projectPath == null) {
-            return null;
-        }
-        
-        String filePath = file.getPath();
-        
-        if (filePath.startsWith(projectPath)) {
-            // 确保有子路径才截取，避免StringIndexOutOfBoundsException
-            if (filePath.length() > projectPath.length()) {
-                String relativePath = filePath.substring(projectPath.length());
-
-                return relativePath.startsWith("/") ? relativePath.substring(1) : relativePath;
-            } else if (filePath.equals(projectPath)) {
-                // 如果是项目根目录本身
-                return "";
-            }
-        }
-        
-        return null;
+        return ProjectPathResolver.getInstance(project).getRelativePath(file);
     }
     
-
-    
     /**
      * 将备注导出为与映射库兼容的格式
      */
     public String exportToMappingFormat() {
+        ensureLoaded();
         Map<String, Object> exportData = new HashMap<>();
         exportData.put("name", "用户备注");
         exportData.put("version", "1.0.0");
         exportData.put("description", "用户自定义备注");
         
+        AnnotationSnapshot data = snapshot();
         Map<String, Object> mappings = new HashMap<>();
-        mappings.put("files", annotations);
-        if (!packageAnnotations.isEmpty()) {
-            mappings.put("packages", packageAnnotations);
+        mappings.put("files", data.files);
+        if (!data.packages.isEmpty()) {
+            mappings.put("packages", data.packages);
         }
-        if (!fileMatchAnnotations.isEmpty()) {
-            mappings.put("fileMatch", fileMatchAnnotations);
+        if (!data.fileMatch.isEmpty()) {
+            mappings.put("fileMatch", data.fileMatch);
         }
-        if (!packageMatchAnnotations.isEmpty()) {
-            mappings.put("packageMatch", packageMatchAnnotations);
+        if (!data.packageMatch.isEmpty()) {
+            mappings.put("packageMatch", data.packageMatch);
         }
         exportData.put("mappings", mappings);
         
@@ -726,55 +1229,64 @@ public class AnnotationService {
      */
     @SuppressWarnings("unchecked")
     public boolean importFromMappingFormat(String jsonContent) {
+        LocalMappingFile mappingFile;
         try {
-            LocalMappingFile mappingFile = gson.fromJson(jsonContent, LocalMappingFile.class);
-            if (mappingFile != null && mappingFile.getMappings() != null) {
-                LocalMappingFile.Mappings mappings = mappingFile.getMappings();
-                boolean hasImported = false;
-                
-                // 导入文件备注
-                Map<String, String> files = mappings.getFiles();
-                if (files != null && !files.isEmpty()) {
-                    annotations.putAll(files);
-                    hasImported = true;
-                }
-                
-                // 导入包备注
-                Map<String, String> packages = mappings.getPackages();
-                if (packages != null && !packages.isEmpty()) {
-                    packageAnnotations.putAll(packages);
-                    hasImported = true;
-                }
-                
-                // 导入文件匹配模式备注
-                Map<String, String> fileMatchPatterns = mappings.getFileMatch();
-                if (fileMatchPatterns != null && !fileMatchPatterns.isEmpty()) {
-                    fileMatchAnnotations.putAll(fileMatchPatterns);
-                    hasImported = true;
-                }
-                
-                // 导入包匹配模式备注
-                Map<String, String> packageMatchPatterns = mappings.getPackageMatch();
-                if (packageMatchPatterns != null && !packageMatchPatterns.isEmpty()) {
-                    packageMatchAnnotations.putAll(packageMatchPatterns);
-                    hasImported = true;
-                }
-                
-                // 导入内置映射库开关状态
-                if (mappingFile.getBuiltinMappingsEnabled() != null) {
-                    this.builtinMappingsEnabled = mappingFile.getBuiltinMappingsEnabled();
-                    hasImported = true;
-                }
-                
-                if (hasImported) {
-                    saveToFile(); // 立即保存到文件
-                    return true;
-                }
-            }
+            mappingFile = gson.fromJson(jsonContent, LocalMappingFile.class);
         } catch (JsonSyntaxException e) {
             LOG.error("导入备注失败: " + e.getMessage(), e);
+            return false;
+        }
+        if (mappingFile == null || mappingFile.getMappings() == null) {
+            return false;
+        }
+        AtomicBoolean imported = new AtomicBoolean(false);
+        boolean appliedNow = runWhenLoaded(() -> importMappings(mappingFile, imported));
+        // 加载完成前排队时，导入在加载完成后执行
+        return !appliedNow || imported.get();
+    }
+    
+    private void importMappings(@NotNull LocalMappingFile mappingFile, @NotNull AtomicBoolean imported) {
+        LocalMappingFile.Mappings mappings = mappingFile.getMappings();
+        update(data -> {
+            // 导入文件备注
+            Map<String, String> files = mappings.getFiles();
+            if (files != null && !files.isEmpty()) {
+                data.files().putAll(files);
+                imported.set(true);
+            }
+            
+            // 导入包备注
+            Map<String, String> packages = mappings.getPackages();
+            if (packages != null && !packages.isEmpty()) {
+                data.packages().putAll(packages);
+                imported.set(true);
+            }
+            
+            // 导入文件匹配模式备注
+            Map<String, String> fileMatchPatterns = mappings.getFileMatch();
+            if (fileMatchPatterns != null && !fileMatchPatterns.isEmpty()) {
+                data.fileMatch().putAll(fileMatchPatterns);
+                imported.set(true);
+            }
+            
+            // 导入包匹配模式备注
+            Map<String, String> packageMatchPatterns = mappings.getPackageMatch();
+            if (packageMatchPatterns != null && !packageMatchPatterns.isEmpty()) {
+                data.packageMatch().putAll(packageMatchPatterns);
+                imported.set(true);
+            }
+            
+            // 导入内置映射库开关状态
+            if (mappingFile.getBuiltinMappingsEnabled() != null) {
+                this.builtinMappingsEnabled = mappingFile.getBuiltinMappingsEnabled();
+                imported.set(true);
+            }
+        });
+        
+        if (imported.get()) {
+            bumpGeneration();
+            saveToFile(); // 立即保存到文件
         }
-        return false;
     }
     
     /**
@@ -793,11 +1305,8 @@ public class AnnotationService {
                     return;
                 }
                 
-                // 扫描 .td-maps 目录下的所有 JSON 文件
-                scanAndLoadMappingFiles(mappingsDir);
-                
-                // 合并所有数据
-                mergeMappingData();
+                // 扫描并流式加载 .td-maps 目录下的所有 JSON 文件
+                loadMappingFiles(mappingsDir, currentLocalEdits());
                 
                 LOG.info("已从 .td-maps 目录加载映射数据");
                 
@@ -816,109 +1325,301 @@ public class AnnotationService {
     }
     
     /**
-     * 扫描并加载 .td-maps 目录下的所有 JSON 文件
+     * 扫描并流式加载 .td-maps 目录下的所有 JSON 文件
+     * 各文件通过 PluginTaskScheduler 并行解析到各自的缓冲区，再按固定顺序合并：
+     * 先主文件，再按文件名排序的其他文件（后合并的条目覆盖先合并的），
+     * 全部合并完成后一次性替换内存中的映射数据
+     * 指纹与快照一致的文件直接回放快照，有文件重新解析时在后台更新快照
+     *
+     * @param expectedEdits 开始加载时的本地修改计数，替换时计数已变化说明有更新的编辑
+     * @return 是否已替换内存中的映射数据；被中断或期间有新的本地修改时返回 false
      */
-    private void scanAndLoadMappingFiles(Path mappingsDir) throws IOException {
-        allMappingFiles.clear();
-        
+    private boolean loadMappingFiles(Path mappingsDir, long expectedEdits) throws IOException {
+        List<Path> jsonFiles;
         try (Stream<Path> files = Files.walk(mappingsDir, 1)) {
-            files.filter(Files::isRegularFile)
-                 .filter(path -> path.toString().toLowerCase().endsWith(".json"))
-                 .forEach(this::loadSingleMappingFile);
+            jsonFiles = files.filter(Files::isRegularFile)
+                             .filter(path -> path.toString().toLowerCase().endsWith(".json"))
+                             .sorted(Comparator.comparing((Path path) -> !isLocalDescriptionFile(path))
+                                               .thenComparing(path -> path.getFileName().toString()))
+                             .collect(Collectors.toList());
         }
+        
+        long startTime = System.nanoTime();
+        AtomicLong peakHeap = new AtomicLong(usedHeap());
+        Map<String, MappingSnapshotCache.CachedFile> snapshot = snapshotCache.read();
+        
+        // 并行解析（或回放快照），当前线程也参与解析
+        List<Callable<MappingData>> tasks = new ArrayList<>(jsonFiles.size());
+        for (Path path : jsonFiles) {
+            MappingSnapshotCache.CachedFile cached = snapshot.get(path.toString());
+            tasks.add(() -> loadMappingFile(path, cached, peakHeap));
+        }
+        List<Future<MappingData>> futures = PluginTaskScheduler.getInstance().invokeAll("mapping-parse", project, tasks);
+        
+        // 按固定顺序合并
+        MappingData merged = new MappingData();
+        List<MappingData> loadedFiles = new ArrayList<>(jsonFiles.size());
+        boolean snapshotStale = snapshot.size() != jsonFiles.size();
+        int totalEntries = 0;
+        int reusedFiles = 0;
+        long totalParseNanos = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            Path path = jsonFiles.get(i);
+            MappingData fileData;
+            try {
+                fileData = futures.get(i).get();
+                futures.set(i, null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.stream().filter(Objects::nonNull).forEach(future -> future.cancel(true));
+                LOG.warn("加载映射文件被中断，保留当前映射数据");
+                return false;
+            } catch (CancellationException e) {
+                LOG.info("项目已关闭，放弃加载映射文件");
+                return false;
+            } catch (ExecutionException e) {
+                LOG.error("加载映射文件失败: " + path + ", 错误: " + e.getCause(), e.getCause());
+                snapshotStale = true;
+                continue;
+            }
+            merged.mergeFrom(fileData, isLocalDescriptionFile(path));
+            loadedFiles.add(fileData);
+            snapshotStale |= !fileData.fromSnapshot || fileData.fingerprintChanged;
+            reusedFiles += fileData.fromSnapshot ? 1 : 0;
+            totalEntries += fileData.entryCount;
+            totalParseNanos += fileData.parseNanos;
+        }
+        
+        if (!applyMappingData(merged, expectedEdits)) {
+            return false;
+        }
+        
+        LOG.info("映射文件加载完成: " + jsonFiles.size() + " 个文件 (快照复用 " + reusedFiles + " 个), "
+                + totalEntries + " 条, 耗时 "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms (解析累计 "
+                + TimeUnit.NANOSECONDS.toMillis(totalParseNanos) + " ms), 峰值堆内存 " + (peakHeap.get() >> 20) + " MB");
+        
+        if (snapshotStale) {
+            scheduleSnapshotWrite(loadedFiles);
+        }
+        return true;
     }
     
     /**
-     * 加载单个映射文件
+     * 在后台写入新的映射快照，任一文件缺少指纹（读取失败）时不写入
      */
-    private void loadSingleMappingFile(Path filePath) {
-        try {
-            String content = Files.readString(filePath);
-            LocalMappingFile mappingFile = gson.fromJson(content, LocalMappingFile.class);
-            
-            if (mappingFile != null) {
-                String fileName = filePath.getFileName().toString();
-                allMappingFiles.put(fileName, mappingFile);
-                LOG.info("已加载映射文件: " + fileName);
+    private void scheduleSnapshotWrite(@NotNull List<MappingData> loadedFiles) {
+        List<MappingSnapshotCache.Fingerprint> fingerprints = new ArrayList<>(loadedFiles.size());
+        for (MappingData fileData : loadedFiles) {
+            if (fileData.fingerprint == null) {
+                return;
             }
-        } catch (IOException | JsonSyntaxException e) {
-            LOG.error("加载映射文件失败: " + filePath + ", 错误: " + e.getMessage(), e);
+            fingerprints.add(fileData.fingerprint);
         }
+        PluginTaskScheduler.getInstance().execute("snapshot-write", project, () -> snapshotCache.write(fingerprints, loadedFiles));
+    }
+    
+    private static boolean isLocalDescriptionFile(Path path) {
+        return LOCAL_DESCRIPTION_FILE.equals(path.getFileName().toString());
     }
     
     /**
-     * 合并所有映射数据到主数据结构中
+     * 加载单个映射文件到独立的缓冲区，在加载线程池中执行
+     * 大小和修改时间与快照一致，或内容哈希一致时回放快照，否则流式解析 JSON
      */
-    private void mergeMappingData() {
-        // 清空现有数据
-        annotations.clear();
-        packageAnnotations.clear();
-        fileMatchAnnotations.clear();
-        packageMatchAnnotations.clear();
-        packagesTextColor.clear();
-        filesTextColor.clear();
-        
-        // 先加载主文件
-        LocalMappingFile localDescription = allMappingFiles.get(LOCAL_DESCRIPTION_FILE);
-        if (localDescription != null) {
-            mergeSingleMappingFile(localDescription);
+    private static MappingData loadMappingFile(Path filePath, @Nullable MappingSnapshotCache.CachedFile cached, AtomicLong peakHeap) {
+        long startTime = System.nanoTime();
+        MappingSnapshotCache.Fingerprint fingerprint = null;
+        try {
+            MappingSnapshotCache.Fingerprint stat = MappingSnapshotCache.stat(filePath);
+            if (cached != null && cached.fingerprint.sameStat(stat)) {
+                fingerprint = cached.fingerprint;
+            } else {
+                fingerprint = MappingSnapshotCache.withHash(filePath, stat);
+            }
             
-            // 从主文件获取全局设置
-            if (localDescription.getBuiltinMappingsEnabled() != null) {
-                this.builtinMappingsEnabled = localDescription.getBuiltinMappingsEnabled();
+            if (cached != null && cached.fingerprint.hash == fingerprint.hash) {
+                MappingData data = new MappingData();
+                data.entryCount = cached.replay(data);
+                data.fromSnapshot = true;
+                data.fingerprintChanged = fingerprint != cached.fingerprint;
+                data.fingerprint = fingerprint;
+                data.parseNanos = System.nanoTime() - startTime;
+                peakHeap.accumulateAndGet(usedHeap(), Math::max);
+                return data;
             }
+        } catch (IOException e) {
+            LOG.warn("读取映射快照失败，重新解析: " + filePath + ", 错误: " + e.getMessage());
         }
         
-        // 再加载其他文件
-        for (Map.Entry<String, LocalMappingFile> entry : allMappingFiles.entrySet()) {
-            if (!LOCAL_DESCRIPTION_FILE.equals(entry.getKey())) {
-                mergeSingleMappingFile(entry.getValue());
-            }
+        MappingData data = parseMappingFile(filePath, peakHeap);
+        data.fingerprint = fingerprint;
+        return data;
+    }
+    
+    /**
+     * 流式解析单个映射文件到独立的缓冲区
+     * 解析失败时保留出错前已读取的条目
+     */
+    private static MappingData parseMappingFile(Path filePath, AtomicLong peakHeap) {
+        MappingData data = new MappingData();
+        long startTime = System.nanoTime();
+        try {
+            data.entryCount = MappingFileLoader.load(filePath, data);
+        } catch (IOException | JsonParseException e) {
+            LOG.error("加载映射文件失败: " + filePath + ", 错误: " + e.getMessage(), e);
+        }
+        data.parseNanos = System.nanoTime() - startTime;
+        peakHeap.accumulateAndGet(usedHeap(), Math::max);
+        LOG.info("已加载映射文件: " + filePath.getFileName() + " (" + data.entryCount + " 条, "
+                + TimeUnit.NANOSECONDS.toMillis(data.parseNanos) + " ms)");
+        return data;
+    }
+    
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+    
+    /**
+     * 当前的本地修改计数
+     */
+    private long currentLocalEdits() {
+        synchronized (mappingLock) {
+            return localEdits;
         }
     }
     
     /**
-     * 合并单个映射文件的数据
+     * 用加载结果替换内存中的映射数据
+     *
+     * @return 加载期间有新的本地修改时不替换并返回 false
      */
-    private void mergeSingleMappingFile(LocalMappingFile mappingFile) {
-        if (mappingFile != null && mappingFile.getMappings() != null) {
-            LocalMappingFile.Mappings mappings = mappingFile.getMappings();
-            
-            // 合并文件映射
-            if (mappings.getFiles() != null) {
-                annotations.putAll(mappings.getFiles());
+    private boolean applyMappingData(MappingData data, long expectedEdits) {
+        // 合并完成后一次性编译模式规则，锁内只做替换
+        AnnotationSnapshot loaded = AnnotationSnapshot.of(data.files, data.packages, data.fileMatch, data.packageMatch,
+            data.filesTextColor, data.packagesTextColor);
+        synchronized (mappingLock) {
+            if (localEdits != expectedEdits) {
+                return false;
             }
+            store.set(loaded);
             
-            // 合并包映射
-            if (mappings.getPackages() != null) {
-                packageAnnotations.putAll(mappings.getPackages());
+            // 全局设置：开关只从主文件获取，语言以最后合并的为准
+            if (data.builtinMappingsEnabled != null) {
+                this.builtinMappingsEnabled = data.builtinMappingsEnabled;
             }
-            
-            // 合并文件匹配映射
-            if (mappings.getFileMatch() != null) {
-                fileMatchAnnotations.putAll(mappings.getFileMatch());
+            if (data.language != null) {
+                language = data.language;
             }
-            
-            // 合并包匹配映射
-            if (mappings.getPackageMatch() != null) {
-                packageMatchAnnotations.putAll(mappings.getPackageMatch());
+        }
+        prewarmTextColors(null, loaded);
+        bumpGeneration();
+        clearLiveView();
+        return true;
+    }
+    
+    /**
+     * 单个文件的解析结果或合并结果，条目按合并顺序覆盖
+     */
+    private static final class MappingData implements MappingFileLoader.Sink, MappingSnapshotCache.Source {
+        final PathTrieMap files = new PathTrieMap();
+        final PathTrieMap packages = new PathTrieMap();
+        final Map<String, String> fileMatch = new LinkedHashMap<>();
+        final Map<String, String> packageMatch = new LinkedHashMap<>();
+        final Map<String, String> filesTextColor = new LinkedHashMap<>();
+        final Map<String, String> packagesTextColor = new LinkedHashMap<>();
+        Boolean builtinMappingsEnabled;
+        String language;
+        int entryCount;
+        long parseNanos;
+        MappingSnapshotCache.Fingerprint fingerprint;
+        boolean fromSnapshot;
+        boolean fingerprintChanged;
+        
+        /**
+         * 合并另一个文件的解析结果，内置映射库开关只从主文件获取
+         */
+        void mergeFrom(@NotNull MappingData other, boolean localDescription) {
+            files.putAll(other.files);
+            packages.putAll(other.packages);
+            fileMatch.putAll(other.fileMatch);
+            packageMatch.putAll(other.packageMatch);
+            filesTextColor.putAll(other.filesTextColor);
+            packagesTextColor.putAll(other.packagesTextColor);
+            if (localDescription && other.builtinMappingsEnabled != null) {
+                builtinMappingsEnabled = other.builtinMappingsEnabled;
             }
-            
-            // 合并包备注字体颜色
-            if (mappings.getPackagesTextColor() != null) {
-                packagesTextColor.putAll(mappings.getPackagesTextColor());
+            if (other.language != null) {
+                language = other.language;
             }
-            
-            // 合并文件备注字体颜色
-            if (mappings.getFilesTextColor() != null) {
-                filesTextColor.putAll(mappings.getFilesTextColor());
+        }
+        
+        @Override
+        public void entry(@NotNull MappingFileLoader.Section section, @NotNull String key, @Nullable String value) {
+            switch (section) {
+                case FILES:
+                    files.put(key, value);
+                    break;
+                case PACKAGES:
+                    packages.put(key, value);
+                    break;
+                case FILE_MATCH:
+                    fileMatch.put(key, value);
+                    break;
+                case PACKAGE_MATCH:
+                    packageMatch.put(key, value);
+                    break;
+                case FILES_TEXT_COLOR:
+                    filesTextColor.put(key, value);
+                    break;
+                case PACKAGES_TEXT_COLOR:
+                    packagesTextColor.put(key, value);
+                    break;
             }
-            
-            // 合并语言设置
-            if (mappingFile.getLanguage() != null) {
-                language = mappingFile.getLanguage();
+        }
+        
+        @Override
+        public void builtinMappingsEnabled(boolean enabled) {
+            builtinMappingsEnabled = enabled;
+        }
+        
+        @Override
+        public void language(@NotNull String language) {
+            this.language = language;
+        }
+        
+        @NotNull
+        @Override
+        public Map<String, String> section(@NotNull MappingFileLoader.Section section) {
+            switch (section) {
+                case FILES:
+                    return files;
+                case PACKAGES:
+                    return packages;
+                case FILE_MATCH:
+                    return fileMatch;
+                case PACKAGE_MATCH:
+                    return packageMatch;
+                case FILES_TEXT_COLOR:
+                    return filesTextColor;
+                case PACKAGES_TEXT_COLOR:
+                default:
+                    return packagesTextColor;
             }
         }
+        
+        @Nullable
+        @Override
+        public Boolean getBuiltinMappingsEnabled() {
+            return builtinMappingsEnabled;
+        }
+        
+        @Nullable
+        @Override
+        public String getLanguage() {
+            return language;
+        }
     }
     
     /**
@@ -938,6 +1639,7 @@ public class AnnotationService {
                     migrateFromXmlContent(xmlContent);
                     
                     // 保存为新格式
+                    bumpGeneration();
                     saveToFile();
                     
                     LOG.info("数据迁移完成，建议删除旧的 annotations.xml 文件");
@@ -953,21 +1655,23 @@ public class AnnotationService {
      */
     private void migrateFromXmlContent(String xmlContent) {
         try {
-            // 清空现有数据
-            annotations.clear();
-            packageAnnotations.clear();
-            fileMatchAnnotations.clear();
-            packageMatchAnnotations.clear();
-            
-            // 解析各个部分
-            parseXmlSectionForMigration(xmlContent, "files", annotations);
-            parseXmlSectionForMigration(xmlContent, "packages", packageAnnotations);
-            parseXmlSectionForMigration(xmlContent, "fileMatch", fileMatchAnnotations);
-            parseXmlSectionForMigration(xmlContent, "packageMatch", packageMatchAnnotations);
+            update(data -> {
+                // 清空现有数据（保留字体颜色，与原有行为一致）
+                Map<String, String> filesTextColor = data.peekFilesTextColor();
+                Map<String, String> packagesTextColor = data.peekPackagesTextColor();
+                data.clear();
+                data.filesTextColor().putAll(filesTextColor);
+                data.packagesTextColor().putAll(packagesTextColor);
+                
+                // 解析各个部分
+                parseXmlSectionForMigration(xmlContent, "files", data.files());
+                parseXmlSectionForMigration(xmlContent, "packages", data.packages());
+                parseXmlSectionForMigration(xmlContent, "fileMatch", data.fileMatch());
+                parseXmlSectionForMigration(xmlContent, "packageMatch", data.packageMatch());
+            });
             
             // 解析内置映射库开关状态
             parseBuiltinMappingsEnabledFromXml(xmlContent);
-            
         } catch (Exception e) {
             LOG.error("迁移 XML 内容失败: " + e.getMessage(), e);
         }
@@ -1038,139 +1742,6 @@ public class AnnotationService {
         }
     }
     
-    /**
-     * 检查文件名是否匹配给定的模式
-     * @param fileName 文件名
-     * @param pattern 匹配模式
-     * @return 是否匹配
-     */
-    private boolean matchesFilePattern(@NotNull String fileName, @NotNull String pattern) {
-        return matchesFilePattern(fileName, pattern, null);
-    }
-    
-    /**
-     * 检查文件名是否匹配给定的模式（支持混合匹配）
-     * @param fileName 文件名
-     * @param pattern 匹配模式
-     * @param relativePath 文件的相对路径（可为null）
-     * @return 是否匹配
-     */
-    private boolean matchesFilePattern(@NotNull String fileName, @NotNull String pattern, @Nullable String relativePath) {
-        try {
-            // 1. 尝试正则表达式匹配
-            if (pattern.contains(".*") || pattern.contains("\\") || pattern.contains("$") || pattern.contains("^")) {
-                return fileName.matches(pattern);
-            }
-            
-            // 2. 检查是否为混合匹配模式（包含路径分隔符）
-            if (pattern.contains("/")) {
-                return matchesMixedPattern(fileName, pattern, relativePath);
-            }
-            
-            // 3. 完全匹配 - 文件名必须完全相等
-            return fileName.equalsIgnoreCase(pattern);
-            
-        } catch (Exception e) {
-            // 如果出错，降级为简单包含匹配
-            return fileName.toLowerCase().contains(pattern.toLowerCase());
-        }
-    }
-    
-    /**
-     * 检查文件是否匹配混合模式（包路径+文件名）
-     * @param fileName 当前文件名
-     * @param pattern 混合模式，如 "com/common/pom.xml"
-     * @param relativePath 文件的相对路径（可为null）
-     * @return 是否匹配
-     */
-    private boolean matchesMixedPattern(@NotNull String fileName, @NotNull String pattern, @Nullable String relativePath) {
-        // 从pattern中提取文件名和包路径
-        int lastSlashIndex = pattern.lastIndexOf('/');
-        if (lastSlashIndex == -1) {
-            return false; // 不应该发生，因为调用前已检查包含'/'
-        }
-        
-        String expectedFileName = pattern.substring(lastSlashIndex + 1);
-        String expectedPackagePath = pattern.substring(0, lastSlashIndex);
-        
-        // 首先检查文件名是否匹配
-        if (!fileName.equalsIgnoreCase(expectedFileName)) {
-            return false;
-        }
-        
-        // 如果没有相对路径信息，只能基于文件名匹配
-        if (relativePath == null || relativePath.isEmpty()) {
-            return true;
-        }
-        
-        // 检查文件是否在期望的包路径中（后缀匹配）
-        // 从relativePath中提取目录路径
-        String fileDir = "";
-        int fileLastSlashIndex = relativePath.lastIndexOf('/');
-        if (fileLastSlashIndex != -1) {
-            fileDir = relativePath.substring(0, fileLastSlashIndex);
-        }
-        
-        // 检查目录路径是否以期望的包路径结尾
-        return fileDir.endsWith(expectedPackagePath);
-    }
-    
-    /**
-     * 检查包路径是否匹配给定的模式
-     * @param packagePath 包路径（可能使用 / 或 . 作为分隔符）
-     * @param pattern 匹配模式
-     * @return 是否匹配
-     */
-    private boolean matchesPackagePattern(@NotNull String packagePath, @NotNull String pattern) {
-        try {
-            // 1. 尝试正则表达式匹配
-            if (pattern.contains(".*") || pattern.contains("\\") || pattern.contains("$") || pattern.contains("^")) {
-                // 将包路径标准化（支持 / 和 . 分隔符）
-                String normalizedPath = packagePath.replace("/", ".");
-                return normalizedPath.matches(pattern);
-            }
-            
-            // 2. 完整路径段匹配 - 确保pattern作为完整的路径段出现
-            String normalizedPath = packagePath.replace("/", ".").toLowerCase();
-            String lowerPattern = pattern.toLowerCase();
-            
-            // 将路径分割为段
-            String[] pathSegments = normalizedPath.split("\\.");
-            String[] patternSegments = lowerPattern.split("\\.");
-            
-            // 检查是否有连续的路径段匹配pattern的所有段
-            if (patternSegments.length == 1) {
-                // 单段匹配：只匹配路径的最后一段（目录名）
-                if (pathSegments.length > 0) {
-                    String lastSegment = pathSegments[pathSegments.length - 1];
-                    return lastSegment.equals(lowerPattern);
-                }
-                return false;
-            } else {
-                // 多段匹配：后缀精准匹配（支持前缀路径，但后缀必须完全匹配）
-                if (patternSegments.length > pathSegments.length) {
-                    return false; // 模式段数不能超过路径段数
-                }
-                
-                // 检查后缀是否完全匹配
-                int pathStart = pathSegments.length - patternSegments.length;
-                for (int i = 0; i < patternSegments.length; i++) {
-                    if (!pathSegments[pathStart + i].equals(patternSegments[i])) {
-                        return false;
-                    }
-                }
-                return true;
-            }
-            
-        } catch (Exception e) {
-            // 如果出错，降级为简单匹配
-            String normalizedPath = packagePath.replace("/", ".").toLowerCase();
-            return normalizedPath.contains(pattern.toLowerCase());
-        }
-    }
-    
-
-    
     /**
      * 反转义XML特殊字符（仅用于迁移）
      */
@@ -1188,9 +1759,8 @@ public class AnnotationService {
      * 实现实时双向绑定：修改JSON文件后自动刷新项目视图
      */
     private void setupFileWatcher() {
-        // 不再需要重复的VFS监听器，RealTimeAnnotationService中已有实时监听器
-        // 保留方法体为空，避免双重监听问题
-        LOG.info("VFS文件监听器已禁用，使用RealTimeAnnotationService的实时监听器");
+        // JsonFileWatcher 是插件唯一的VFS监听器，负责映射文件重新加载和路径缓存失效
+        setupJsonFileWatcher();
     }
     
     /**
@@ -1202,13 +1772,20 @@ public class AnnotationService {
             if (basePath != null) {
                 Path mappingsDir = Paths.get(basePath, MAPPINGS_DIR_NAME);
                 if (Files.exists(mappingsDir)) {
-                    // 扫描并加载所有 JSON 文件
-                    scanAndLoadMappingFiles(mappingsDir);
-                    
-                    // 合并数据
-                    mergeMappingData();
-                    
-                    LOG.info("已从 .td-maps 目录重新加载映射数据");
+                    for (int attempt = 0; attempt < MAX_RELOAD_ATTEMPTS; attempt++) {
+                        // 先写入尚未保存的变更，避免重新加载时丢失
+                        flushNow();
+                        
+                        // 扫描并流式加载所有 JSON 文件；期间有新的本地修改时重新写入后再加载
+                        if (loadMappingFiles(mappingsDir, currentLocalEdits())) {
+                            LOG.info("已从 .td-maps 目录重新加载映射数据");
+                            return;
+                        }
+                        if (Thread.currentThread().isInterrupted()) {
+                            return;
+                        }
+                    }
+                    LOG.info("重新加载期间持续有本地修改，保留内存中的映射数据");
                 }
             }
         } catch (IOException e) {
@@ -1216,6 +1793,28 @@ public class AnnotationService {
         }
     }
     
+    /**
+     * 初次加载尚未完成时记录需要重新加载，由加载线程在加载完成后执行一次
+     *
+     * @return 已记录时返回true（调用方无需立即重新加载），已加载完成时返回false
+     */
+    boolean deferReloadUntilLoaded() {
+        synchronized (mappingLock) {
+            if (loaded) {
+                return false;
+            }
+            reloadAfterLoad = true;
+            return true;
+        }
+    }
+    
+    /**
+     * 映射文件在外部发生变化后重新加载，由 JsonFileWatcher 在后台调用，不刷新VFS和项目视图
+     */
+    void reloadAfterExternalChange() {
+        reloadFromMappingsDirectory();
+    }
+    
     /**
      * 重新加载备注数据（公共方法）
      */
@@ -1270,16 +1869,8 @@ public class AnnotationService {
                         vfsService.refreshMappingsDirectory();
                     }
                     
-                    // 强制刷新项目视图
-                    ProjectViewRefreshService refreshService = new ProjectViewRefreshService(project);
-                    refreshService.refreshProjectView();
-                    refreshService.forceNodeRedecoration();
-                    
-                    // 强制重新装饰所有节点
-                    com.intellij.ide.projectView.ProjectView projectView = com.intellij.ide.projectView.ProjectView.getInstance(project);
-                    if (projectView != null) {
-                        projectView.refresh();
-                    }
+                    // 整体刷新项目视图，重新装饰所有节点
+                    ProjectViewRefreshService.getInstance(project).refreshProjectView();
                     
                     // 强制刷新当前打开的编辑器
                     refreshOpenEditors();
@@ -1356,16 +1947,8 @@ public class AnnotationService {
                         vfsService.refreshMappingsDirectory();
                     }
                     
-                    // 强制刷新项目视图
-                    ProjectViewRefreshService refreshService = new ProjectViewRefreshService(project);
-                    refreshService.refreshProjectView();
-                    refreshService.forceNodeRedecoration();
-                    
-                    // 强制重新装饰所有节点
-                    com.intellij.ide.projectView.ProjectView projectView = com.intellij.ide.projectView.ProjectView.getInstance(project);
-                    if (projectView != null) {
-                        projectView.refresh();
-                    }
+                    // 整体刷新项目视图，重新装饰所有节点
+                    ProjectViewRefreshService.getInstance(project).refreshProjectView();
                 } catch (Exception e) {
                     LOG.warn("UI强制刷新失败: " + e.getMessage());
                 }
@@ -1376,35 +1959,18 @@ public class AnnotationService {
     }
     
     /**
-     * 保存后立即刷新VFS和项目视图
+     * 保存后整体刷新项目视图，用于模式规则变更
+     * VFS 由写回器在文件写入后刷新，这里只刷新项目视图
      */
     private void refreshAfterSave() {
-        try {
-            // 异步执行刷新操作，避免阻塞UI
-            com.intellij.openapi.application.ApplicationManager.getApplication().invokeLater(() -> {
-                try {
-                    // 刷新VFS
-                    VFSRefreshService vfsService = new VFSRefreshService(project);
-                    String basePath = project.getBasePath();
-                    if (basePath != null) {
-                        String jsonPath = basePath + "/.td-maps/local-description.json";
-                        vfsService.refreshJsonFile(jsonPath);
-                        vfsService.refreshMappingsDirectory();
-                    }
-                    
-                    // 刷新项目视图
-                    ProjectViewRefreshService refreshService = new ProjectViewRefreshService(project);
-                    refreshService.refreshProjectView();
-                    refreshService.forceNodeRedecoration();
-                    
-                    LOG.info("保存后刷新完成");
-                } catch (Exception e) {
-                    LOG.warn("保存后刷新失败: " + e.getMessage());
-                }
-            });
-        } catch (Exception e) {
-            LOG.warn("安排保存后刷新失败: " + e.getMessage());
-        }
+        ProjectViewRefreshService.getInstance(project).refreshProjectView();
+    }
+    
+    /**
+     * 保存后只刷新变更路径对应的节点
+     */
+    private void refreshAfterSave(@NotNull Collection<String> changedPaths) {
+        ProjectViewRefreshService.getInstance(project).refreshPaths(changedPaths);
     }
     
     /**
@@ -1420,7 +1986,7 @@ public class AnnotationService {
     public void setProjectTreeAnnotationsEnabled(boolean enabled) {
         this.projectTreeAnnotationsEnabled = enabled;
         // 刷新项目视图以应用更改
-        ProjectView.getInstance(project).refresh();
+        ProjectViewRefreshService.getInstance(project).refreshProjectView();
     }
     
     /**
@@ -1434,12 +2000,17 @@ public class AnnotationService {
      * 设置语言
      */
     public void setLanguage(String language) {
-        this.language = language;
-        // 同步到 LanguageManager
-        com.github.annotations.utils.LanguageManager.setCurrentLanguage(
-            com.github.annotations.utils.LanguageManager.Language.fromCode(language)
-        );
-        saveToFile(); // 保存到文件
+        runWhenLoaded(() -> {
+            synchronized (mappingLock) {
+                this.language = language;
+                localEdits++;
+            }
+            // 同步到 LanguageManager
+            com.github.annotations.utils.LanguageManager.setCurrentLanguage(
+                com.github.annotations.utils.LanguageManager.Language.fromCode(language)
+            );
+            saveToFile(); // 保存到文件
+        });
     }
     
     /**
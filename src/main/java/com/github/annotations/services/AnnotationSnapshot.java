@@ -0,0 +1,170 @@
+package com.github.annotations.services;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 用户备注数据的不可变快照
+ * 写入方在 mappingLock 内基于当前快照构建新版本，再通过 AtomicReference 一次性发布；
+ * 读取方（装饰器、搜索、写回器）直接读取当前快照，无需加锁，也不会看到修改到一半的数据
+ * 快照发布后其中的映射不再被修改，新版本只复制实际被修改的映射
+ */
+final class AnnotationSnapshot {
+
+    static final AnnotationSnapshot EMPTY = of(new PathTrieMap(), new PathTrieMap(), new LinkedHashMap<>(),
+        new LinkedHashMap<>(), new LinkedHashMap<>(), new LinkedHashMap<>());
+
+    final PathTrieMap files;                   // 文件备注
+    final PathTrieMap packages;                // 包备注
+    final Map<String, String> fileMatch;       // 文件匹配模式备注
+    final Map<String, String> packageMatch;    // 包匹配模式备注
+    final Map<String, String> filesTextColor;  // 文件备注字体颜色
+    final Map<String, String> packagesTextColor; // 包备注字体颜色
+
+    // 预编译的模式匹配索引，与 fileMatch / packageMatch 一一对应
+    final PatternRuleIndex fileMatchIndex;
+    final PatternRuleIndex packageMatchIndex;
+
+    private AnnotationSnapshot(PathTrieMap files, PathTrieMap packages,
+                               Map<String, String> fileMatch, Map<String, String> packageMatch,
+                               Map<String, String> filesTextColor, Map<String, String> packagesTextColor,
+                               PatternRuleIndex fileMatchIndex, PatternRuleIndex packageMatchIndex) {
+        this.files = files;
+        this.packages = packages;
+        this.fileMatch = fileMatch;
+        this.packageMatch = packageMatch;
+        this.filesTextColor = filesTextColor;
+        this.packagesTextColor = packagesTextColor;
+        this.fileMatchIndex = fileMatchIndex;
+        this.packageMatchIndex = packageMatchIndex;
+    }
+
+    /**
+     * 用加载结果创建快照，传入的映射此后不得再被修改
+     */
+    @NotNull
+    static AnnotationSnapshot of(@NotNull PathTrieMap files, @NotNull PathTrieMap packages,
+                                 @NotNull Map<String, String> fileMatch, @NotNull Map<String, String> packageMatch,
+                                 @NotNull Map<String, String> filesTextColor, @NotNull Map<String, String> packagesTextColor) {
+        return new AnnotationSnapshot(files, packages, fileMatch, packageMatch, filesTextColor, packagesTextColor,
+            PatternRuleIndex.compileUserFileRules(fileMatch), PatternRuleIndex.compileUserPackageRules(packageMatch));
+    }
+
+    /**
+     * 基于当前快照开始构建新版本
+     */
+    @NotNull
+    Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    /**
+     * 快照构建器，各映射在第一次被修改时才从原快照复制
+     * files / packages 通过写时复制共享原快照的前缀树，单条修改只复制被修改路径上的节点
+     */
+    static final class Builder {
+        private final AnnotationSnapshot base;
+        private PathTrieMap files;
+        private PathTrieMap packages;
+        private Map<String, String> fileMatch;
+        private Map<String, String> packageMatch;
+        private Map<String, String> filesTextColor;
+        private Map<String, String> packagesTextColor;
+
+        private Builder(AnnotationSnapshot base) {
+            this.base = base;
+        }
+
+        /**
+         * 当前构建中的文件备注（只读，未修改时为原快照中的映射）
+         */
+        Map<String, String> peekFiles() {
+            return files != null ? files : base.files;
+        }
+
+        Map<String, String> peekPackages() {
+            return packages != null ? packages : base.packages;
+        }
+
+        Map<String, String> peekFilesTextColor() {
+            return filesTextColor != null ? filesTextColor : base.filesTextColor;
+        }
+
+        Map<String, String> peekPackagesTextColor() {
+            return packagesTextColor != null ? packagesTextColor : base.packagesTextColor;
+        }
+
+        PathTrieMap files() {
+            if (files == null) {
+                files = base.files.copy();
+            }
+            return files;
+        }
+
+        PathTrieMap packages() {
+            if (packages == null) {
+                packages = base.packages.copy();
+            }
+            return packages;
+        }
+
+        Map<String, String> fileMatch() {
+            if (fileMatch == null) {
+                fileMatch = new LinkedHashMap<>(base.fileMatch);
+            }
+            return fileMatch;
+        }
+
+        Map<String, String> packageMatch() {
+            if (packageMatch == null) {
+                packageMatch = new LinkedHashMap<>(base.packageMatch);
+            }
+            return packageMatch;
+        }
+
+        Map<String, String> filesTextColor() {
+            if (filesTextColor == null) {
+                filesTextColor = new LinkedHashMap<>(base.filesTextColor);
+            }
+            return filesTextColor;
+        }
+
+        Map<String, String> packagesTextColor() {
+            if (packagesTextColor == null) {
+                packagesTextColor = new LinkedHashMap<>(base.packagesTextColor);
+            }
+            return packagesTextColor;
+        }
+
+        /**
+         * 清空所有映射（不复制原有数据）
+         */
+        Builder clear() {
+            files = new PathTrieMap();
+            packages = new PathTrieMap();
+            fileMatch = new LinkedHashMap<>();
+            packageMatch = new LinkedHashMap<>();
+            filesTextColor = new LinkedHashMap<>();
+            packagesTextColor = new LinkedHashMap<>();
+            return this;
+        }
+
+        /**
+         * 生成新快照，未修改的映射和模式索引直接沿用原快照
+         */
+        @NotNull
+        AnnotationSnapshot build() {
+            return new AnnotationSnapshot(
+                files != null ? files : base.files,
+                packages != null ? packages : base.packages,
+                fileMatch != null ? fileMatch : base.fileMatch,
+                packageMatch != null ? packageMatch : base.packageMatch,
+                filesTextColor != null ? filesTextColor : base.filesTextColor,
+                packagesTextColor != null ? packagesTextColor : base.packagesTextColor,
+                fileMatch != null ? PatternRuleIndex.compileUserFileRules(fileMatch) : base.fileMatchIndex,
+                packageMatch != null ? PatternRuleIndex.compileUserPackageRules(packageMatch) : base.packageMatchIndex);
+        }
+    }
+}
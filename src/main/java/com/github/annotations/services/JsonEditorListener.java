@@ -3,6 +3,7 @@ package com.github.annotations.services;
 import com.github.annotations.model.LocalMappingFile;
 import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
@@ -18,9 +19,10 @@ import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.util.messages.MessageBusConnection;
 import org.jetbrains.annotations.NotNull;
 
-import javax.swing.*;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 监听JSON编辑器的变化，实现实时备注更新
@@ -34,23 +36,17 @@ public class JsonEditorListener {
     private final ProjectViewRefreshService refreshService;
     private final MessageBusConnection messageBusConnection;
     private final Map<VirtualFile, DocumentListener> documentListeners;
-    private final Timer debounceTimer;
+    private ScheduledFuture<?> pendingUpdate;
     private final Gson gson;
     
     public JsonEditorListener(Project project, AnnotationService annotationService) {
         this.project = project;
         this.annotationService = annotationService;
-        this.refreshService = new ProjectViewRefreshService(project);
+        this.refreshService = ProjectViewRefreshService.getInstance(project);
         this.messageBusConnection = project.getMessageBus().connect();
         this.documentListeners = new HashMap<>();
         this.gson = new Gson();
         
-        // 防抖定时器，50ms后执行更新（从200ms调整为50ms实现更实时响应）
-        this.debounceTimer = new Timer(50, e -> {
-            performUpdate();
-        });
-        this.debounceTimer.setRepeats(false);
-        
         // 检查当前已打开的JSON文件
         checkAndRegisterOpenFiles();
         
@@ -158,10 +154,14 @@ public class JsonEditorListener {
     }
     
     /**
-     * 安排更新（防抖机制）
+     * 安排更新（防抖机制），50ms内的多次变更只更新一次
      */
-    private void scheduleUpdate() {
-        debounceTimer.restart();
+    private synchronized void scheduleUpdate() {
+        if (pendingUpdate != null) {
+            pendingUpdate.cancel(false);
+        }
+        pendingUpdate = PluginTaskScheduler.getInstance()
+            .schedule("json-editor-update", project, this::performUpdate, 50, TimeUnit.MILLISECONDS);
     }
     
     /**
@@ -169,14 +169,11 @@ public class JsonEditorListener {
      */
     private void performUpdate() {
         try {
-            // 获取当前打开的JSON文件
-            VirtualFile jsonFile = findOpenJsonFile();
-            if (jsonFile == null) {
-                return;
-            }
-            
-            // 获取文件内容
-            String jsonContent = getFileContent(jsonFile);
+            // 在后台线程中读取当前打开的JSON文件内容
+            String jsonContent = ReadAction.compute(() -> {
+                VirtualFile jsonFile = findOpenJsonFile();
+                return jsonFile != null ? getFileContent(jsonFile) : null;
+            });
             if (jsonContent == null || jsonContent.trim().isEmpty()) {
                 return;
             }
@@ -287,9 +284,11 @@ public class JsonEditorListener {
         }
         documentListeners.clear();
         
-        // 停止定时器
-        if (debounceTimer != null) {
-            debounceTimer.stop();
+        // 取消等待中的更新
+        synchronized (this) {
+            if (pendingUpdate != null) {
+                pendingUpdate.cancel(false);
+            }
         }
         
         // 断开消息总线连接
@@ -1,45 +1,60 @@
 package com.github.annotations.services;
 
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.openapi.vfs.newvfs.BulkFileListener;
 import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent;
 import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
 import com.intellij.util.messages.MessageBusConnection;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.List;
 
 /**
- * JSON文件监听器
- * 监听IDEA内部对.td-maps目录下所有JSON文件的修改，实时更新备注显示
+ * 插件唯一的 VFS 事件监听器
+ * 按预先计算的 .td-maps 路径前缀过滤事件，不逐条记录日志；
+ * 同一次 after() 中的所有事件合并为一次重新加载和一次刷新；插件自身写入映射文件引起的事件不触发重新加载
+ * 项目内的文件移动、重命名或删除时使相对路径缓存和装饰缓存失效，并增量更新项目文件名索引
  */
 public class JsonFileWatcher implements BulkFileListener {
-    
+
+    private static final Logger LOG = Logger.getInstance(JsonFileWatcher.class);
     private static final String MAPPINGS_DIR_NAME = ".td-maps";
-    
+
     private final Project project;
     private final AnnotationService annotationService;
-    private final ProjectViewRefreshService refreshService;
     private final MessageBusConnection messageBusConnection;
-    
+
+    // .td-maps 目录的路径前缀（以 / 结尾），项目没有根目录时为null
+    @Nullable
+    private final String mappingsDirPrefix;
+
+    // 项目根目录的路径前缀（以 / 结尾），项目没有根目录时为null
+    @Nullable
+    private final String basePrefix;
+
     public JsonFileWatcher(Project project, AnnotationService annotationService) {
         this.project = project;
         this.annotationService = annotationService; // 直接使用传入的引用，避免循环依赖
-        this.refreshService = new ProjectViewRefreshService(project);
-        
+
+        String basePath = project.getBasePath();
+        this.mappingsDirPrefix = basePath != null ? basePath + "/" + MAPPINGS_DIR_NAME + "/" : null;
+        this.basePrefix = basePath != null ? basePath + "/" : null;
+
         // 注册到消息总线
         this.messageBusConnection = project.getMessageBus().connect();
         this.messageBusConnection.subscribe(VirtualFileManager.VFS_CHANGES, this);
-        
 
-        
-        // 记录初始化成功
-        com.intellij.openapi.diagnostic.Logger.getInstance(JsonFileWatcher.class)
-            .info("JsonFileWatcher初始化成功，已注册到VFS系统");
+        LOG.info("JsonFileWatcher初始化成功，已注册到VFS系统");
     }
-    
+
     /**
      * 清理资源
      */
@@ -47,61 +62,105 @@ public class JsonFileWatcher implements BulkFileListener {
         if (messageBusConnection != null) {
             messageBusConnection.disconnect();
         }
-        
+    }
 
+    /**
+     * 是否是.td-maps目录下的JSON文件路径
+     */
+    private boolean isMappingPath(@Nullable String path) {
+        return mappingsDirPrefix != null && path != null
+            && path.startsWith(mappingsDirPrefix) && path.endsWith(".json");
     }
-    
+
     /**
-     * 检查是否是.td-maps目录下的JSON文件
+     * 路径是否会影响项目内节点的相对路径：位于项目根目录下，或是项目根目录本身及其上级目录
      */
-    private boolean isOurJsonFile(@NotNull VirtualFile file) {
-        if (file == null || !file.exists() || !file.getName().endsWith(".json")) {
-            return false;
-        }
-        
-        String projectBasePath = project.getBasePath();
-        if (projectBasePath == null) {
-            return false;
-        }
-        
-        String mappingsPath = projectBasePath + "/" + MAPPINGS_DIR_NAME;
-        return file.getPath().startsWith(mappingsPath);
+    private boolean affectsProjectPaths(@Nullable String path) {
+        return basePrefix != null && path != null
+            && (path.startsWith(basePrefix) || basePrefix.startsWith(path + "/"));
+    }
+
+    /**
+     * 是否是插件自身写入 local-description.json 引起的事件，内存中的数据已是最新，无需重新加载
+     */
+    private boolean isOwnWrite(@NotNull VFileEvent event) {
+        return (event instanceof VFileContentChangeEvent || event instanceof VFileCreateEvent)
+            && annotationService.isOwnMappingWrite(event.getPath());
     }
-    
+
     /**
-     * 处理文件变化事件（包括创建、修改、删除）
+     * 处理一批文件变化事件（包括创建、修改、删除、移动、重命名）
      */
     @Override
     public void after(@NotNull List<? extends VFileEvent> events) {
+        boolean structureChanged = false;
+        boolean mappingsChanged = false;
+        VirtualFile lastChangedMapping = null;
+
         for (VFileEvent event : events) {
-            VirtualFile file = event.getFile();
-            if (isOurJsonFile(file)) {
-                // 记录文件变化类型
-                com.intellij.openapi.diagnostic.Logger.getInstance(JsonFileWatcher.class)
-                    .info("BulkFileListener检测到文件变化: " + event.getClass().getSimpleName() + " - " + file.getPath());
-                
-                // 延迟处理，避免频繁刷新
-                com.intellij.openapi.application.ApplicationManager.getApplication()
-                    .invokeLater(() -> handleJsonFileChanged(file));
+            boolean rename = event instanceof VFilePropertyChangeEvent && ((VFilePropertyChangeEvent) event).isRename();
+            // 项目内的文件移动、重命名或删除会改变节点对应的相对路径，其他项目和外部文件的变化忽略
+            if (!structureChanged) {
+                if (event instanceof VFileDeleteEvent) {
+                    structureChanged = affectsProjectPaths(event.getPath());
+                } else if (event instanceof VFileMoveEvent) {
+                    structureChanged = affectsProjectPaths(event.getPath())
+                        || affectsProjectPaths(((VFileMoveEvent) event).getOldPath());
+                } else if (rename) {
+                    structureChanged = affectsProjectPaths(event.getPath())
+                        || affectsProjectPaths(((VFilePropertyChangeEvent) event).getOldPath());
+                }
             }
+
+            if (isMappingPath(event.getPath())
+                    || event instanceof VFileMoveEvent && isMappingPath(((VFileMoveEvent) event).getOldPath())
+                    || rename && isMappingPath(((VFilePropertyChangeEvent) event).getOldPath())) {
+                if (isOwnWrite(event)) {
+                    continue;
+                }
+                mappingsChanged = true;
+                if (event instanceof VFileContentChangeEvent) {
+                    lastChangedMapping = event.getFile();
+                }
+            }
+        }
+
+        // 增量维护项目文件名索引（尚未创建时无需处理）
+        ProjectFileNameIndex nameIndex = project.getServiceIfCreated(ProjectFileNameIndex.class);
+        if (nameIndex != null) {
+            nameIndex.onVfsEvents(events);
+        }
+
+        if (structureChanged) {
+            ProjectPathResolver.getInstance(project).invalidate();
+            annotationService.bumpGeneration();
+        }
+        if (mappingsChanged) {
+            handleMappingsChanged(lastChangedMapping);
         }
     }
-    
+
     /**
-     * 处理JSON文件变化
+     * 映射文件发生变化：在后台重新加载一次并整体刷新一次
+     *
+     * @param changedFile 内容发生变化的映射文件（多个时为最后一个），用于同步实时缓存
      */
-    private void handleJsonFileChanged(@NotNull VirtualFile file) {
-        try {
-            // 重新加载备注数据
-            annotationService.reloadAnnotations();
-            
-            // 刷新项目视图
-            refreshService.refreshProjectView();
-        } catch (Exception e) {
-            com.intellij.openapi.diagnostic.Logger.getInstance(JsonFileWatcher.class)
-                .warn("处理JSON文件变化失败: " + e.getMessage());
+    private void handleMappingsChanged(@Nullable VirtualFile changedFile) {
+        // 外部修改过的文件内容也要同步到实时缓存，避免旧的编辑内容继续覆盖显示
+        if (changedFile != null) {
+            RealTimeAnnotationService realTimeService = project.getServiceIfCreated(RealTimeAnnotationService.class);
+            if (realTimeService != null) {
+                realTimeService.reloadFromFile(changedFile);
+            }
         }
-    }
-    
 
+        // 初次加载尚未完成时，加载器可能已读取过旧内容：记录下来，由加载线程在加载完成后重新加载一次
+        if (annotationService.deferReloadUntilLoaded()) {
+            return;
+        }
+        PluginTaskScheduler.getInstance().execute("mapping-reload", project, () -> {
+            annotationService.reloadAfterExternalChange();
+            ProjectViewRefreshService.getInstance(project).refreshProjectView();
+        });
+    }
 }
@@ -0,0 +1,181 @@
+package com.github.annotations.services;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 映射文件流式加载器
+ * 用 JsonReader 逐条读取映射条目并直接交给 {@link Sink}，
+ * 不再先把整个文件读成字符串、再构建 LocalMappingFile 对象树
+ */
+public final class MappingFileLoader {
+
+    /**
+     * mappings 下的各个分组，name 为 JSON 中的字段名
+     */
+    public enum Section {
+        FILES("files"),
+        PACKAGES("packages"),
+        FILE_MATCH("fileMatch"),
+        PACKAGE_MATCH("packageMatch"),
+        FILES_TEXT_COLOR("filesTextColor"),
+        PACKAGES_TEXT_COLOR("packagesTextColor");
+
+        private final String jsonName;
+
+        Section(String jsonName) {
+            this.jsonName = jsonName;
+        }
+
+        @Nullable
+        static Section fromJsonName(@NotNull String name) {
+            for (Section section : values()) {
+                if (section.jsonName.equals(name)) {
+                    return section;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 接收解析出的条目和全局设置
+     */
+    public interface Sink {
+        void entry(@NotNull Section section, @NotNull String key, @Nullable String value);
+
+        default void builtinMappingsEnabled(boolean enabled) {
+        }
+
+        default void language(@NotNull String language) {
+        }
+    }
+
+    private MappingFileLoader() {
+    }
+
+    /**
+     * 流式读取映射文件
+     *
+     * @return 读取到的映射条目数
+     */
+    public static int load(@NotNull Path file, @NotNull Sink sink) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return load(reader, sink);
+        }
+    }
+
+    /**
+     * 流式读取映射内容
+     *
+     * @return 读取到的映射条目数
+     */
+    public static int load(@NotNull Reader source, @NotNull Sink sink) throws IOException {
+        JsonReader reader = new JsonReader(source);
+        // 与 Gson.fromJson 的默认行为保持一致
+        reader.setLenient(true);
+        try {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                return 0;
+            }
+
+            int count = 0;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                switch (name) {
+                    case "mappings":
+                        count += readMappings(reader, sink);
+                        break;
+                    case "builtinMappingsEnabled":
+                        Boolean enabled = readBoolean(reader);
+                        if (enabled != null) {
+                            sink.builtinMappingsEnabled(enabled);
+                        }
+                        break;
+                    case "language":
+                        String language = readString(reader);
+                        if (language != null) {
+                            sink.language(language);
+                        }
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            return count;
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new JsonParseException(e.getMessage(), e);
+        }
+    }
+
+    private static int readMappings(@NotNull JsonReader reader, @NotNull Sink sink) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return 0;
+        }
+
+        int count = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            Section section = Section.fromJsonName(reader.nextName());
+            if (section == null || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                sink.entry(section, key, readString(reader));
+                count++;
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+        return count;
+    }
+
+    @Nullable
+    private static String readString(@NotNull JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case NULL:
+                reader.nextNull();
+                return null;
+            case BOOLEAN:
+                return Boolean.toString(reader.nextBoolean());
+            case STRING:
+            case NUMBER:
+                return reader.nextString();
+            default:
+                throw new JsonParseException("Expected a string but was " + reader.peek() + " at " + reader.getPath());
+        }
+    }
+
+    @Nullable
+    private static Boolean readBoolean(@NotNull JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case NULL:
+                reader.nextNull();
+                return null;
+            case STRING:
+                return Boolean.parseBoolean(reader.nextString());
+            case BOOLEAN:
+                return reader.nextBoolean();
+            default:
+                throw new JsonParseException("Expected a boolean but was " + reader.peek() + " at " + reader.getPath());
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.github.annotations.services;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 映射文件写回器
+ * 备注变更只标记为脏，由后台在合并窗口结束后统一写入一次
+ * 写入先落到临时文件再原子替换，避免进程中断时留下半截 JSON
+ */
+public class MappingFilePersister {
+
+    private static final Logger LOG = Logger.getInstance(MappingFilePersister.class);
+
+    // 合并窗口（毫秒），可通过 -Dtree.description.save.delay.ms 调整
+    private static final long SAVE_DELAY_MS = Long.getLong("tree.description.save.delay.ms", 300L);
+
+    private final Path targetPath;
+    private final Supplier<String> contentSupplier;
+    private final Runnable afterWrite;
+
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+    private final Object writeLock = new Object();
+    private ScheduledFuture<?> pendingFlush;
+    private volatile boolean disposed = false;
+
+    // 数据加载完成前不写入，避免用未加载的空数据覆盖磁盘上的文件
+    private volatile boolean ready = false;
+
+    // 最后一次写入后目标文件的修改时间和大小，用于识别自身写入引起的文件事件
+    private volatile long writtenModified = -1;
+    private volatile long writtenSize = -1;
+
+    /**
+     * @param targetPath      目标文件路径
+     * @param contentSupplier 生成待写入内容，在后台线程调用
+     * @param afterWrite      每次成功写入后的回调（如刷新VFS），可为空操作
+     */
+    public MappingFilePersister(@NotNull Path targetPath,
+                                @NotNull Supplier<String> contentSupplier,
+                                @NotNull Runnable afterWrite) {
+        this.targetPath = targetPath;
+        this.contentSupplier = contentSupplier;
+        this.afterWrite = afterWrite;
+    }
+
+    /**
+     * 标记有待写入的变更，窗口内的多次变更只写一次
+     */
+    public void markDirty() {
+        dirty.set(true);
+        if (disposed) {
+            return;
+        }
+        synchronized (this) {
+            if (pendingFlush == null || pendingFlush.isDone()) {
+                pendingFlush = PluginTaskScheduler.getInstance()
+                    .schedule("mapping-save", null, this::flushQuietly, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * 标记数据已加载完成，此后才允许写入；加载期间积累的变更会被安排写入
+     */
+    public void markReady() {
+        ready = true;
+        if (dirty.get()) {
+            markDirty();
+        }
+    }
+
+    /**
+     * 是否存在尚未写入磁盘的变更
+     */
+    public boolean isDirty() {
+        return dirty.get();
+    }
+
+    /**
+     * 立即把待写入的变更写入磁盘（同步），没有变更或数据尚未加载完成时直接返回
+     */
+    public void flushNow() {
+        if (!ready) {
+            return;
+        }
+        synchronized (writeLock) {
+            if (!dirty.getAndSet(false)) {
+                return;
+            }
+            try {
+                writeAtomically(contentSupplier.get());
+            } catch (IOException e) {
+                // 写入失败时保留脏标记，等待下一次变更或关闭时重试
+                dirty.set(true);
+                LOG.error("保存备注文件失败: " + e.getMessage(), e);
+                return;
+            }
+        }
+
+        if (!disposed) {
+            afterWrite.run();
+        }
+    }
+
+    /**
+     * 磁盘上的目标文件是否仍是最后一次写入的内容（按修改时间和大小判断）
+     *
+     * @param path 文件路径（VFS 路径格式）
+     */
+    public boolean isOwnWrite(@NotNull String path) {
+        if (writtenModified < 0) {
+            return false;
+        }
+        try {
+            if (!targetPath.equals(Paths.get(path))) {
+                return false;
+            }
+            BasicFileAttributes attributes = Files.readAttributes(targetPath, BasicFileAttributes.class);
+            return attributes.lastModifiedTime().toMillis() == writtenModified && attributes.size() == writtenSize;
+        } catch (InvalidPathException | IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 取消等待中的写入并立即写入剩余变更，在项目关闭时调用
+     */
+    public void dispose() {
+        disposed = true;
+        synchronized (this) {
+            if (pendingFlush != null) {
+                pendingFlush.cancel(false);
+                pendingFlush = null;
+            }
+        }
+        flushNow();
+    }
+
+    private void flushQuietly() {
+        try {
+            flushNow();
+        } catch (Exception e) {
+            LOG.warn("后台保存备注文件失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 先写临时文件，再原子替换目标文件
+     */
+    private void writeAtomically(@NotNull String content) throws IOException {
+        Files.createDirectories(targetPath.getParent());
+        Path tempPath = targetPath.resolveSibling(targetPath.getFileName() + ".tmp");
+        Files.writeString(tempPath, content, StandardCharsets.UTF_8);
+        try {
+            Files.move(tempPath, targetPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempPath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        BasicFileAttributes attributes = Files.readAttributes(targetPath, BasicFileAttributes.class);
+        writtenSize = attributes.size();
+        writtenModified = attributes.lastModifiedTime().toMillis();
+        LOG.debug("备注已保存到: " + targetPath);
+    }
+}
@@ -13,6 +13,10 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 应用级别的映射库管理服务
@@ -24,33 +28,60 @@ public final class MappingLibraryService {
     private static final Logger LOG = Logger.getInstance(MappingLibraryService.class);
     private static final Gson gson = new Gson();
     
-    private final Map<String, MappingLibrary> libraries = new HashMap<>();
-    private boolean initialized = false;
+    // 预置映射库：名称 -> 资源路径
+    private static final String[][] BUILTIN_LIBRARIES = {
+        {"spring-boot", "/.td-maps/spring-boot-common.json"},
+        {"apache", "/.td-maps/apache-commons.json"},
+        {"mybatis", "/.td-maps/mybatis-common.json"}
+    };
+    
+    private final Map<String, MappingLibrary> libraries = new ConcurrentHashMap<>();
+    
+    // 自定义映射库的导入顺序，决定其在合并索引中的优先级；由 this 保护
+    private final Set<String> customLibraryOrder = new LinkedHashSet<>();
+    
+    // 所有映射库按优先级合并后的查询索引，映射库加载或变化时整体重建
+    private volatile LibraryIndex index = LibraryIndex.EMPTY;
+    
+    // 预置映射库的加载状态，首次需要时才在后台加载
+    private final Map<String, BuiltinLibraryState> builtinStates = new LinkedHashMap<>();
+    
+    // 尚未完成的后台加载数，以及上次通知后映射库是否有变化；全部加载完成后只通知一次
+    private final AtomicInteger pendingBuiltinLoads = new AtomicInteger();
+    private final AtomicBoolean changedSinceNotify = new AtomicBoolean(false);
+    
+    public MappingLibraryService() {
+        for (String[] builtin : BUILTIN_LIBRARIES) {
+            builtinStates.put(builtin[0], new BuiltinLibraryState(builtin[0], builtin[1]));
+        }
+    }
     
     /**
      * 获取应用级别的服务实例
+     * 不再在获取时加载预置映射库，预置映射库在首次查询时于后台加载
      */
     public static MappingLibraryService getInstance() {
-        MappingLibraryService service = ApplicationManager.getApplication().getService(MappingLibraryService.class);
-        // 确保在第一次获取服务时就初始化
-        if (!service.initialized) {
-            service.initializeDefaultLibraries();
-        }
-        return service;
+        return ApplicationManager.getApplication().getService(MappingLibraryService.class);
+    }
+    
+    /**
+     * 检查指定项目是否启用内置映射库
+     * 开关状态由项目的 AnnotationService 维护，这里直接读取，不再遍历打开的项目
+     */
+    public boolean isBuiltinMappingsEnabled(@NotNull com.intellij.openapi.project.Project project) {
+        return !project.isDisposed() && AnnotationService.getInstance(project).isBuiltinMappingsEnabled();
     }
     
     /**
      * 检查内置映射库是否启用
-     * 从项目级别的 AnnotationService 获取状态
+     * 从第一个打开项目获取状态，节点装饰请使用 {@link #isBuiltinMappingsEnabled(com.intellij.openapi.project.Project)}
      */
     public boolean isBuiltinMappingsEnabled() {
         // 尝试从当前项目获取状态，如果没有项目则返回默认值 true
         try {
             com.intellij.openapi.project.Project[] openProjects = com.intellij.openapi.project.ProjectManager.getInstance().getOpenProjects();
             if (openProjects.length > 0) {
-                com.github.annotations.services.AnnotationService annotationService =
-                    com.github.annotations.services.AnnotationService.getInstance(openProjects[0]);
-                return annotationService.isBuiltinMappingsEnabled();
+                return isBuiltinMappingsEnabled(openProjects[0]);
             }
         } catch (Exception e) {
             // 如果获取失败，返回默认值
@@ -60,22 +91,13 @@ public final class MappingLibraryService {
     
     /**
      * 设置内置映射库开关状态
-     * 通过项目级别的 AnnotationService 设置状态
+     * 通过项目级别的 AnnotationService 设置状态；映射库本身是应用级共享的，关闭时只是不再参与该项目的匹配
      */
     public void setBuiltinMappingsEnabled(boolean enabled) {
         try {
             com.intellij.openapi.project.Project[] openProjects = com.intellij.openapi.project.ProjectManager.getInstance().getOpenProjects();
             if (openProjects.length > 0) {
-                com.github.annotations.services.AnnotationService annotationService =
-                    com.github.annotations.services.AnnotationService.getInstance(openProjects[0]);
-                annotationService.setBuiltinMappingsEnabled(enabled);
-                
-                // 根据新状态更新内置映射库
-                if (!enabled) {
-                    clearBuiltinLibraries();
-                } else if (initialized) {
-                    reloadBuiltinLibraries();
-                }
+                AnnotationService.getInstance(openProjects[0]).setBuiltinMappingsEnabled(enabled);
             }
         } catch (Exception e) {
             // 如果设置失败，记录错误
@@ -84,92 +106,133 @@ public final class MappingLibraryService {
     }
     
     /**
-     * 确保服务已初始化（性能优化：减少检查开销）
+     * 在后台加载尚未加载的预置映射库，不阻塞调用线程，重复调用无副作用
      */
-    private void ensureInitialized() {
-        if (!initialized) {
-            initializeDefaultLibraries();
+    public void requestBuiltinLibraries() {
+        for (BuiltinLibraryState state : builtinStates.values()) {
+            if (state.requested.compareAndSet(false, true)) {
+                pendingBuiltinLoads.incrementAndGet();
+                PluginTaskScheduler.getInstance().execute("builtin-library-load", null, () -> {
+                    try {
+                        if (loadBuiltinLibrary(state)) {
+                            changedSinceNotify.set(true);
+                        }
+                    } finally {
+                        pendingBuiltinLoads.decrementAndGet();
+                        notifyIfSettled();
+                    }
+                });
+            }
         }
     }
     
     /**
-     * 初始化预置映射库
+     * 确保预置映射库已开始加载（不阻塞，未加载完成前只查询已加载的映射库）
+     */
+    private void ensureInitialized() {
+        requestBuiltinLibraries();
+    }
+    
+    /**
+     * 在当前线程同步加载所有预置映射库，仅供确实需要完整数据的后台调用方使用
      */
     public void initializeDefaultLibraries() {
-        if (initialized) {
-            return;
+        boolean changed = false;
+        for (BuiltinLibraryState state : builtinStates.values()) {
+            state.requested.set(true);
+            changed |= loadBuiltinLibrary(state);
         }
-        
-        if (!isBuiltinMappingsEnabled()) {
-            initialized = true;
-            return;
+        if (changed) {
+            changedSinceNotify.set(true);
+            notifyIfSettled();
         }
+    }
+    
+    /**
+     * 预置映射库的加载状态
+     */
+    private static final class BuiltinLibraryState {
+        final String name;
+        final String resourcePath;
+        final AtomicBoolean requested = new AtomicBoolean(false);
+        volatile boolean loaded = false;
         
-        try {
-            loadBuiltinLibrary("spring-boot", "/.td-maps/spring-boot-common.json");
-            loadBuiltinLibrary("apache", "/.td-maps/apache-commons.json");
-            loadBuiltinLibrary("mybatis", "/.td-maps/mybatis-common.json");
-            initialized = true;
-        } catch (Exception e) {
-            LOG.error("初始化预置映射库失败", e);
+        BuiltinLibraryState(String name, String resourcePath) {
+            this.name = name;
+            this.resourcePath = resourcePath;
         }
     }
     
     /**
-     * 清空内置映射库
+     * 没有尚未完成的预置映射库加载且有变化时通知一次，打开项目时多个映射库的加载合并为一次刷新
      */
-    private void clearBuiltinLibraries() {
-        libraries.remove("spring-boot");
-        libraries.remove("apache");
-        libraries.remove("mybatis");
+    private void notifyIfSettled() {
+        if (pendingBuiltinLoads.get() == 0 && changedSinceNotify.getAndSet(false)) {
+            notifyLibrariesChanged();
+        }
     }
     
     /**
-     * 重新加载内置映射库
+     * 映射库内容变化后，使所有打开项目的装饰缓存失效，并刷新启用了内置映射库的项目视图
+     * 备注数据尚未加载完成的项目不刷新，其加载完成时会整体刷新一次
      */
-    private void reloadBuiltinLibraries() {
-        if (!isBuiltinMappingsEnabled()) {
-            return;
-        }
-        
-        try {
-            loadBuiltinLibrary("spring-boot", "/.td-maps/spring-boot-common.json");
-            loadBuiltinLibrary("apache", "/.td-maps/apache-commons.json");
-            loadBuiltinLibrary("mybatis", "/.td-maps/mybatis-common.json");
-        } catch (Exception e) {
-            LOG.error("重新加载内置映射库失败", e);
+    private void notifyLibrariesChanged() {
+        for (com.intellij.openapi.project.Project project : com.intellij.openapi.project.ProjectManager.getInstance().getOpenProjects()) {
+            if (!project.isDisposed()) {
+                AnnotationService annotationService = AnnotationService.getInstance(project);
+                annotationService.bumpGeneration();
+                if (annotationService.isLoaded() && annotationService.isBuiltinMappingsEnabled()) {
+                    ProjectViewRefreshService.getInstance(project).refreshProjectView();
+                }
+            }
         }
     }
     
     /**
-     * 加载内置映射库
+     * 加载内置映射库，每个映射库只加载一次，不负责通知
+     *
+     * @return 本次调用是否加载了新的映射库
      */
-    private void loadBuiltinLibrary(@NotNull String name, @NotNull String resourcePath) {
-        try (InputStream inputStream = getClass().getResourceAsStream(resourcePath)) {
-            if (inputStream == null) {
-                return;
+    private boolean loadBuiltinLibrary(@NotNull BuiltinLibraryState state) {
+        if (state.loaded) {
+            return false;
+        }
+        synchronized (state) {
+            if (state.loaded) {
+                return false;
             }
-            
-            InputStreamReader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
-            MappingLibrary library = gson.fromJson(reader, MappingLibrary.class);
-            
-            if (library != null) {
-                libraries.put(name, library);
+            long startTime = System.nanoTime();
+            try (InputStream inputStream = getClass().getResourceAsStream(state.resourcePath)) {
+                if (inputStream == null) {
+                    return false;
+                }
+                
+                InputStreamReader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+                MappingLibrary library = gson.fromJson(reader, MappingLibrary.class);
+                
+                if (library != null) {
+                    libraries.put(state.name, library);
+                    rebuildIndex();
+                    LOG.info("已加载预置映射库: " + state.name + " ("
+                            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms)");
+                    return true;
+                }
+                
+            } catch (IOException | JsonSyntaxException e) {
+                LOG.error("加载映射库失败: " + state.resourcePath, e);
+            } finally {
+                state.loaded = true;
             }
-            
-        } catch (IOException | JsonSyntaxException e) {
-            LOG.error("加载映射库失败: " + resourcePath, e);
+            return false;
         }
     }
     
     /**
-     * 获取所有可用的映射库
+     * 获取已加载的映射库（不阻塞，预置映射库尚未加载完成时不包含在内）
      */
     @NotNull
     public Collection<MappingLibrary> getAllLibraries() {
-        if (!initialized) {
-            initializeDefaultLibraries();
-        }
+        ensureInitialized();
         return new ArrayList<>(libraries.values());
     }
     
@@ -178,94 +241,48 @@ public final class MappingLibraryService {
      */
     @Nullable
     public MappingLibrary getLibrary(@NotNull String name) {
-        if (!initialized) {
-            initializeDefaultLibraries();
-        }
+        ensureInitialized();
         return libraries.get(name);
     }
     
     /**
      * 搜索包名映射
-     * 性能优化：确保初始化 + 快速失败
+     * 性能优化：确保初始化 + 合并索引一次哈希查询
      */
     @Nullable
     public String searchPackageMapping(@NotNull String packageName) {
         ensureInitialized();
-        
-        for (MappingLibrary library : libraries.values()) {
-            if (library.mappings != null && library.mappings.packages != null) {
-                String mapping = library.mappings.packages.get(packageName);
-                if (mapping != null) {
-                    return mapping;
-                }
-            }
-        }
-        
-        return null;
+        return index.packages.get(packageName);
     }
     
     /**
      * 搜索文件名映射
-     * 性能优化：确保初始化 + 快速失败
+     * 性能优化：确保初始化 + 合并索引一次哈希查询
      */
     @Nullable
     public String searchFileMapping(@NotNull String fileName) {
         ensureInitialized();
-        
-        for (MappingLibrary library : libraries.values()) {
-            if (library.mappings != null && library.mappings.files != null) {
-                String mapping = library.mappings.files.get(fileName);
-                if (mapping != null) {
-                    return mapping;
-                }
-            }
-        }
-        
-        return null;
+        return index.files.get(fileName);
     }
     
     /**
      * 搜索通用模式映射
-     * 性能优化：减少字符串操作 + 快速失败
+     * 性能优化：使用预编译的合并规则索引
      */
     @Nullable
     public String searchPatternMapping(@NotNull String pattern) {
         ensureInitialized();
-        
-        for (MappingLibrary library : libraries.values()) {
-            if (library.mappings != null && library.mappings.packageMatch != null) {
-                for (Map.Entry<String, String> entry : library.mappings.packageMatch.entrySet()) {
-                    // 使用精确匹配逻辑，与用户映射保持一致
-                    if (matchesPackagePattern(pattern, entry.getKey())) {
-                        return entry.getValue();
-                    }
-                }
-            }
-        }
-        
-        return null;
+        return index.packageRules.matchPackage(pattern);
     }
     
     /**
      * 搜索文件匹配模式映射
-     * 性能优化：减少字符串操作 + 快速失败
+     * 性能优化：使用预编译的合并规则索引
      */
     @Nullable
     public String searchFileMatchMapping(@NotNull String fileName) {
         ensureInitialized();
-        
-        for (MappingLibrary library : libraries.values()) {
-            if (library.mappings != null && library.mappings.fileMatch != null) {
-                for (Map.Entry<String, String> entry : library.mappings.fileMatch.entrySet()) {
-                    // 使用精确匹配逻辑，与用户映射保持一致
-                    if (matchesFilePattern(fileName, entry.getKey())) {
-                        return entry.getValue();
-                    }
-                }
-            }
-        }
-        
-        return null;
+        return index.fileRules.matchFile(fileName, null);
     }
     
     /**
@@ -294,32 +311,17 @@ public final class MappingLibraryService {
      * 获取所有映射的合并结果 - 用于搜索功能
      * 返回 文件路径 -> 中文说明 的映射
      * 注意：不包含 packageMatch，因为它们只是包名匹配模式，不是实际文件
+     * 不阻塞调用线程：预置映射库加载完成后会递增各项目的备注版本号，依赖此结果的缓存随之重建
      */
     @NotNull
     public Map<String, String> getAllMappings() {
-        if (!initialized) {
-            initializeDefaultLibraries();
-        }
-        
-        Map<String, String> allMappings = new HashMap<>();
-        
-        for (MappingLibrary library : libraries.values()) {
-            if (library.mappings != null) {
-                // 添加包映射
-                if (library.mappings.packages != null) {
-                    allMappings.putAll(library.mappings.packages);
-                }
-                
-                // 添加文件映射
-                if (library.mappings.files != null) {
-                    allMappings.putAll(library.mappings.files);
-                }
-                
-                // 不添加 packageMatch，因为它们只是包名匹配模式
-                // 例如：controller -> "控制器层" 只用于包名显示，不用于搜索
-            }
-        }
+        ensureInitialized();
         
+        LibraryIndex current = index;
+        Map<String, String> allMappings = new HashMap<>(current.packages);
+        // 不添加 packageMatch，因为它们只是包名匹配模式
+        // 例如：controller -> "控制器层" 只用于包名显示，不用于搜索
+        allMappings.putAll(current.files);
         return allMappings;
     }
     
@@ -329,19 +331,8 @@ public final class MappingLibraryService {
      */
     @NotNull
     public Map<String, String> getAllPackageMatchPatterns() {
-        if (!initialized) {
-            initializeDefaultLibraries();
-        }
-        
-        Map<String, String> allPatterns = new HashMap<>();
-        
-        for (MappingLibrary library : libraries.values()) {
-            if (library.mappings != null && library.mappings.packageMatch != null) {
-                allPatterns.putAll(library.mappings.packageMatch);
-            }
-        }
-        
-        return allPatterns;
+        ensureInitialized();
+        return new HashMap<>(index.packageMatch);
     }
     
     /**
@@ -350,19 +341,8 @@ public final class MappingLibraryService {
      */
     @NotNull
     public Map<String, String> getAllFileMatchPatterns() {
-        if (!initialized) {
-            initializeDefaultLibraries();
-        }
-        
-        Map<String, String> allPatterns = new HashMap<>();
-        
-        for (MappingLibrary library : libraries.values()) {
-            if (library.mappings != null && library.mappings.fileMatch != null) {
-                allPatterns.putAll(library.mappings.fileMatch);
-            }
-        }
-        
-        return allPatterns;
+        ensureInitialized();
+        return new HashMap<>(index.fileMatch);
     }
     
     /**
@@ -400,7 +380,16 @@ public final class MappingLibraryService {
                 }
                 
                 // 保存到映射库集合
-                libraries.put(name, library);
+                synchronized (this) {
+                    libraries.put(name, library);
+                    if (!isBuiltinLibrary(name)) {
+                        customLibraryOrder.add(name);
+                    }
+                }
+                rebuildIndex();
+                // 预置映射库仍在加载时合并到加载完成后的那一次通知
+                changedSinceNotify.set(true);
+                notifyIfSettled();
                 LOG.info("成功加载自定义映射库: " + library.name);
                 return true;
             } else {
@@ -433,80 +422,85 @@ public final class MappingLibraryService {
     }
     
     /**
-     * 检查文件名是否匹配给定的模式
-     * @param fileName 文件名
-     * @param pattern 匹配模式
-     * @return 是否匹配
+     * 是否为预置映射库名称
      */
-    private boolean matchesFilePattern(@NotNull String fileName, @NotNull String pattern) {
-        try {
-            // 1. 尝试正则表达式匹配
-            if (pattern.contains(".*") || pattern.contains("\\") || pattern.contains("$") || pattern.contains("^")) {
-                return fileName.matches(pattern);
+    private static boolean isBuiltinLibrary(@NotNull String name) {
+        for (String[] builtin : BUILTIN_LIBRARIES) {
+            if (builtin[0].equals(name)) {
+                return true;
             }
-            
-            // 2. 完全匹配 - 文件名必须完全相等
-            return fileName.equalsIgnoreCase(pattern);
-            
-        } catch (Exception e) {
-            // 如果出错，降级为简单包含匹配
-            return fileName.toLowerCase().contains(pattern.toLowerCase());
         }
+        return false;
     }
     
     /**
-     * 检查包路径是否匹配给定的模式
-     * @param packagePath 包路径（可能使用 / 或 . 作为分隔符）
-     * @param pattern 匹配模式
-     * @return 是否匹配
+     * 按优先级重建合并索引：预置映射库按声明顺序在前，自定义映射库按导入顺序在后
+     * 同一个键以优先级最高的映射库为准
      */
-    private boolean matchesPackagePattern(@NotNull String packagePath, @NotNull String pattern) {
-        try {
-            // 1. 尝试正则表达式匹配
-            if (pattern.contains(".*") || pattern.contains("\\") || pattern.contains("$") || pattern.contains("^")) {
-                // 将包路径标准化（支持 / 和 . 分隔符）
-                String normalizedPath = packagePath.replace("/", ".");
-                return normalizedPath.matches(pattern);
+    private synchronized void rebuildIndex() {
+        List<MappingLibrary> ordered = new ArrayList<>();
+        for (String[] builtin : BUILTIN_LIBRARIES) {
+            MappingLibrary library = libraries.get(builtin[0]);
+            if (library != null) {
+                ordered.add(library);
             }
-            
-            // 2. 完整路径段匹配 - 确保pattern作为完整的路径段出现
-            String normalizedPath = packagePath.replace("/", ".").toLowerCase();
-            String lowerPattern = pattern.toLowerCase();
-            
-            // 将路径分割为段
-            String[] pathSegments = normalizedPath.split("\\.");
-            String[] patternSegments = lowerPattern.split("\\.");
-            
-            // 检查是否有连续的路径段匹配pattern的所有段
-            if (patternSegments.length == 1) {
-                // 单段匹配：只匹配路径的最后一段（目录名）
-                if (pathSegments.length > 0) {
-                    String lastSegment = pathSegments[pathSegments.length - 1];
-                    return lastSegment.equals(lowerPattern);
-                }
-                return false;
-            } else {
-                // 多段匹配：后缀精准匹配（支持前缀路径，但后缀必须完全匹配）
-                if (patternSegments.length > pathSegments.length) {
-                    return false; // 模式段数不能超过路径段数
-                }
-                
-                // 检查后缀是否完全匹配
-                int pathStart = pathSegments.length - patternSegments.length;
-                for (int i = 0; i < patternSegments.length; i++) {
-                    if (!pathSegments[pathStart + i].equals(patternSegments[i])) {
-                        return false;
-                    }
-                }
-                return true;
+        }
+        for (String name : customLibraryOrder) {
+            MappingLibrary library = libraries.get(name);
+            if (library != null) {
+                ordered.add(library);
             }
-            
-        } catch (Exception e) {
-            // 如果出错，降级为简单匹配
-            String normalizedPath = packagePath.replace("/", ".").toLowerCase();
-            return normalizedPath.contains(pattern.toLowerCase());
+        }
+        
+        Map<String, String> packages = new HashMap<>();
+        Map<String, String> files = new HashMap<>();
+        Map<String, String> packageMatch = new LinkedHashMap<>();
+        Map<String, String> fileMatch = new LinkedHashMap<>();
+        for (MappingLibrary library : ordered) {
+            if (library.mappings == null) {
+                continue;
+            }
+            mergeInto(packages, library.mappings.packages);
+            mergeInto(files, library.mappings.files);
+            mergeInto(packageMatch, library.mappings.packageMatch);
+            mergeInto(fileMatch, library.mappings.fileMatch);
+        }
+        index = new LibraryIndex(packages, files, packageMatch, fileMatch);
+    }
+    
+    private static void mergeInto(@NotNull Map<String, String> target, @Nullable Map<String, String> source) {
+        if (source == null) {
+            return;
+        }
+        for (Map.Entry<String, String> entry : source.entrySet()) {
+            if (entry.getKey() != null && entry.getValue() != null) {
+                target.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+    
+    /**
+     * 合并后的映射库索引：精确名称哈希表 + 预编译的模式规则，创建后不可变
+     */
+    private static final class LibraryIndex {
+        static final LibraryIndex EMPTY = new LibraryIndex(
+            Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap());
+        
+        final Map<String, String> packages;
+        final Map<String, String> files;
+        final Map<String, String> packageMatch;
+        final Map<String, String> fileMatch;
+        final PatternRuleIndex packageRules;
+        final PatternRuleIndex fileRules;
+        
+        LibraryIndex(Map<String, String> packages, Map<String, String> files,
+                     Map<String, String> packageMatch, Map<String, String> fileMatch) {
+            this.packages = packages;
+            this.files = files;
+            this.packageMatch = packageMatch;
+            this.fileMatch = fileMatch;
+            this.packageRules = PatternRuleIndex.compileLibraryPackageRules(packageMatch);
+            this.fileRules = PatternRuleIndex.compileLibraryFileRules(fileMatch);
         }
     }
-
 }
-
@@ -0,0 +1,375 @@
+package com.github.annotations.services;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * 映射文件解析结果的二进制快照
+ * 快照保存在 IDE 系统目录下，每个源文件按 路径 + 大小 + 修改时间 + 内容哈希 记录指纹，
+ * 打开项目时以内存映射方式读取快照，指纹未变化的文件直接回放快照中的条目，只有变化的文件才重新解析 JSON
+ * 快照文件名带递增的代号，每次写入新文件而不是替换仍被映射的旧文件（Windows 上无法替换已映射的文件），旧文件随后删除
+ * 可通过 -Dtree.description.snapshot.enabled=false 关闭
+ */
+public final class MappingSnapshotCache {
+
+    private static final Logger LOG = Logger.getInstance(MappingSnapshotCache.class);
+
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("tree.description.snapshot.enabled", "true"));
+    private static final int MAGIC = 0x54444D53; // "TDMS"
+    private static final int VERSION = 1;
+    private static final MappingFileLoader.Section[] SECTIONS = MappingFileLoader.Section.values();
+
+    /**
+     * 快照中可回放的单个文件的解析结果
+     */
+    public interface Source {
+        @NotNull
+        Map<String, String> section(@NotNull MappingFileLoader.Section section);
+
+        @Nullable
+        Boolean getBuiltinMappingsEnabled();
+
+        @Nullable
+        String getLanguage();
+    }
+
+    /**
+     * 源文件指纹
+     */
+    public static final class Fingerprint {
+        final String path;
+        final long size;
+        final long modified;
+        final long hash;
+
+        Fingerprint(@NotNull String path, long size, long modified, long hash) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+
+        /**
+         * 大小和修改时间是否一致（无需读取文件内容）
+         */
+        boolean sameStat(@NotNull Fingerprint other) {
+            return size == other.size && modified == other.modified;
+        }
+    }
+
+    /**
+     * 快照中的一个文件条目，数据块在内存映射缓冲区中按需回放
+     */
+    public static final class CachedFile {
+        final Fingerprint fingerprint;
+        private final ByteBuffer buffer;
+        private final int offset;
+
+        CachedFile(@NotNull Fingerprint fingerprint, @NotNull ByteBuffer buffer, int offset) {
+            this.fingerprint = fingerprint;
+            this.buffer = buffer;
+            this.offset = offset;
+        }
+
+        /**
+         * 把快照中的条目回放到 sink，可在多个线程中并行调用
+         *
+         * @return 回放的映射条目数
+         */
+        int replay(@NotNull MappingFileLoader.Sink sink) throws IOException {
+            ByteBuffer in = buffer.duplicate();
+            in.position(offset);
+            try {
+                byte builtin = in.get();
+                if (builtin >= 0) {
+                    sink.builtinMappingsEnabled(builtin == 1);
+                }
+                String language = readString(in);
+                if (language != null) {
+                    sink.language(language);
+                }
+                int total = 0;
+                for (MappingFileLoader.Section section : SECTIONS) {
+                    int count = in.getInt();
+                    for (int i = 0; i < count; i++) {
+                        String key = readString(in);
+                        if (key == null) {
+                            throw new IOException("快照条目缺少键");
+                        }
+                        sink.entry(section, key, readString(in));
+                    }
+                    total += count;
+                }
+                return total;
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("快照数据已损坏: " + fingerprint.path, e);
+            }
+        }
+    }
+
+    // 快照所在目录及文件名前缀，快照文件为 <前缀>.<代号>.bin；关闭快照时目录为null
+    private final Path snapshotDir;
+    private final String snapshotPrefix;
+
+    MappingSnapshotCache(@Nullable Path snapshotDir, @NotNull String snapshotPrefix) {
+        this.snapshotDir = snapshotDir;
+        this.snapshotPrefix = snapshotPrefix;
+    }
+
+    /**
+     * 项目对应的快照文件位于 IDE 系统目录下，按项目位置哈希区分
+     */
+    @NotNull
+    public static MappingSnapshotCache forProject(@NotNull Project project) {
+        if (!ENABLED) {
+            return new MappingSnapshotCache(null, "");
+        }
+        Path dir = Paths.get(PathManager.getSystemPath(), "tree-description", "snapshots");
+        return new MappingSnapshotCache(dir, project.getLocationHash());
+    }
+
+    /**
+     * 现有快照文件的最大代号，没有时返回 0
+     */
+    private long latestGeneration() {
+        long latest = 0;
+        if (snapshotDir == null || !Files.isDirectory(snapshotDir)) {
+            return latest;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(snapshotDir, snapshotPrefix + ".*.bin")) {
+            for (Path file : stream) {
+                latest = Math.max(latest, generationOf(file));
+            }
+        } catch (IOException e) {
+            LOG.warn("列出映射快照失败: " + e.getMessage());
+        }
+        return latest;
+    }
+
+    /**
+     * 从 <前缀>.<代号>.bin 中解析代号，格式不符时返回 -1
+     */
+    private long generationOf(@NotNull Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(snapshotPrefix + ".") || !name.endsWith(".bin")) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(snapshotPrefix.length() + 1, name.length() - ".bin".length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @NotNull
+    private Path snapshotFile(long generation) {
+        return snapshotDir.resolve(snapshotPrefix + "." + generation + ".bin");
+    }
+
+    /**
+     * 删除比 current 旧的快照文件；仍被映射而无法删除的（Windows）留到下次写入时再删
+     */
+    private void deleteOlderThan(long current) {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(snapshotDir, snapshotPrefix + ".*")) {
+            for (Path file : stream) {
+                long generation = generationOf(file);
+                if (generation >= 0 && generation < current) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        LOG.debug("旧映射快照暂时无法删除: " + file);
+                    }
+                }
+            }
+            // 旧版本不带代号的快照文件
+            Files.deleteIfExists(snapshotDir.resolve(snapshotPrefix + ".bin"));
+        } catch (IOException e) {
+            LOG.debug("清理旧映射快照失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 计算源文件的大小和修改时间，不读取内容（哈希为 0）
+     */
+    @NotNull
+    public static Fingerprint stat(@NotNull Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return new Fingerprint(file.toString(), attributes.size(), attributes.lastModifiedTime().toMillis(), 0L);
+    }
+
+    /**
+     * 在指纹上补充内容哈希
+     */
+    @NotNull
+    public static Fingerprint withHash(@NotNull Path file, @NotNull Fingerprint stat) throws IOException {
+        CRC32C crc = new CRC32C();
+        byte[] chunk = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(chunk)) > 0) {
+                crc.update(chunk, 0, read);
+            }
+        }
+        return new Fingerprint(stat.path, stat.size, stat.modified, crc.getValue());
+    }
+
+    /**
+     * 以内存映射方式读取快照，快照不存在、版本不符或已损坏时返回空表
+     *
+     * @return 源文件路径 -> 快照条目
+     */
+    @NotNull
+    public Map<String, CachedFile> read() {
+        long generation = latestGeneration();
+        if (generation == 0) {
+            return Collections.emptyMap();
+        }
+        Path snapshotPath = snapshotFile(generation);
+        try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 12 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return Collections.emptyMap();
+            }
+            int fileCount = buffer.getInt();
+            Map<String, CachedFile> files = new HashMap<>();
+            for (int i = 0; i < fileCount; i++) {
+                String path = readString(buffer);
+                long size = buffer.getLong();
+                long modified = buffer.getLong();
+                long hash = buffer.getLong();
+                int blockLength = buffer.getInt();
+                if (path == null || blockLength < 0 || blockLength > buffer.remaining()) {
+                    return Collections.emptyMap();
+                }
+                files.put(path, new CachedFile(new Fingerprint(path, size, modified, hash), buffer, buffer.position()));
+                buffer.position(buffer.position() + blockLength);
+            }
+            return files;
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("读取映射快照失败，将重新解析映射文件: " + e.getMessage());
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * 写入新快照：先写临时文件，再原子重命名为下一个代号的快照文件，不替换可能仍被映射的旧快照
+     *
+     * @param fingerprints 按加载顺序排列的源文件指纹（必须带内容哈希）
+     * @param sources      与指纹一一对应的解析结果
+     */
+    public void write(@NotNull List<Fingerprint> fingerprints, @NotNull List<? extends Source> sources) {
+        if (snapshotDir == null) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        try {
+            Files.createDirectories(snapshotDir);
+            long generation = latestGeneration() + 1;
+            Path snapshotPath = snapshotFile(generation);
+            Path tempPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath), 64 * 1024))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(fingerprints.size());
+                ByteArrayOutputStream block = new ByteArrayOutputStream();
+                for (int i = 0; i < fingerprints.size(); i++) {
+                    Fingerprint fingerprint = fingerprints.get(i);
+                    block.reset();
+                    writeBlock(new DataOutputStream(block), sources.get(i));
+
+                    writeString(out, fingerprint.path);
+                    out.writeLong(fingerprint.size);
+                    out.writeLong(fingerprint.modified);
+                    out.writeLong(fingerprint.hash);
+                    out.writeInt(block.size());
+                    block.writeTo(out);
+                }
+            }
+            try {
+                Files.move(tempPath, snapshotPath, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempPath, snapshotPath);
+            }
+            deleteOlderThan(generation);
+            LOG.info("映射快照已更新: " + fingerprints.size() + " 个文件, 耗时 "
+                    + (System.nanoTime() - startTime) / 1_000_000 + " ms");
+        } catch (IOException e) {
+            // 快照只是加速手段，写入失败不影响功能
+            LOG.warn("写入映射快照失败: " + e.getMessage());
+        }
+    }
+
+    private static void writeBlock(@NotNull DataOutputStream out, @NotNull Source source) throws IOException {
+        Boolean builtin = source.getBuiltinMappingsEnabled();
+        out.writeByte(builtin == null ? -1 : (builtin ? 1 : 0));
+        writeString(out, source.getLanguage());
+        for (MappingFileLoader.Section section : SECTIONS) {
+            Map<String, String> entries = source.section(section);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * 字符串格式：UTF-8 字节长度（null 为 -1）+ 字节
+     */
+    private static void writeString(@NotNull DataOutputStream out, @Nullable String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Nullable
+    private static String readString(@NotNull ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        in.position(in.position() + length);
+        return value;
+    }
+}
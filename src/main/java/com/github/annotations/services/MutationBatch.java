@@ -0,0 +1,82 @@
+package com.github.annotations.services;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 批量备注变更
+ * 由 {@link AnnotationService#applyBatch} 收集后在一次加锁内统一应用，只保存一次、刷新一次
+ */
+public final class MutationBatch {
+
+    enum Kind {
+        SET_FILE,
+        SET_PACKAGE,
+        REMOVE_FILE,
+        REMOVE_PACKAGE
+    }
+
+    static final class Operation {
+        final Kind kind;
+        final String path;
+        final String annotation;
+        final String textColor;
+
+        Operation(@NotNull Kind kind, @NotNull String path, @Nullable String annotation, @Nullable String textColor) {
+            this.kind = kind;
+            this.path = path;
+            this.annotation = annotation;
+            this.textColor = textColor;
+        }
+    }
+
+    private final List<Operation> operations = new ArrayList<>();
+
+    MutationBatch() {
+    }
+
+    /**
+     * 添加或更新文件备注（带颜色，默认颜色或空值会移除颜色配置）
+     */
+    public MutationBatch setAnnotation(@NotNull String filePath, @NotNull String annotation, @Nullable String textColor) {
+        operations.add(new Operation(Kind.SET_FILE, filePath, annotation, textColor));
+        return this;
+    }
+
+    /**
+     * 添加或更新包/目录备注（带颜色，默认颜色或空值会移除颜色配置）
+     */
+    public MutationBatch setPackageAnnotation(@NotNull String packagePath, @NotNull String annotation, @Nullable String textColor) {
+        operations.add(new Operation(Kind.SET_PACKAGE, packagePath, annotation, textColor));
+        return this;
+    }
+
+    /**
+     * 删除文件备注及其颜色配置
+     */
+    public MutationBatch removeAnnotation(@NotNull String filePath) {
+        operations.add(new Operation(Kind.REMOVE_FILE, filePath, null, null));
+        return this;
+    }
+
+    /**
+     * 删除包/目录备注及其颜色配置
+     */
+    public MutationBatch removePackageAnnotation(@NotNull String packagePath) {
+        operations.add(new Operation(Kind.REMOVE_PACKAGE, packagePath, null, null));
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    @NotNull
+    List<Operation> getOperations() {
+        return Collections.unmodifiableList(operations);
+    }
+}
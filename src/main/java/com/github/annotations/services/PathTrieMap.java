@@ -0,0 +1,452 @@
+package com.github.annotations.services;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 以路径段为节点的前缀树映射，用于存储 files / packages 备注
+ * 相对路径按 / 拆分为路径段，公共前缀只存一份，路径段字符串在整棵树内复用；
+ * 迭代顺序与 LinkedHashMap 一致（按首次插入顺序），序列化结果不变；
+ * 有序条目按插入序号直接放置生成（线性时间），并缓存到下一次修改，已发布的快照只生成一次
+ * 支持直接按 VirtualFile 的父目录链查找，无需拼接相对路径字符串
+ * {@link #copy()} 以 O(1) 共享整棵树，之后的修改只复制从根到被修改节点的路径（写时复制），
+ * 已发布的版本不受影响；非线程安全，作为 AnnotationSnapshot 发布后只读，可被多个线程并发读取
+ */
+public final class PathTrieMap extends AbstractMap<String, String> {
+
+    /**
+     * 树节点；只有 owner 与所在映射相同的节点才能被原地修改，其余节点与其他版本共享
+     */
+    private static final class Node {
+        final String segment;
+        final Object owner;
+        HashMap<String, Node> children;
+        String value;
+        boolean hasValue;
+        // 首次插入的序号，决定迭代顺序
+        long order;
+
+        Node(String segment, Object owner) {
+            this.segment = segment;
+            this.owner = owner;
+        }
+
+        /**
+         * 复制节点本身及其子节点表（子节点仍共享）
+         */
+        Node(@NotNull Node source, Object owner) {
+            this.segment = source.segment;
+            this.owner = owner;
+            this.children = source.children != null ? new HashMap<>(source.children) : null;
+            this.value = source.value;
+            this.hasValue = source.hasValue;
+            this.order = source.order;
+        }
+
+        @Nullable
+        Node child(@NotNull String name) {
+            return children != null ? children.get(name) : null;
+        }
+    }
+
+    // 本映射拥有的节点的标记；copy() 后双方都换用新标记，现有节点对双方都变为共享
+    private Object owner = new Object();
+    // 根节点对应空路径 ""
+    private Node root = new Node("", owner);
+    // 路径段字符串池，相同的目录名只保留一份，在各版本间共享
+    private ConcurrentHashMap<String, String> segmentPool = new ConcurrentHashMap<>();
+    private int size;
+    private long nextOrder;
+    private int modCount;
+    // 任何修改（包括替换已有键的值）都会递增，用于判断有序条目缓存是否过期
+    private int version;
+    // 最近一次生成的有序条目，映射修改后失效
+    private volatile OrderedEntries orderedEntries;
+
+    /**
+     * 按插入顺序排列的条目及生成时的版本
+     */
+    private static final class OrderedEntries {
+        final int version;
+        final Map.Entry<String, String>[] entries;
+
+        OrderedEntries(int version, Map.Entry<String, String>[] entries) {
+            this.version = version;
+            this.entries = entries;
+        }
+    }
+
+    public PathTrieMap() {
+    }
+
+    public PathTrieMap(@NotNull Map<String, String> source) {
+        putAll(source);
+    }
+
+    /**
+     * 创建与当前映射共享全部节点的副本，耗时与条目数无关；
+     * 此后任一方的修改只复制被修改路径上的节点，不影响另一方
+     */
+    @NotNull
+    public PathTrieMap copy() {
+        PathTrieMap copy = new PathTrieMap();
+        owner = new Object();
+        copy.root = root;
+        copy.segmentPool = segmentPool;
+        copy.size = size;
+        copy.nextOrder = nextOrder;
+        copy.version = version;
+        copy.orderedEntries = orderedEntries;
+        return copy;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        Node node = key instanceof String ? find((String) key) : null;
+        return node != null && node.hasValue;
+    }
+
+    @Override
+    public String get(Object key) {
+        Node node = key instanceof String ? find((String) key) : null;
+        return node != null ? node.value : null;
+    }
+
+    /**
+     * 按文件的父目录链查找，baseDir 对应空路径 ""
+     * @return 文件不在 baseDir 下或没有对应条目时返回null
+     */
+    @Nullable
+    public String get(@NotNull VirtualFile file, @NotNull VirtualFile baseDir) {
+        Node node = find(file, baseDir);
+        return node != null ? node.value : null;
+    }
+
+    /**
+     * 按文件的父目录链检查是否存在条目
+     */
+    public boolean containsKey(@NotNull VirtualFile file, @NotNull VirtualFile baseDir) {
+        Node node = find(file, baseDir);
+        return node != null && node.hasValue;
+    }
+
+    @Override
+    public String put(String key, String value) {
+        Objects.requireNonNull(key);
+        root = owned(root);
+        Node node = root;
+        if (!key.isEmpty()) {
+            int start = 0;
+            while (true) {
+                int end = key.indexOf('/', start);
+                String segment = end < 0 ? key.substring(start) : key.substring(start, end);
+                node = ownedChild(node, segment);
+                if (end < 0) {
+                    break;
+                }
+                start = end + 1;
+            }
+        }
+
+        String old = node.value;
+        node.value = value;
+        version++;
+        if (!node.hasValue) {
+            node.hasValue = true;
+            node.order = nextOrder++;
+            size++;
+            modCount++;
+        }
+        return old;
+    }
+
+    @Override
+    public String remove(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        String path = (String) key;
+        Node existing = find(path);
+        if (existing == null || !existing.hasValue) {
+            return null;
+        }
+
+        // 复制从根到目标节点的路径，记录下来用于剪枝
+        List<Node> chain = new ArrayList<>();
+        root = owned(root);
+        Node node = root;
+        chain.add(node);
+        if (!path.isEmpty()) {
+            int start = 0;
+            while (true) {
+                int end = path.indexOf('/', start);
+                node = ownedChild(node, end < 0 ? path.substring(start) : path.substring(start, end));
+                chain.add(node);
+                if (end < 0) {
+                    break;
+                }
+                start = end + 1;
+            }
+        }
+
+        String old = node.value;
+        node.value = null;
+        node.hasValue = false;
+        size--;
+        modCount++;
+        version++;
+
+        // 剪除不再需要的空节点
+        for (int i = chain.size() - 1; i > 0; i--) {
+            Node current = chain.get(i);
+            if (current.hasValue || (current.children != null && !current.children.isEmpty())) {
+                break;
+            }
+            chain.get(i - 1).children.remove(current.segment);
+        }
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        root = new Node("", owner);
+        segmentPool = new ConcurrentHashMap<>();
+        size = 0;
+        modCount++;
+        version++;
+    }
+
+    @NotNull
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public void clear() {
+                PathTrieMap.this.clear();
+            }
+
+            @NotNull
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new EntryIterator();
+            }
+        };
+    }
+
+    @Nullable
+    private Node find(@NotNull String key) {
+        Node node = root;
+        if (key.isEmpty()) {
+            return node;
+        }
+        int start = 0;
+        while (node != null) {
+            int end = key.indexOf('/', start);
+            if (node.children == null) {
+                return null;
+            }
+            node = node.children.get(end < 0 ? key.substring(start) : key.substring(start, end));
+            if (end < 0) {
+                return node;
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+
+    @Nullable
+    private Node find(@NotNull VirtualFile file, @NotNull VirtualFile baseDir) {
+        if (file.equals(baseDir)) {
+            return root;
+        }
+        VirtualFile parent = file.getParent();
+        if (parent == null) {
+            return null;
+        }
+        Node parentNode = find(parent, baseDir);
+        return parentNode != null ? parentNode.child(file.getName()) : null;
+    }
+
+    /**
+     * 返回本映射可以原地修改的节点，共享的节点先复制
+     */
+    @NotNull
+    private Node owned(@NotNull Node node) {
+        return node.owner == owner ? node : new Node(node, owner);
+    }
+
+    /**
+     * 在本映射拥有的 parent 下取得可修改的子节点，不存在时创建
+     */
+    @NotNull
+    private Node ownedChild(@NotNull Node parent, @NotNull String segment) {
+        if (parent.children == null) {
+            parent.children = new HashMap<>(4);
+        } else {
+            Node child = parent.children.get(segment);
+            if (child != null) {
+                Node ownedChild = owned(child);
+                if (ownedChild != child) {
+                    parent.children.put(ownedChild.segment, ownedChild);
+                }
+                return ownedChild;
+            }
+        }
+        String pooled = segmentPool.putIfAbsent(segment, segment);
+        Node child = new Node(pooled != null ? pooled : segment, owner);
+        parent.children.put(child.segment, child);
+        return child;
+    }
+
+    /**
+     * 按插入顺序排列的全部条目，映射未修改时复用上一次的结果
+     */
+    @NotNull
+    private Map.Entry<String, String>[] orderedEntries() {
+        OrderedEntries cached = orderedEntries;
+        if (cached != null && cached.version == version) {
+            return cached.entries;
+        }
+        Map.Entry<String, String>[] entries = collectInOrder();
+        orderedEntries = new OrderedEntries(version, entries);
+        return entries;
+    }
+
+    /**
+     * 遍历整棵树收集条目，再按插入序号排列
+     * 序号跨度不大时按序号直接放入对应位置（线性时间），删除较多导致跨度过大时对基本类型数组排序
+     */
+    @SuppressWarnings("unchecked")
+    @NotNull
+    private Map.Entry<String, String>[] collectInOrder() {
+        int count = size;
+        Map.Entry<String, String>[] collected = new Map.Entry[count];
+        long[] orders = new long[count];
+        int found = collect(root, new StringBuilder(), 0, collected, orders, 0);
+
+        long minOrder = Long.MAX_VALUE;
+        long maxOrder = Long.MIN_VALUE;
+        for (int i = 0; i < found; i++) {
+            minOrder = Math.min(minOrder, orders[i]);
+            maxOrder = Math.max(maxOrder, orders[i]);
+        }
+        Map.Entry<String, String>[] entries = new Map.Entry[found];
+        if (found == 0) {
+            return entries;
+        }
+        long span = maxOrder - minOrder + 1;
+        if (span <= 4L * found + 64) {
+            Map.Entry<String, String>[] slots = new Map.Entry[(int) span];
+            for (int i = 0; i < found; i++) {
+                slots[(int) (orders[i] - minOrder)] = collected[i];
+            }
+            int next = 0;
+            for (Map.Entry<String, String> slot : slots) {
+                if (slot != null) {
+                    entries[next++] = slot;
+                }
+            }
+        } else {
+            // 序号与下标合并为一个 long 排序，避免装箱
+            long[] packed = new long[found];
+            for (int i = 0; i < found; i++) {
+                packed[i] = (orders[i] - minOrder) * found + i;
+            }
+            Arrays.sort(packed);
+            for (int i = 0; i < found; i++) {
+                entries[i] = collected[(int) (packed[i] % found)];
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * 深度优先收集条目，路径在同一个 StringBuilder 中拼接，只为有值的节点创建键字符串
+     *
+     * @return 收集后的条目数
+     */
+    private static int collect(@NotNull Node node, @NotNull StringBuilder path, int depth,
+                               Map.Entry<String, String>[] collected, long[] orders, int count) {
+        if (node.hasValue && count < collected.length) {
+            orders[count] = node.order;
+            collected[count++] = new AbstractMap.SimpleImmutableEntry<>(path.toString(), node.value);
+        }
+        if (node.children != null) {
+            int length = path.length();
+            for (Node child : node.children.values()) {
+                if (depth > 0) {
+                    path.append('/');
+                }
+                path.append(child.segment);
+                count = collect(child, path, depth + 1, collected, orders, count);
+                path.setLength(length);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 按插入顺序迭代条目
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<String, String>> {
+        private final Map.Entry<String, String>[] entries = orderedEntries();
+        private int next;
+        private Map.Entry<String, String> current;
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return next < entries.length;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= entries.length) {
+                throw new NoSuchElementException();
+            }
+            current = entries[next++];
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            if (current == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            PathTrieMap.this.remove(current.getKey());
+            current = null;
+            expectedModCount = modCount;
+        }
+    }
+}
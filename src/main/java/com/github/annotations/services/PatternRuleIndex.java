@@ -0,0 +1,432 @@
+package com.github.annotations.services;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 预编译的 fileMatch / packageMatch 规则索引
+ * 规则在映射数据合并时一次性分类和编译，查询时不再重复编译正则：
+ * 1. 正则规则预先编译为 Pattern，非法正则降级为包含匹配
+ * 2. 完全匹配规则和混合匹配规则（包路径+文件名）按文件名建立哈希索引
+ * 3. 路径段规则按最后一个路径段建立哈希索引
+ * 查询时只需一次索引探测，再按原有顺序校验少量候选规则和正则规则
+ * 实例创建后不可变，可以在任意线程读取
+ */
+public final class PatternRuleIndex {
+
+    private static final PatternRuleIndex EMPTY = new PatternRuleIndex(Collections.emptyMap(), new HashMap<>(), new Rule[0], false);
+
+    private enum Kind {
+        REGEX,      // 正则表达式匹配
+        CONTAINS,   // 非法正则降级后的包含匹配
+        LITERAL,    // 文件名完全匹配（忽略大小写）
+        MIXED,      // 混合匹配：包路径后缀 + 文件名
+        SEGMENTS,   // 包路径段后缀匹配
+        ALWAYS      // 不含任何路径段的包模式（如 "."），匹配所有路径
+    }
+
+    /**
+     * 单条已编译规则
+     */
+    private static final class Rule {
+        final int order;
+        final String pattern;
+        final String value;
+        final Kind kind;
+        final Pattern regex;
+        final String text;       // CONTAINS/SEGMENTS 单段时的比较文本，MIXED 时为期望的包路径
+        final String name;       // LITERAL/MIXED 时期望的文件名
+        final String[] segments; // SEGMENTS 多段时的模式段
+
+        Rule(int order, String pattern, String value, Kind kind, Pattern regex, String text, String name, String[] segments) {
+            this.order = order;
+            this.pattern = pattern;
+            this.value = value;
+            this.kind = kind;
+            this.regex = regex;
+            this.text = text;
+            this.name = name;
+            this.segments = segments;
+        }
+    }
+
+    private final Map<String, String> exactRules;        // 完全相同的键，优先于模式匹配
+    private final Map<String, List<Rule>> indexedRules;  // 索引键 -> 按顺序排列的候选规则
+    private final Rule[] scanRules;                      // 必须逐条校验的规则（正则/降级/全匹配）
+    private final boolean packageRules;
+
+    private PatternRuleIndex(Map<String, String> exactRules, Map<String, List<Rule>> indexedRules,
+                             Rule[] scanRules, boolean packageRules) {
+        this.exactRules = exactRules;
+        this.indexedRules = indexedRules;
+        this.scanRules = scanRules;
+        this.packageRules = packageRules;
+    }
+
+    /**
+     * 空索引
+     */
+    @NotNull
+    public static PatternRuleIndex empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 编译用户 fileMatch 规则
+     * 与原有逻辑一致：优先完全匹配键，跳过空备注，支持混合匹配模式（如 "com/common/pom.xml"）
+     */
+    @NotNull
+    public static PatternRuleIndex compileUserFileRules(@NotNull Map<String, String> rules) {
+        if (rules.isEmpty()) {
+            return EMPTY;
+        }
+        Map<String, List<Rule>> indexed = new HashMap<>();
+        List<Rule> scan = new ArrayList<>();
+        int order = 0;
+        for (Map.Entry<String, String> entry : rules.entrySet()) {
+            String value = entry.getValue();
+            if (value == null || value.trim().isEmpty()) {
+                continue; // 跳过空值
+            }
+            addFileRule(order++, entry.getKey(), value, true, indexed, scan);
+        }
+        return new PatternRuleIndex(new HashMap<>(rules), indexed, scan.toArray(new Rule[0]), false);
+    }
+
+    /**
+     * 编译映射库 fileMatch 规则（已按优先级合并）
+     * 与映射库原有逻辑一致：没有完全匹配键优先，不跳过空备注，不支持混合匹配
+     */
+    @NotNull
+    public static PatternRuleIndex compileLibraryFileRules(@NotNull Map<String, String> rules) {
+        if (rules.isEmpty()) {
+            return EMPTY;
+        }
+        Map<String, List<Rule>> indexed = new HashMap<>();
+        List<Rule> scan = new ArrayList<>();
+        int order = 0;
+        for (Map.Entry<String, String> entry : rules.entrySet()) {
+            if (entry.getValue() != null) {
+                addFileRule(order++, entry.getKey(), entry.getValue(), false, indexed, scan);
+            }
+        }
+        return new PatternRuleIndex(Collections.emptyMap(), indexed, scan.toArray(new Rule[0]), false);
+    }
+
+    /**
+     * 编译用户 packageMatch 规则
+     * 与原有逻辑一致：优先完全匹配键，跳过空备注
+     */
+    @NotNull
+    public static PatternRuleIndex compileUserPackageRules(@NotNull Map<String, String> rules) {
+        if (rules.isEmpty()) {
+            return EMPTY;
+        }
+        Map<String, List<Rule>> indexed = new HashMap<>();
+        List<Rule> scan = new ArrayList<>();
+        int order = 0;
+        for (Map.Entry<String, String> entry : rules.entrySet()) {
+            String value = entry.getValue();
+            if (value == null || value.trim().isEmpty()) {
+                continue; // 跳过空值
+            }
+            addPackageRule(order++, entry.getKey(), value, indexed, scan);
+        }
+        return new PatternRuleIndex(new HashMap<>(rules), indexed, scan.toArray(new Rule[0]), true);
+    }
+
+    /**
+     * 编译映射库 packageMatch 规则（已按优先级合并）
+     * 与映射库原有逻辑一致：没有完全匹配键优先，不跳过空备注
+     */
+    @NotNull
+    public static PatternRuleIndex compileLibraryPackageRules(@NotNull Map<String, String> rules) {
+        if (rules.isEmpty()) {
+            return EMPTY;
+        }
+        Map<String, List<Rule>> indexed = new HashMap<>();
+        List<Rule> scan = new ArrayList<>();
+        int order = 0;
+        for (Map.Entry<String, String> entry : rules.entrySet()) {
+            if (entry.getValue() != null) {
+                addPackageRule(order++, entry.getKey(), entry.getValue(), indexed, scan);
+            }
+        }
+        return new PatternRuleIndex(Collections.emptyMap(), indexed, scan.toArray(new Rule[0]), true);
+    }
+
+    /**
+     * 根据文件名查找匹配的备注
+     * @param fileName 文件名
+     * @param relativePath 文件的相对路径（可为null，用于混合匹配）
+     * @return 匹配的备注
+     */
+    @Nullable
+    public String matchFile(@NotNull String fileName, @Nullable String relativePath) {
+        Map.Entry<String, String> match = matchFileRule(fileName, relativePath);
+        return match != null ? match.getValue() : null;
+    }
+    
+    /**
+     * 根据文件名查找匹配的规则
+     * @return 命中的 模式 -> 备注，未命中时为null
+     */
+    @Nullable
+    public Map.Entry<String, String> matchFileRule(@NotNull String fileName, @Nullable String relativePath) {
+        if (packageRules) {
+            return null;
+        }
+        String exactMatch = exactRules.get(fileName);
+        if (exactMatch != null) {
+            return new AbstractMap.SimpleImmutableEntry<>(fileName, exactMatch);
+        }
+        if (indexedRules.isEmpty() && scanRules.length == 0) {
+            return null;
+        }
+        String key = indexedRules.isEmpty() ? null : foldCase(fileName);
+        Rule rule = findRule(key, fileName, relativePath);
+        return rule != null ? new AbstractMap.SimpleImmutableEntry<>(rule.pattern, rule.value) : null;
+    }
+
+    /**
+     * 根据包路径查找匹配的备注
+     * @param packagePath 包路径（可能使用 / 或 . 作为分隔符）
+     * @return 匹配的备注
+     */
+    @Nullable
+    public String matchPackage(@NotNull String packagePath) {
+        Map.Entry<String, String> match = matchPackageRule(packagePath);
+        return match != null ? match.getValue() : null;
+    }
+    
+    /**
+     * 根据包路径查找匹配的规则
+     * @return 命中的 模式 -> 备注，未命中时为null
+     */
+    @Nullable
+    public Map.Entry<String, String> matchPackageRule(@NotNull String packagePath) {
+        if (!packageRules) {
+            return null;
+        }
+        String exactMatch = exactRules.get(packagePath);
+        if (exactMatch != null) {
+            return new AbstractMap.SimpleImmutableEntry<>(packagePath, exactMatch);
+        }
+        if (indexedRules.isEmpty() && scanRules.length == 0) {
+            return null;
+        }
+
+        String normalizedPath = packagePath.replace("/", ".");
+        String key = indexedRules.isEmpty() ? null : lastSegment(normalizedPath.toLowerCase());
+        Rule rule = findRule(key, normalizedPath, null);
+        return rule != null ? new AbstractMap.SimpleImmutableEntry<>(rule.pattern, rule.value) : null;
+    }
+
+    /**
+     * 规则是否为空
+     */
+    public boolean isEmpty() {
+        return exactRules.isEmpty() && indexedRules.isEmpty() && scanRules.length == 0;
+    }
+
+    /**
+     * 按原有顺序查找第一条匹配的规则：先探测索引得到候选规则，再只校验顺序更靠前的扫描规则
+     */
+    @Nullable
+    private Rule findRule(@Nullable String key, @NotNull String subject, @Nullable String relativePath) {
+        Rule best = null;
+        if (key != null) {
+            List<Rule> candidates = indexedRules.get(key);
+            if (candidates != null) {
+                for (Rule rule : candidates) {
+                    if (matches(rule, subject, relativePath)) {
+                        best = rule;
+                        break;
+                    }
+                }
+            }
+        }
+        for (Rule rule : scanRules) {
+            if (best != null && rule.order > best.order) {
+                break;
+            }
+            if (matches(rule, subject, relativePath)) {
+                return rule;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 校验单条规则
+     */
+    private boolean matches(@NotNull Rule rule, @NotNull String subject, @Nullable String relativePath) {
+        switch (rule.kind) {
+            case REGEX:
+                return rule.regex.matcher(subject).matches();
+            case CONTAINS:
+                return subject.toLowerCase().contains(rule.text);
+            case LITERAL:
+                return subject.equalsIgnoreCase(rule.name);
+            case MIXED:
+                return matchesMixedRule(rule, subject, relativePath);
+            case SEGMENTS:
+                return matchesSegmentRule(rule, subject);
+            case ALWAYS:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 混合模式校验：文件名相同，且文件所在目录以期望的包路径结尾
+     */
+    private static boolean matchesMixedRule(@NotNull Rule rule, @NotNull String fileName, @Nullable String relativePath) {
+        if (!fileName.equalsIgnoreCase(rule.name)) {
+            return false;
+        }
+
+        // 如果没有相对路径信息，只能基于文件名匹配
+        if (relativePath == null || relativePath.isEmpty()) {
+            return true;
+        }
+
+        int fileLastSlashIndex = relativePath.lastIndexOf('/');
+        String fileDir = fileLastSlashIndex != -1 ? relativePath.substring(0, fileLastSlashIndex) : "";
+        return fileDir.endsWith(rule.text);
+    }
+
+    /**
+     * 路径段校验：单段只匹配最后一段，多段要求后缀完全匹配
+     */
+    private static boolean matchesSegmentRule(@NotNull Rule rule, @NotNull String normalizedPath) {
+        String[] pathSegments = normalizedPath.toLowerCase().split("\\.");
+        if (rule.segments == null) {
+            return pathSegments.length > 0 && pathSegments[pathSegments.length - 1].equals(rule.text);
+        }
+
+        String[] patternSegments = rule.segments;
+        if (patternSegments.length > pathSegments.length) {
+            return false; // 模式段数不能超过路径段数
+        }
+        int pathStart = pathSegments.length - patternSegments.length;
+        for (int i = 0; i < patternSegments.length; i++) {
+            if (!pathSegments[pathStart + i].equals(patternSegments[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 分类并编译单条文件匹配规则
+     * @param mixed 是否把含 / 的模式作为混合匹配（包路径+文件名）处理
+     */
+    private static void addFileRule(int order, String pattern, String value, boolean mixed,
+                                    Map<String, List<Rule>> indexed, List<Rule> scan) {
+        if (isRegexPattern(pattern)) {
+            scan.add(compileRegexRule(order, pattern, value));
+        } else if (mixed && pattern.contains("/")) {
+            int lastSlashIndex = pattern.lastIndexOf('/');
+            String expectedFileName = pattern.substring(lastSlashIndex + 1);
+            String expectedPackagePath = pattern.substring(0, lastSlashIndex);
+            Rule rule = new Rule(order, pattern, value, Kind.MIXED, null, expectedPackagePath, expectedFileName, null);
+            addIndexed(indexed, foldCase(expectedFileName), rule);
+        } else {
+            addIndexed(indexed, foldCase(pattern), new Rule(order, pattern, value, Kind.LITERAL, null, null, pattern, null));
+        }
+    }
+
+    /**
+     * 分类并编译单条包匹配规则
+     */
+    private static void addPackageRule(int order, String pattern, String value,
+                                       Map<String, List<Rule>> indexed, List<Rule> scan) {
+        if (isRegexPattern(pattern)) {
+            scan.add(compileRegexRule(order, pattern, value));
+            return;
+        }
+
+        String lowerPattern = pattern.toLowerCase();
+        String[] patternSegments = lowerPattern.split("\\.");
+        if (patternSegments.length == 0) {
+            scan.add(new Rule(order, pattern, value, Kind.ALWAYS, null, null, null, null));
+        } else if (patternSegments.length == 1) {
+            addIndexed(indexed, lowerPattern, new Rule(order, pattern, value, Kind.SEGMENTS, null, lowerPattern, null, null));
+        } else {
+            Rule rule = new Rule(order, pattern, value, Kind.SEGMENTS, null, null, null, patternSegments);
+            addIndexed(indexed, patternSegments[patternSegments.length - 1], rule);
+        }
+    }
+
+    /**
+     * 编译正则规则，非法正则降级为包含匹配
+     */
+    private static Rule compileRegexRule(int order, String pattern, String value) {
+        try {
+            return new Rule(order, pattern, value, Kind.REGEX, Pattern.compile(pattern), null, null, null);
+        } catch (PatternSyntaxException e) {
+            return new Rule(order, pattern, value, Kind.CONTAINS, null, pattern.toLowerCase(), null, null);
+        }
+    }
+
+    private static void addIndexed(Map<String, List<Rule>> indexed, String key, Rule rule) {
+        indexed.computeIfAbsent(key, k -> new ArrayList<>(1)).add(rule);
+    }
+
+    /**
+     * 判断是否按正则表达式处理
+     */
+    private static boolean isRegexPattern(@NotNull String pattern) {
+        return pattern.contains(".*") || pattern.contains("\\") || pattern.contains("$") || pattern.contains("^");
+    }
+
+    /**
+     * 与 String.split("\\.") 一致地取最后一个路径段，不分配中间数组
+     * @return 最后一段；路径只由分隔符组成时返回 null
+     */
+    @Nullable
+    private static String lastSegment(@NotNull String normalizedPath) {
+        if (normalizedPath.isEmpty()) {
+            return "";
+        }
+        int end = normalizedPath.length();
+        while (end > 0 && normalizedPath.charAt(end - 1) == '.') {
+            end--;
+        }
+        if (end == 0) {
+            return null;
+        }
+        int start = normalizedPath.lastIndexOf('.', end - 1) + 1;
+        return normalizedPath.substring(start, end);
+    }
+
+    /**
+     * 与 equalsIgnoreCase 等价的大小写折叠，用作忽略大小写的索引键
+     */
+    @NotNull
+    private static String foldCase(@NotNull String text) {
+        char[] chars = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            char folded = Character.toLowerCase(Character.toUpperCase(c));
+            if (folded != c) {
+                if (chars == null) {
+                    chars = text.toCharArray();
+                }
+                chars[i] = folded;
+            }
+        }
+        return chars != null ? new String(chars) : text;
+    }
+}
@@ -0,0 +1,343 @@
+package com.github.annotations.services;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 插件统一的后台任务调度器（应用级服务）
+ * 保存、解析、索引重建、搜索等后台任务都通过这里执行，底层是平台线程池之上的有界调度器，
+ * 打开多个项目也不会额外创建线程
+ * 每个任务带名称便于定位问题；绑定项目的任务在项目关闭时自动取消；记录排队深度等指标
+ */
+public final class PluginTaskScheduler implements Disposable {
+
+    private static final Logger LOG = Logger.getInstance(PluginTaskScheduler.class);
+
+    // 最大并发线程数，可通过 -Dtree.description.scheduler.threads 调整
+    private static final int MAX_THREADS = Integer.getInteger("tree.description.scheduler.threads",
+        Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())));
+    // 排队任务达到该数量时输出警告
+    private static final int QUEUE_WARN_THRESHOLD = 64;
+    // 执行时间超过该值（毫秒）的任务输出调试日志
+    private static final long SLOW_TASK_MS = 500L;
+
+    private final ScheduledExecutorService executor =
+        AppExecutorUtil.createBoundedScheduledExecutorService("TreeDescription Scheduler", MAX_THREADS);
+
+    // 项目 -> 该项目尚未结束的任务，项目关闭时统一取消
+    private final Map<Project, Set<TrackedTask>> projectTasks = new ConcurrentHashMap<>();
+
+    // 指标
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger peakQueued = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+
+    /**
+     * 获取调度器实例
+     */
+    public static PluginTaskScheduler getInstance() {
+        return ApplicationManager.getApplication().getService(PluginTaskScheduler.class);
+    }
+
+    /**
+     * 立即在后台执行任务
+     *
+     * @param name    任务名称，用于日志
+     * @param project 任务所属项目，项目关闭时取消；为null表示应用级任务
+     */
+    @NotNull
+    public ScheduledFuture<?> execute(@NotNull String name, @Nullable Project project, @NotNull Runnable task) {
+        return schedule(name, project, task, 0L, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 延迟执行任务，返回的句柄可取消，未开始的任务取消后不再计入排队深度
+     *
+     * @param name    任务名称，用于日志
+     * @param project 任务所属项目，项目关闭时取消；为null表示应用级任务
+     */
+    @NotNull
+    public ScheduledFuture<?> schedule(@NotNull String name, @Nullable Project project, @NotNull Runnable task,
+                                       long delay, @NotNull TimeUnit unit) {
+        return submit(name, project, task, delay, unit);
+    }
+
+    /**
+     * 并行执行一组任务，返回与任务顺序一致的结果
+     * 调用线程会执行尚未被调度线程取走的任务，返回时所有任务都已结束（完成、失败或因项目关闭而取消），
+     * 因此可以在调度线程中调用而不会因线程耗尽死锁
+     *
+     * @param name    任务名称，用于日志
+     * @param project 任务所属项目，项目关闭时未开始的任务被取消；为null表示应用级任务
+     */
+    @NotNull
+    public <T> List<Future<T>> invokeAll(@NotNull String name, @Nullable Project project,
+                                         @NotNull List<? extends Callable<T>> tasks) {
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        List<TrackedTask> tracked = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            FutureTask<T> future = new FutureTask<>(task);
+            futures.add(future);
+            tracked.add(submit(name, project, future, 0L, TimeUnit.MILLISECONDS));
+        }
+        // 由调用线程执行尚未开始的任务，已被调度线程取走的任务在这里等待其结束
+        for (TrackedTask task : tracked) {
+            task.run();
+        }
+        for (Future<T> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException | CancellationException e) {
+                // 由调用方通过返回的 Future 处理
+            }
+        }
+        return futures;
+    }
+
+    @NotNull
+    private TrackedTask submit(@NotNull String name, @Nullable Project project, @NotNull Runnable task,
+                               long delay, @NotNull TimeUnit unit) {
+        TrackedTask tracked = new TrackedTask(name, project, task);
+        int depth = queued.incrementAndGet();
+        peakQueued.accumulateAndGet(depth, Math::max);
+        if (depth == QUEUE_WARN_THRESHOLD) {
+            LOG.warn("后台任务积压: " + describeMetrics());
+        }
+
+        if (project != null && !track(project, tracked)) {
+            tracked.cancel(false);
+            return tracked;
+        }
+        try {
+            tracked.delegate = executor.schedule(tracked, delay, unit);
+        } catch (RejectedExecutionException e) {
+            // 调度器已关闭（IDE 退出中）
+            LOG.debug("后台任务被拒绝: " + name);
+            tracked.cancel(false);
+        }
+        return tracked;
+    }
+
+    /**
+     * 当前排队（已提交尚未开始）的任务数
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * 当前正在执行的任务数
+     */
+    public int getRunningCount() {
+        return running.get();
+    }
+
+    /**
+     * 调度器指标摘要
+     */
+    @NotNull
+    public String describeMetrics() {
+        return "queued=" + queued.get() + ", running=" + running.get() + ", peakQueued=" + peakQueued.get()
+            + ", completed=" + completed.get() + ", failed=" + failed.get() + ", cancelled=" + cancelled.get()
+            + ", threads=" + MAX_THREADS;
+    }
+
+    /**
+     * 取消项目的所有未结束任务
+     */
+    public void cancelAll(@NotNull Project project) {
+        Set<TrackedTask> tasks = projectTasks.remove(project);
+        if (tasks == null) {
+            return;
+        }
+        for (TrackedTask task : tasks) {
+            task.cancel(false);
+        }
+        if (!tasks.isEmpty()) {
+            LOG.debug("项目关闭，已取消 " + tasks.size() + " 个后台任务");
+        }
+    }
+
+    /**
+     * 登记项目任务，首次登记时在项目关闭时注册取消回调
+     *
+     * @return 项目已关闭时返回false
+     */
+    private boolean track(@NotNull Project project, @NotNull TrackedTask task) {
+        if (project.isDisposed()) {
+            return false;
+        }
+        Set<TrackedTask> tasks = projectTasks.computeIfAbsent(project, p -> {
+            Disposer.register(p, () -> cancelAll(p));
+            return ConcurrentHashMap.newKeySet();
+        });
+        tasks.add(task);
+        return true;
+    }
+
+    private void untrack(@NotNull TrackedTask task) {
+        if (task.project != null) {
+            Set<TrackedTask> tasks = projectTasks.get(task.project);
+            if (tasks != null) {
+                tasks.remove(task);
+            }
+        }
+    }
+
+    @Override
+    public void dispose() {
+        executor.shutdownNow();
+        projectTasks.clear();
+        LOG.info("后台任务调度器已关闭: " + describeMetrics());
+    }
+
+    /**
+     * 带名称和指标统计的任务，同时作为返回给调用方的句柄
+     */
+    private final class TrackedTask implements Runnable, ScheduledFuture<Object> {
+        final String name;
+        final Project project;
+        private final Runnable task;
+        // 任务已开始执行或已被取消，两者只会发生一个
+        private final AtomicBoolean started = new AtomicBoolean(false);
+        volatile ScheduledFuture<?> delegate;
+
+        TrackedTask(@NotNull String name, @Nullable Project project, @NotNull Runnable task) {
+            this.name = name;
+            this.project = project;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            queued.decrementAndGet();
+            running.incrementAndGet();
+            long startTime = System.nanoTime();
+            try {
+                if (project == null || !project.isDisposed()) {
+                    task.run();
+                } else {
+                    cancelTask();
+                }
+                completed.incrementAndGet();
+            } catch (ProcessCanceledException e) {
+                cancelled.incrementAndGet();
+            } catch (Throwable e) {
+                failed.incrementAndGet();
+                LOG.warn("后台任务执行失败: " + name, e);
+            } finally {
+                running.decrementAndGet();
+                untrack(this);
+                long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+                if (elapsedMs >= SLOW_TASK_MS) {
+                    LOG.debug("后台任务 " + name + " 耗时 " + elapsedMs + " ms");
+                }
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            ScheduledFuture<?> future = delegate;
+            boolean result = future == null || future.cancel(mayInterruptIfRunning);
+            if (started.compareAndSet(false, true)) {
+                queued.decrementAndGet();
+                cancelled.incrementAndGet();
+                untrack(this);
+                cancelTask();
+                return true;
+            }
+            return result && future != null;
+        }
+
+        /**
+         * 任务本身是 Future 时一并取消，避免等待其结果的调用方永远阻塞
+         */
+        private void cancelTask() {
+            if (task instanceof Future) {
+                ((Future<?>) task).cancel(false);
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            ScheduledFuture<?> future = delegate;
+            return future == null ? started.get() : future.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            ScheduledFuture<?> future = delegate;
+            return future == null ? started.get() : future.isDone();
+        }
+
+        @Override
+        public Object get() throws InterruptedException, ExecutionException {
+            ScheduledFuture<?> future = delegate;
+            if (future == null) {
+                throw new CancellationException(name);
+            }
+            return future.get();
+        }
+
+        @Override
+        public Object get(long timeout, @NotNull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            ScheduledFuture<?> future = delegate;
+            if (future == null) {
+                throw new CancellationException(name);
+            }
+            return future.get(timeout, unit);
+        }
+
+        @Override
+        public long getDelay(@NotNull TimeUnit unit) {
+            ScheduledFuture<?> future = delegate;
+            return future == null ? 0L : future.getDelay(unit);
+        }
+
+        @Override
+        public int compareTo(@NotNull Delayed other) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+
+        @Override
+        public String toString() {
+            return "TrackedTask[" + name + "]";
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.github.annotations.services;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootEvent;
+import com.intellij.openapi.roots.ModuleRootListener;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 项目文件名索引（项目服务）
+ * 通过 ProjectFileIndex 遍历项目内容（不含排除目录，如 build、node_modules、.git），
+ * 记录 名称（小写）-> 相对路径；此后由 JsonFileWatcher 转发的 VFS 事件增量维护，
+ * 模式展开和存在性检查都变为哈希查找
+ * 已索引目录的移动、重命名、删除或项目根目录配置变化时整体失效，下次使用时在调用线程重建
+ */
+public class ProjectFileNameIndex implements Disposable {
+
+    private static final Logger LOG = Logger.getInstance(ProjectFileNameIndex.class);
+
+    private final Project project;
+
+    // 当前索引，尚未构建或已失效时为null
+    private volatile Names names;
+    // 索引内容的修改计数，任何增量更新或失效都会递增
+    private final AtomicLong modificationCount = new AtomicLong();
+
+    public ProjectFileNameIndex(Project project) {
+        this.project = project;
+        // 排除目录等根目录配置变化后整体重建
+        project.getMessageBus().connect(this).subscribe(ModuleRootListener.TOPIC, new ModuleRootListener() {
+            @Override
+            public void rootsChanged(@NotNull ModuleRootEvent event) {
+                invalidate();
+            }
+        });
+    }
+
+    /**
+     * 获取项目的文件名索引实例
+     */
+    public static ProjectFileNameIndex getInstance(@NotNull Project project) {
+        return project.getService(ProjectFileNameIndex.class);
+    }
+
+    /**
+     * 索引内容的修改计数，用于判断依赖此索引的结果是否过期
+     */
+    public long getModificationCount() {
+        return modificationCount.get();
+    }
+
+    /**
+     * 文件名与 name 相同的所有文件的相对路径
+     *
+     * @param caseSensitive 是否区分大小写
+     */
+    @NotNull
+    public List<String> findFiles(@NotNull String name, boolean caseSensitive) {
+        return find(ensureBuilt().files, name, caseSensitive);
+    }
+
+    /**
+     * 目录名与 name 相同（忽略大小写）的所有目录的相对路径
+     */
+    @NotNull
+    public List<String> findDirectories(@NotNull String name) {
+        return find(ensureBuilt().directories, name, false);
+    }
+
+    /**
+     * 相对路径对应的文件是否存在于项目内容中
+     */
+    public boolean containsFile(@NotNull String relativePath) {
+        return contains(ensureBuilt().files, relativePath);
+    }
+
+    /**
+     * 相对路径对应的目录是否存在于项目内容中
+     */
+    public boolean containsDirectory(@NotNull String relativePath) {
+        return contains(ensureBuilt().directories, relativePath);
+    }
+
+    /**
+     * 使索引整体失效
+     */
+    public void invalidate() {
+        names = null;
+        modificationCount.incrementAndGet();
+    }
+
+    /**
+     * 按一批 VFS 事件增量更新索引，由 JsonFileWatcher 调用
+     */
+    void onVfsEvents(@NotNull List<? extends VFileEvent> events) {
+        Names current = names;
+        if (current == null) {
+            return;
+        }
+        ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(project);
+        boolean changed = false;
+        for (VFileEvent event : events) {
+            if (event instanceof VFileCreateEvent || event instanceof VFileCopyEvent) {
+                VirtualFile file = event.getFile();
+                if (file != null && file.isValid() && current.isUnderBase(file.getPath()) && fileIndex.isInContent(file)) {
+                    if (file.isDirectory() && file.getChildren().length > 0) {
+                        // 带内容的目录（如复制而来）直接整体重建
+                        invalidate();
+                        return;
+                    }
+                    changed |= current.add(file);
+                }
+            } else if (event instanceof VFileDeleteEvent) {
+                if (((VFileDeleteEvent) event).getFile().isDirectory()) {
+                    // 只有已索引的目录（或项目根目录及其上级目录）被删除才需要重建，排除目录和项目外的目录忽略
+                    if (current.containsDirectory(event.getPath())) {
+                        invalidate();
+                        return;
+                    }
+                    continue;
+                }
+                changed |= current.remove(event.getPath());
+            } else if (event instanceof VFileMoveEvent
+                    || event instanceof VFilePropertyChangeEvent && ((VFilePropertyChangeEvent) event).isRename()) {
+                VirtualFile file = event.getFile();
+                String oldPath = event instanceof VFileMoveEvent
+                    ? ((VFileMoveEvent) event).getOldPath()
+                    : ((VFilePropertyChangeEvent) event).getOldPath();
+                if (file == null || file.isDirectory()) {
+                    // 目录移动或重命名会改变其下所有路径；移出或移入项目内容时才需要重建
+                    if (current.containsDirectory(oldPath)
+                            || file != null && file.isValid() && current.isUnderBase(file.getPath()) && fileIndex.isInContent(file)) {
+                        invalidate();
+                        return;
+                    }
+                    continue;
+                }
+                changed |= current.remove(oldPath);
+                if (file.isValid() && fileIndex.isInContent(file)) {
+                    changed |= current.add(file);
+                }
+            }
+        }
+        if (changed) {
+            modificationCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * 返回当前索引，尚未构建或已失效时在调用线程中重建（应在后台线程调用）
+     * 遍历在可中断的读操作中进行，遇到写操作时让出并重新开始，不会阻塞编辑
+     */
+    @NotNull
+    private Names ensureBuilt() {
+        Names current = names;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            current = names;
+            if (current != null) {
+                return current;
+            }
+            long startTime = System.nanoTime();
+            Names built;
+            if (ApplicationManager.getApplication().isReadAccessAllowed()) {
+                // 已在读操作中时无法让出，直接构建
+                built = buildAndPublish();
+            } else {
+                built = ReadAction.nonBlocking(this::buildAndPublish).executeSynchronously();
+            }
+            LOG.info("项目文件名索引已建立: " + built.files.size() + " 个文件名, " + built.directories.size()
+                + " 个目录名, 耗时 " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms");
+            return built;
+        }
+    }
+
+    /**
+     * 构建并发布索引，需在读操作中调用
+     * 在读操作内发布：VFS 事件在写操作中分发，不会落在遍历和发布之间而丢失
+     */
+    @NotNull
+    private Names buildAndPublish() {
+        Names result = build();
+        names = result;
+        modificationCount.incrementAndGet();
+        return result;
+    }
+
+    @NotNull
+    private Names build() {
+        Names built = new Names(ProjectPathResolver.getInstance(project).getBaseDir());
+        if (built.baseDir != null) {
+            ProjectFileIndex.getInstance(project).iterateContent(file -> {
+                ProgressManager.checkCanceled();
+                built.add(file);
+                return true;
+            });
+        }
+        return built;
+    }
+
+    @NotNull
+    private static List<String> find(@NotNull Map<String, Set<String>> byName, @NotNull String name, boolean caseSensitive) {
+        Set<String> paths = byName.get(name.toLowerCase(Locale.ROOT));
+        if (paths == null) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            if (!caseSensitive || nameOf(path).equals(name)) {
+                result.add(path);
+            }
+        }
+        return result;
+    }
+
+    private static boolean contains(@NotNull Map<String, Set<String>> byName, @NotNull String relativePath) {
+        Set<String> paths = byName.get(nameOf(relativePath).toLowerCase(Locale.ROOT));
+        return paths != null && paths.contains(relativePath);
+    }
+
+    @NotNull
+    private static String nameOf(@NotNull String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    @Override
+    public void dispose() {
+        names = null;
+    }
+
+    /**
+     * 名称（小写）-> 相对路径，文件和目录分开存放；支持增量更新时的并发读取
+     */
+    private static final class Names {
+        final VirtualFile baseDir;
+        final String basePrefix;
+        final Map<String, Set<String>> files = new ConcurrentHashMap<>();
+        final Map<String, Set<String>> directories = new ConcurrentHashMap<>();
+
+        Names(@Nullable VirtualFile baseDir) {
+            this.baseDir = baseDir;
+            this.basePrefix = baseDir != null ? baseDir.getPath() + "/" : null;
+        }
+
+        boolean add(@NotNull VirtualFile file) {
+            String relativePath = baseDir != null ? VfsUtilCore.getRelativePath(file, baseDir, '/') : null;
+            if (relativePath == null || relativePath.isEmpty()) {
+                return false;
+            }
+            return (file.isDirectory() ? directories : files)
+                .computeIfAbsent(file.getName().toLowerCase(Locale.ROOT), k -> ConcurrentHashMap.newKeySet())
+                .add(relativePath);
+        }
+
+        /**
+         * 绝对路径是否位于项目根目录下
+         */
+        boolean isUnderBase(@NotNull String absolutePath) {
+            return basePrefix != null && absolutePath.startsWith(basePrefix);
+        }
+
+        /**
+         * 绝对路径对应的目录是否已被索引；项目根目录本身及其上级目录视为已索引
+         */
+        boolean containsDirectory(@NotNull String absolutePath) {
+            if (basePrefix == null) {
+                return false;
+            }
+            if (basePrefix.startsWith(absolutePath + "/")) {
+                return true;
+            }
+            return isUnderBase(absolutePath) && contains(directories, absolutePath.substring(basePrefix.length()));
+        }
+
+        boolean remove(@NotNull String absolutePath) {
+            if (basePrefix == null || !absolutePath.startsWith(basePrefix)) {
+                return false;
+            }
+            String relativePath = absolutePath.substring(basePrefix.length());
+            Set<String> paths = files.get(nameOf(relativePath).toLowerCase(Locale.ROOT));
+            return paths != null && paths.remove(relativePath);
+        }
+    }
+}
@@ -16,12 +16,11 @@ public class ProjectInitActivity implements StartupActivity {
     @Override
     public void runActivity(@NotNull Project project) {
         // 项目打开后的初始化逻辑
-        // 这里可以调用AnnotationService中的语言设置初始化方法
+        // 映射数据在后台加载，加载完成后再初始化语言设置并刷新项目树，不阻塞项目打开
         try {
-            // 获取AnnotationService实例并执行初始化
             AnnotationService annotationService = project.getService(AnnotationService.class);
             if (annotationService != null) {
-                annotationService.initializeLanguageSettings();
+                annotationService.startBackgroundLoad();
             }
         } catch (Exception e) {
             // 记录错误日志
@@ -0,0 +1,100 @@
+package com.github.annotations.services;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 项目相对路径解析服务
+ * 缓存项目根目录的 VirtualFile，并按文件缓存相对路径：新文件的路径由父目录的缓存路径拼接得到，
+ * 重绘项目树时重复查询同一节点不再调用 getBasePath / getPath / substring
+ * 文件重命名、移动或删除时由 JsonFileWatcher 清空缓存
+ */
+public class ProjectPathResolver implements Disposable {
+
+    private final Project project;
+
+    // 文件 -> 相对路径，弱引用键，不阻止 VirtualFile 被回收
+    private final ConcurrentMap<VirtualFile, String> relativePaths = ContainerUtil.createConcurrentWeakMap();
+    private volatile VirtualFile baseDir;
+
+    public ProjectPathResolver(Project project) {
+        this.project = project;
+    }
+
+    /**
+     * 获取项目的路径解析服务实例
+     */
+    public static ProjectPathResolver getInstance(@NotNull Project project) {
+        return project.getService(ProjectPathResolver.class);
+    }
+
+    /**
+     * 获取项目根目录
+     */
+    @Nullable
+    public VirtualFile getBaseDir() {
+        VirtualFile dir = baseDir;
+        if (dir != null && dir.isValid()) {
+            return dir;
+        }
+        String basePath = project.getBasePath();
+        if (basePath == null) {
+            return null;
+        }
+        dir = LocalFileSystem.getInstance().findFileByPath(basePath);
+        baseDir = dir;
+        return dir;
+    }
+
+    /**
+     * 获取文件相对于项目根目录的路径（使用 / 分隔），根目录本身为 ""
+     * @return 文件不在项目根目录下时返回null
+     */
+    @Nullable
+    public String getRelativePath(@NotNull VirtualFile file) {
+        VirtualFile dir = getBaseDir();
+        return dir != null ? resolve(file, dir) : null;
+    }
+
+    /**
+     * 清空缓存的相对路径
+     */
+    public void invalidate() {
+        relativePaths.clear();
+        baseDir = null;
+    }
+
+    @Nullable
+    private String resolve(@NotNull VirtualFile file, @NotNull VirtualFile dir) {
+        if (file.equals(dir)) {
+            return "";
+        }
+        String cached = relativePaths.get(file);
+        if (cached != null) {
+            return cached;
+        }
+        VirtualFile parent = file.getParent();
+        if (parent == null) {
+            return null;
+        }
+        String parentPath = resolve(parent, dir);
+        if (parentPath == null) {
+            return null;
+        }
+        String path = parentPath.isEmpty() ? file.getName() : parentPath + "/" + file.getName();
+        relativePaths.put(file, path);
+        return path;
+    }
+
+    @Override
+    public void dispose() {
+        relativePaths.clear();
+    }
+}
@@ -1,70 +1,151 @@
 package com.github.annotations.services;
 
 import com.intellij.ide.projectView.ProjectView;
+import com.intellij.ide.projectView.impl.AbstractProjectViewPane;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 /**
  * 项目树刷新服务
- * 负责强制刷新项目视图和节点装饰
+ * 按变更路径只更新受影响的节点及其祖先节点，同一轮 EDT 内的多次请求合并为一次刷新
+ * 只有模式规则等无法定位到具体节点的变更才整体刷新项目视图
  */
 public class ProjectViewRefreshService {
-    
+
+    private static final Logger LOG = Logger.getInstance(ProjectViewRefreshService.class);
+
     private final Project project;
-    
+
+    // 等待刷新的相对路径，以及是否需要整体刷新；均由 this 保护
+    private final Set<String> pendingPaths = new LinkedHashSet<>();
+    private boolean fullRefreshPending = false;
+    private boolean flushScheduled = false;
+
     public ProjectViewRefreshService(Project project) {
         this.project = project;
     }
-    
+
     /**
-     * 强制刷新项目视图
+     * 获取项目的刷新服务实例
+     */
+    public static ProjectViewRefreshService getInstance(@NotNull Project project) {
+        return project.getService(ProjectViewRefreshService.class);
+    }
+
+    /**
+     * 刷新指定路径对应的节点（相对项目根目录的路径，也接受绝对路径）
+     */
+    public void refreshPaths(@NotNull Collection<String> paths) {
+        if (paths.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            pendingPaths.addAll(paths);
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * 整体刷新项目视图，用于模式规则变更或重新加载等无法定位节点的场景
      */
     public void refreshProjectView() {
+        synchronized (this) {
+            fullRefreshPending = true;
+        }
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        synchronized (this) {
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        ApplicationManager.getApplication().invokeLater(this::flush, project.getDisposed());
+    }
+
+    /**
+     * 在 EDT 上执行合并后的刷新
+     */
+    private void flush() {
+        Set<String> paths;
+        boolean fullRefresh;
+        synchronized (this) {
+            paths = new LinkedHashSet<>(pendingPaths);
+            fullRefresh = fullRefreshPending;
+            pendingPaths.clear();
+            fullRefreshPending = false;
+            flushScheduled = false;
+        }
+
         try {
             ProjectView projectView = ProjectView.getInstance(project);
-            if (projectView != null) {
-                // 使用正确的API强制刷新整个项目视图
-                ApplicationManager.getApplication().invokeLater(() -> {
-                    try {
-                        projectView.refresh();
-                        // 避免使用 getCurrentProjectViewPane() 因为它在某些IDE版本中可能不可用
-                        projectView.refresh(); // 再次刷新确保更新
-                        
-                        com.intellij.openapi.diagnostic.Logger.getInstance(ProjectViewRefreshService.class)
-                            .info("项目视图已强制刷新");
-                    } catch (Exception e) {
-                        com.intellij.openapi.diagnostic.Logger.getInstance(ProjectViewRefreshService.class)
-                            .warn("强制刷新项目树失败: " + e.getMessage());
-                    }
-                });
+            if (projectView == null) {
+                return;
+            }
+
+            AbstractProjectViewPane pane = fullRefresh ? null : projectView.getCurrentProjectViewPane();
+            if (pane == null) {
+                projectView.refresh();
+                LOG.debug("项目视图已整体刷新");
+                return;
+            }
+
+            Set<VirtualFile> targets = collectTargets(paths);
+            for (VirtualFile file : targets) {
+                pane.updateFrom(file, false, false);
             }
+            LOG.debug("项目视图已刷新 " + targets.size() + " 个节点");
         } catch (Exception e) {
-            com.intellij.openapi.diagnostic.Logger.getInstance(ProjectViewRefreshService.class)
-                .warn("刷新项目视图失败: " + e.getMessage());
+            LOG.warn("刷新项目树失败: " + e.getMessage());
         }
     }
-    
+
     /**
-     * 强制重新装饰所有节点
+     * 解析变更路径对应的文件及其祖先目录（不超出项目根目录）
      */
-    public void forceNodeRedecoration() {
-        try {
-            ApplicationManager.getApplication().invokeLater(() -> {
-                try {
-                    ProjectView projectView = ProjectView.getInstance(project);
-                    if (projectView != null) {
-                        // 强制刷新项目视图以重新装饰节点
-                        projectView.refresh();
-                    }
-                } catch (Exception e) {
-                    com.intellij.openapi.diagnostic.Logger.getInstance(ProjectViewRefreshService.class)
-                        .warn("强制重新装饰节点失败: " + e.getMessage());
+    @NotNull
+    private Set<VirtualFile> collectTargets(@NotNull Set<String> paths) {
+        Set<VirtualFile> targets = new LinkedHashSet<>();
+        VirtualFile baseDir = ProjectPathResolver.getInstance(project).getBaseDir();
+        if (baseDir == null) {
+            return targets;
+        }
+        String basePath = baseDir.getPath();
+
+        for (String path : paths) {
+            VirtualFile file = findFile(basePath, path);
+            // 按目录层级判断，避免把前缀相同的同级目录（如 /work/app2 之于 /work/app）当作项目内
+            while (file != null && VfsUtilCore.isAncestor(baseDir, file, false) && targets.add(file)) {
+                if (file.equals(baseDir)) {
+                    break;
                 }
-            });
-        } catch (Exception e) {
-            com.intellij.openapi.diagnostic.Logger.getInstance(ProjectViewRefreshService.class)
-                .warn("强制重新装饰节点失败: " + e.getMessage());
+                file = file.getParent();
+            }
+        }
+        return targets;
+    }
+
+    @Nullable
+    private VirtualFile findFile(@NotNull String basePath, @NotNull String path) {
+        if (path.isEmpty()) {
+            return LocalFileSystem.getInstance().findFileByPath(basePath);
+        }
+        if (FileUtil.isAbsolute(path)) {
+            return LocalFileSystem.getInstance().findFileByPath(path);
         }
+        return LocalFileSystem.getInstance().findFileByPath(basePath + "/" + path);
     }
 }
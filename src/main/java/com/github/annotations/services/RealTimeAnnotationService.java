@@ -1,8 +1,10 @@
 package com.github.annotations.services;
 
 import com.github.annotations.model.LocalMappingFile;
+import com.github.annotations.utils.AnnotationColors;
 import com.google.gson.Gson;
-import com.google.gson.JsonSyntaxException;
+import com.google.gson.JsonParseException;
+import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.openapi.diagnostic.Logger;
@@ -15,112 +17,84 @@ import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.fileEditor.TextEditor;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.openapi.vfs.VirtualFileManager;
-import com.intellij.openapi.vfs.newvfs.BulkFileListener;
-import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
-import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
-import com.intellij.util.messages.MessageBusConnection;
+import com.intellij.util.text.CharSequenceReader;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import java.io.IOException;
-import java.util.List;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
  * 基于DocumentListener的实时备注服务
- * 实现无需保存的实时更新功能
+ * 实现无需保存的实时更新功能：只跟踪在编辑器中打开的 local-description.json，
+ * 编辑器关闭、映射数据重新加载或通过插件修改备注后清空实时缓存，回到 AnnotationService 的数据
+ * 注册为项目服务，随项目关闭自动释放
  */
-public class RealTimeAnnotationService {
+public class RealTimeAnnotationService implements AnnotationLookup, Disposable {
     private static final Logger LOG = Logger.getInstance(RealTimeAnnotationService.class);
     private static final String MAPPINGS_DIR_NAME = ".td-maps";
+    private static final String LOCAL_DESCRIPTION_FILE = "local-description.json";
+    
+    // 共享的解析器，Gson 实例线程安全
+    private static final Gson GSON = new Gson();
+    
+    // 编辑停顿多久后解析（毫秒），可通过 -Dtree.description.live.parse.delay.ms 调整
+    private static final long PARSE_DELAY_MS = Long.getLong("tree.description.live.parse.delay.ms", 150L);
     
     private final Project project;
     private final ProjectViewRefreshService treeRefreshService;
     
     // 内存中的实时缓存 - 这是关键！
-    private final Map<String, String> liveFileAnnotations = new HashMap<>();
-    private final Map<String, String> livePackageAnnotations = new HashMap<>();
-    private final Map<String, String> liveFileTextColors = new HashMap<>();
-    private final Map<String, String> livePackageTextColors = new HashMap<>();
+    // 每次解析生成新的不可变视图，通过 volatile 整体替换，读取方无锁且不会看到更新到一半的数据
+    private volatile LiveView liveView = LiveView.EMPTY;
     
-    // 后台保存相关
+    // 后台保存相关（saveTask 由 this 保护）
     private ScheduledFuture<?> saveTask;
-    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
     private volatile boolean isSavingInProgress = false;
     
-    // Document监听器映射
-    private final Map<VirtualFile, DocumentListener> documentListeners = new HashMap<>();
+    // 防抖解析相关：只解析停顿前的最后一份内容
+    private ScheduledFuture<?> parseTask;
+    private CharSequence pendingContent;
     
-    // VFS监听器相关
-    private MessageBusConnection messageBusConnection;
+    // Document监听器映射，只在 EDT 上注册和移除，其他线程只读取
+    private final Map<VirtualFile, DocumentListener> documentListeners = new ConcurrentHashMap<>();
     
     public RealTimeAnnotationService(Project project) {
         this.project = project;
-        this.treeRefreshService = new ProjectViewRefreshService(project);
-        
-        // 检查当前已打开的JSON文件
-        checkAndRegisterOpenFiles();
+        this.treeRefreshService = ProjectViewRefreshService.getInstance(project);
         
-        // 设置VFS文件监听器，监听外部文件变化
-        setupVfsFileWatcher();
+        // 检查当前已打开的JSON文件；服务可能在后台加载线程中创建，编辑器和文档监听器只在 EDT 上访问
+        ApplicationManager.getApplication().invokeLater(this::checkAndRegisterOpenFiles, project.getDisposed());
         
         LOG.info("RealTimeAnnotationService初始化成功");
     }
     
     /**
-     * 设置VFS文件监听器，监听 .td-maps 目录下 JSON 文件的外部变化
+     * 获取项目的RealTimeAnnotationService实例
      */
-    private void setupVfsFileWatcher() {
-        messageBusConnection = project.getMessageBus().connect();
-        messageBusConnection.subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
-            @Override
-            public void after(@NotNull List<? extends VFileEvent> events) {
-                for (VFileEvent event : events) {
-                    VirtualFile eventFile = event.getFile();
-                    String fileName = eventFile != null ? eventFile.getName() : "null";
-                    LOG.info("检测到VFS事件: " + event.getClass().getSimpleName() + " - " + fileName);
-                    if (event instanceof VFileContentChangeEvent) {
-                        VirtualFile file = event.getFile();
-                        if (file != null && file.getName().toLowerCase().endsWith(".json")) {
-                            // 检查是否在 .td-maps 目录下
-                            String basePath = project.getBasePath();
-                            if (basePath != null) {
-                                String mappingsDirPath = basePath + "/" + MAPPINGS_DIR_NAME + "/";
-                                if (file.getPath().startsWith(mappingsDirPath)) {
-                                    LOG.info("检测到.td-maps目录下的JSON文件变化: " + file.getName());
-                                    // 延迟执行，避免频繁刷新
-                                    ApplicationManager.getApplication().invokeLater(() -> {
-                                        try {
-                                            // 重新加载极文件内容到内存缓存
-                                            reloadFromFile(file);
-                                            // 刷新项目视图
-                                            treeRefreshService.refreshProjectView();
-                                            LOG.info("检测到外部文件变化，已自动刷新备注: " + file.getName());
-                                        } catch (Exception e) {
-                                            LOG.error("刷新备注失败: " + e.getMessage(), e);
-                                        }
-                                    });
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        });
+    public static RealTimeAnnotationService getInstance(Project project) {
+        return project.getService(RealTimeAnnotationService.class);
     }
     
     /**
-     * 从文件重新加载内容到内存缓存
+     * 从文件重新加载内容到内存缓存，由 JsonFileWatcher 在文件被外部修改时调用
+     * 只处理正在编辑器中打开的 local-description.json，其他映射文件由 AnnotationService 重新加载
      */
-    private void reloadFromFile(VirtualFile file) {
+    void reloadFromFile(VirtualFile file) {
+        if (!isOurJsonFile(file) || !documentListeners.containsKey(file)) {
+            return;
+        }
         try {
-            String content = new String(file.contentsToByteArray());
-            updateLiveCacheImmediately(content);
+            String content = new String(file.contentsToByteArray(), file.getCharset());
+            scheduleLiveParse(content);
         } catch (IOException e) {
             LOG.error("重新加载文件失败: " + e.getMessage(), e);
         }
@@ -145,8 +119,8 @@ public class RealTimeAnnotationService {
      * 为指定的JSON文件注册文档监听器
      */
     public void registerDocumentListener(VirtualFile file) {
-        if (documentListeners.containsKey(file)) {
-            return; // 已经注册过了
+        if (!isOurJsonFile(file) || documentListeners.containsKey(file)) {
+            return; // 不是 local-description.json 或已经注册过了
         }
         
         FileEditor[] editors = FileEditorManager.getInstance(project).getEditors(file);
@@ -181,14 +155,48 @@ public class RealTimeAnnotationService {
                 }
             }
             LOG.info("为文件 " + file.getName() + " 移除了文档监听器");
+            
+            // 编辑器关闭后不再有实时内容，回到 AnnotationService 中的数据
+            if (documentListeners.isEmpty()) {
+                clearLiveView();
+            }
         }
     }
     
     /**
-     * 检查是否是.td-maps目录下的JSON文件
+     * 清空实时缓存，之后的查询回到 AnnotationService 中的数据
+     * 在编辑器关闭、映射数据重新加载和通过插件修改备注后调用，避免旧的编辑内容继续覆盖显示
+     */
+    void clearLiveView() {
+        synchronized (this) {
+            pendingContent = null;
+            if (parseTask != null) {
+                parseTask.cancel(false);
+                parseTask = null;
+            }
+        }
+        LiveView previous = liveView;
+        if (previous == LiveView.EMPTY) {
+            return;
+        }
+        liveView = LiveView.EMPTY;
+        
+        Set<String> changedPaths = new LinkedHashSet<>();
+        collectChanges(previous.fileAnnotations, LiveView.EMPTY.fileAnnotations, changedPaths);
+        collectChanges(previous.packageAnnotations, LiveView.EMPTY.packageAnnotations, changedPaths);
+        collectChanges(previous.fileTextColors, LiveView.EMPTY.fileTextColors, changedPaths);
+        collectChanges(previous.packageTextColors, LiveView.EMPTY.packageTextColors, changedPaths);
+        AnnotationService.getInstance(project).bumpGeneration();
+        treeRefreshService.refreshPaths(changedPaths);
+        LOG.debug("实时缓存已清空");
+    }
+    
+    /**
+     * 检查是否是 .td-maps 目录下的 local-description.json（插件自身的备注文件）
+     * 映射库等其他 JSON 文件不进入实时缓存，否则会以最高优先级覆盖用户备注
      */
     private boolean isOurJsonFile(VirtualFile file) {
-        if (file == null || !file.getName().endsWith(".json")) {
+        if (file == null || !LOCAL_DESCRIPTION_FILE.equals(file.getName())) {
             return false;
         }
         
@@ -197,8 +205,7 @@ public class RealTimeAnnotationService {
             return false;
         }
         
-        String mappingsPath = projectBasePath + "/" + MAPPINGS_DIR_NAME;
-        return file.getPath().startsWith(mappingsPath);
+        return file.getPath().equals(projectBasePath + "/" + MAPPINGS_DIR_NAME + "/" + LOCAL_DESCRIPTION_FILE);
     }
     
     /**
@@ -211,14 +218,8 @@ public class RealTimeAnnotationService {
             Document document = event.getDocument();
             
             if (isOurJsonFile(document)) {
-                // 立即从编辑器获取最新内容
-                String currentContent = document.getText();
-                
-                // 立即更新内存缓存
-                updateLiveCacheImmediately(currentContent);
-                
-                // 立即刷新项目树UI
-                refreshProjectTreeImmediately();
+                // 取不可变快照，不复制文档内容；停顿后再在后台解析
+                scheduleLiveParse(document.getImmutableCharSequence());
                 
                 // 后台异步保存（用户感知不到）
                 scheduleBackgroundSave(document);
@@ -227,110 +228,168 @@ public class RealTimeAnnotationService {
     }
     
     /**
-     * 立即更新内存缓存 - 核心方法
+     * 安排一次防抖解析，连续输入时只解析最后一份内容
      */
-    private void updateLiveCacheImmediately(String jsonContent) {
-        try {
-            // 解析JSON内容
-            LocalMappingFile mapping = parseJsonContent(jsonContent);
-            
-            if (mapping != null && mapping.getMappings() != null) {
-                LocalMappingFile.Mappings mappings = mapping.getMappings();
-                
-                // 立即更新内存缓存
-                liveFileAnnotations.clear();
-                livePackageAnnotations.clear();
-                liveFileTextColors.clear();
-                livePackageTextColors.clear();
-                
-                if (mappings.getFiles() != null) {
-                    liveFileAnnotations.putAll(mappings.getFiles());
-                }
-                if (mappings.getPackages() != null) {
-                    livePackageAnnotations.putAll(mappings.getPackages());
-                }
-                if (mappings.getFilesTextColor() != null) {
-                    liveFileTextColors.putAll(mappings.getFilesTextColor());
-                }
-                if (mappings.getPackagesTextColor() != null) {
-                    livePackageTextColors.putAll(mappings.getPackagesTextColor());
-                }
-                
-                LOG.info("内存缓存已更新，包含 " + liveFileAnnotations.size() + " 条文件备注，"
-                        + livePackageAnnotations.size() + " 条包备注");
+    private void scheduleLiveParse(@NotNull CharSequence content) {
+        synchronized (this) {
+            pendingContent = content;
+            if (parseTask != null) {
+                parseTask.cancel(false);
             }
-        } catch (Exception e) {
-            // JSON格式错误时保持原有缓存，不影响显示
-            LOG.warn("JSON格式有误，保持当前显示: " + e.getMessage());
+            parseTask = PluginTaskScheduler.getInstance()
+                .schedule("live-parse", project, this::parsePendingContent, PARSE_DELAY_MS, TimeUnit.MILLISECONDS);
         }
     }
     
     /**
-     * 立即刷新项目树UI
+     * 在后台解析最新内容并更新内存缓存
      */
-    private void refreshProjectTreeImmediately() {
-        // 在EDT线程中立即执行UI更新
-        ApplicationManager.getApplication().invokeLater(() -> {
-            treeRefreshService.refreshProjectView();
-            LOG.info("项目树UI已刷新");
-        });
+    private void parsePendingContent() {
+        CharSequence content;
+        synchronized (this) {
+            content = pendingContent;
+            pendingContent = null;
+        }
+        if (content == null || project.isDisposed()) {
+            return;
+        }
+        
+        LocalMappingFile mapping = parseJsonContent(content);
+        if (mapping != null && mapping.getMappings() != null) {
+            updateLiveCache(mapping.getMappings());
+        }
     }
     
     /**
-     * 获取文件备注 - 项目树调用此方法显示备注
+     * 更新内存缓存 - 核心方法
+     * 在解析线程中构建新的不可变视图并整体发布，只刷新发生变化的键对应的节点
      */
-    public String getFileAnnotation(String filePath) {
-        // 直接从内存缓存返回，超快速度！
-        String annotation = liveFileAnnotations.get(normalizeFilePath(filePath));
+    private void updateLiveCache(@NotNull LocalMappingFile.Mappings mappings) {
+        LiveView previous = liveView;
+        LiveView next = new LiveView(mappings);
         
-        if (annotation != null) {
-
+        Set<String> changedPaths = new LinkedHashSet<>();
+        collectChanges(previous.fileAnnotations, next.fileAnnotations, changedPaths);
+        collectChanges(previous.packageAnnotations, next.packageAnnotations, changedPaths);
+        collectChanges(previous.fileTextColors, next.fileTextColors, changedPaths);
+        collectChanges(previous.packageTextColors, next.packageTextColors, changedPaths);
+        
+        if (changedPaths.isEmpty()) {
+            return;
         }
         
-        return annotation;
+        liveView = next;
+        
+        // 实时缓存变化后使装饰器缓存失效
+        AnnotationService.getInstance(project).bumpGeneration();
+        treeRefreshService.refreshPaths(changedPaths);
+        
+        LOG.debug("内存缓存已更新，变化 " + changedPaths.size() + " 个路径");
     }
     
     /**
-     * 获取包备注 - 项目树调用此方法显示备注
+     * 记录两个版本之间新增、删除或值变化的键
      */
-    public String getPackageAnnotation(String packagePath) {
-        // 直接从内存缓存返回，超快速度！
-        String annotation = livePackageAnnotations.get(normalizeFilePath(packagePath));
+    private static void collectChanges(@NotNull Map<String, String> previous, @NotNull Map<String, String> next,
+                                       @NotNull Set<String> changedKeys) {
+        for (Map.Entry<String, String> entry : previous.entrySet()) {
+            String key = entry.getKey();
+            if (!next.containsKey(key) || !Objects.equals(entry.getValue(), next.get(key))) {
+                changedKeys.add(key);
+            }
+        }
+        for (String key : next.keySet()) {
+            if (!previous.containsKey(key)) {
+                changedKeys.add(key);
+            }
+        }
+    }
+    
+    /**
+     * 实时缓存的不可变视图
+     */
+    private static final class LiveView {
+        static final LiveView EMPTY = new LiveView(new LocalMappingFile.Mappings());
         
-        if (annotation != null) {
-
+        final Map<String, String> fileAnnotations;
+        final Map<String, String> packageAnnotations;
+        final Map<String, String> fileTextColors;
+        final Map<String, String> packageTextColors;
+        
+        LiveView(@NotNull LocalMappingFile.Mappings mappings) {
+            this.fileAnnotations = freeze(mappings.getFiles());
+            this.packageAnnotations = freeze(mappings.getPackages());
+            this.fileTextColors = freeze(mappings.getFilesTextColor());
+            this.packageTextColors = freeze(mappings.getPackagesTextColor());
+            AnnotationColors.prewarm(fileTextColors);
+            AnnotationColors.prewarm(packageTextColors);
         }
         
-        return annotation;
+        private static Map<String, String> freeze(@Nullable Map<String, String> source) {
+            return source == null || source.isEmpty()
+                ? Collections.emptyMap()
+                : Collections.unmodifiableMap(new HashMap<>(source));
+        }
+    }
+    
+    /**
+     * 获取文件备注 - 项目树调用此方法显示备注
+     */
+    @Override
+    public String getFileAnnotation(@NotNull String filePath) {
+        // 直接从内存缓存返回，超快速度！
+        return liveView.fileAnnotations.get(normalizeFilePath(filePath));
+    }
+    
+    /**
+     * 获取包备注 - 项目树调用此方法显示备注
+     */
+    @Override
+    public String getPackageAnnotation(@NotNull String packagePath) {
+        // 直接从内存缓存返回，超快速度！
+        return liveView.packageAnnotations.get(normalizeFilePath(packagePath));
+    }
+    
+    /**
+     * 实时缓存是否有备注（未编辑过映射文件时为空）
+     */
+    @Override
+    public boolean hasAnnotations() {
+        LiveView view = liveView;
+        return !view.fileAnnotations.isEmpty() || !view.packageAnnotations.isEmpty();
     }
     
     /**
      * 获取文件文本颜色
      */
-    public String getFileTextColor(String filePath) {
-        return liveFileTextColors.get(normalizeFilePath(filePath));
+    @Override
+    public String getFileTextColor(@NotNull String filePath) {
+        return liveView.fileTextColors.get(normalizeFilePath(filePath));
     }
     
     /**
      * 获取包文本颜色
      */
-    public String getPackageTextColor(String packagePath) {
-        return livePackageTextColors.get(normalizeFilePath(packagePath));
+    @Override
+    public String getPackageTextColor(@NotNull String packagePath) {
+        return liveView.packageTextColors.get(normalizeFilePath(packagePath));
     }
     
     /**
      * 后台异步保存 - 用户感知不到
      */
     private void scheduleBackgroundSave(Document document) {
-        // 取消之前的保存任务（防抖机制）
-        if (saveTask != null) {
-            saveTask.cancel(false);
+        synchronized (this) {
+            // 取消之前的保存任务（防抖机制）
+            if (saveTask != null) {
+                saveTask.cancel(false);
+            }
+            
+            // 延迟保存到磁盘，避免频繁IO和冲突
+            saveTask = PluginTaskScheduler.getInstance().schedule("live-save", project, () -> {
+                saveToFileInBackground(document);
+            }, 50, TimeUnit.MILLISECONDS); // 从200ms改为50ms，实现更实时响应
         }
-        
-        // 延迟保存到磁盘，避免频繁IO和冲突
-        saveTask = scheduler.schedule(() -> {
-            saveToFileInBackground(document);
-        }, 50, TimeUnit.MILLISECONDS); // 从200ms改为50ms，实现更实时响应
     }
     
     /**
@@ -363,12 +422,13 @@ public class RealTimeAnnotationService {
     /**
      * 解析JSON内容
      */
-    private LocalMappingFile parseJsonContent(String jsonContent) {
+    @Nullable
+    private LocalMappingFile parseJsonContent(@NotNull CharSequence jsonContent) {
         try {
-            Gson gson = new Gson();
-            return gson.fromJson(jsonContent, LocalMappingFile.class);
-        } catch (JsonSyntaxException e) {
-            LOG.warn("JSON解析失败: " + e.getMessage());
+            return GSON.fromJson(new CharSequenceReader(jsonContent), LocalMappingFile.class);
+        } catch (JsonParseException e) {
+            // JSON格式错误时保持原有缓存，不影响显示
+            LOG.debug("JSON解析失败，保持当前显示: " + e.getMessage());
             return null;
         }
     }
@@ -391,28 +451,22 @@ public class RealTimeAnnotationService {
     /**
      * 释放资源
      */
+    @Override
     public void dispose() {
-        // 移除VFS监听器
-        if (messageBusConnection != null) {
-            messageBusConnection.disconnect();
-        }
-        
-        // 移除所有文档监听器
-        for (Map.Entry<VirtualFile, DocumentListener> entry : documentListeners.entrySet()) {
-            VirtualFile file = entry.getKey();
-            DocumentListener listener = entry.getValue();
+        // 移除所有文档监听器（unregisterDocumentListener 会修改 documentListeners，需遍历键的副本）
+        for (VirtualFile file : documentListeners.keySet().toArray(new VirtualFile[0])) {
             unregisterDocumentListener(file);
         }
         documentListeners.clear();
         
-        // 取消保存任务
-        if (saveTask != null) {
-            saveTask.cancel(false);
-        }
-        
-        // 关闭调度器
-        if (scheduler != null) {
-            scheduler.shutdown();
+        // 取消保存和解析任务
+        synchronized (this) {
+            if (saveTask != null) {
+                saveTask.cancel(false);
+            }
+            if (parseTask != null) {
+                parseTask.cancel(false);
+            }
         }
         
         LOG.info("RealTimeAnnotationService已释放资源");
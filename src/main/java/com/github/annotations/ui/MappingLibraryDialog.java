@@ -3,6 +3,7 @@ package com.github.annotations.ui;
 import com.github.annotations.services.GitHubMappingService;
 import com.github.annotations.services.GitHubMappingService.GitHubMappingFile;
 import com.github.annotations.services.GitHubMappingService.GitHubMappingLibrary;
+import com.github.annotations.services.PluginTaskScheduler;
 import com.github.annotations.services.VFSRefreshService;
 import com.github.annotations.utils.I18nUtils;
 import com.intellij.openapi.project.Project;
@@ -168,7 +169,7 @@ public class MappingLibraryDialog extends DialogWrapper {
             libraryComboBox.removeAllItems();
             libraryComboBox.addItem(new GitHubMappingFile("", I18nUtils.getText(project, "正在加载...", "Loading..."), false));
             
-            new Thread(() -> {
+            PluginTaskScheduler.getInstance().execute("github-library-list", project, () -> {
                 try {
                     List<GitHubMappingFile> files = gitHubService.getRepositoryContents();
                     
@@ -204,7 +205,7 @@ public class MappingLibraryDialog extends DialogWrapper {
                         clearMappingTable();
                     });
                 }
-            }).start();
+            });
         });
     }
     
@@ -224,7 +225,7 @@ public class MappingLibraryDialog extends DialogWrapper {
         DefaultTableModel model = (DefaultTableModel) mappingTable.getModel();
         model.addRow(new Object[]{"加载中", selectedFile.path, "正在下载..."});
         
-        new Thread(() -> {
+        PluginTaskScheduler.getInstance().execute("github-library-preview", project, () -> {
             try {
                 String jsonContent = gitHubService.downloadMappingFile(selectedFile.path);
                 if (jsonContent != null) {
@@ -249,7 +250,7 @@ public class MappingLibraryDialog extends DialogWrapper {
                     model.addRow(new Object[]{"错误", selectedFile.path, "加载失败"});
                 });
             }
-        }).start();
+        });
     }
     
     /**
@@ -356,7 +357,7 @@ public class MappingLibraryDialog extends DialogWrapper {
             downloadButton.setText(I18nUtils.getText(project, "下载中...", "Downloading..."));
         }
         
-        new Thread(() -> {
+        PluginTaskScheduler.getInstance().execute("github-library-download", project, () -> {
             try {
                 String jsonContent = gitHubService.downloadMappingFile(selectedFile.path);
                 if (jsonContent != null) {
@@ -420,7 +421,7 @@ public class MappingLibraryDialog extends DialogWrapper {
                             I18nUtils.getText(project, "下载失败", "Download Failed"), JOptionPane.PLAIN_MESSAGE);
                 });
             }
-        }).start();
+        });
     }
     
     /**
@@ -1,10 +1,17 @@
 package com.github.annotations.ui;
 
-import com.github.annotations.services.AnnotationService;
-import com.github.annotations.services.MappingLibraryService;
+import com.github.annotations.services.AnnotationSearchIndex;
+import com.github.annotations.services.PluginTaskScheduler;
 import com.github.annotations.utils.I18nUtils;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.DialogWrapper;
+import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.openapi.fileEditor.FileEditorManager;
@@ -12,6 +19,7 @@ import com.intellij.ide.projectView.ProjectView;
 import com.intellij.ui.components.JBList;
 import com.intellij.ui.components.JBScrollPane;
 import com.intellij.ui.components.JBTextField;
+import com.intellij.util.ui.AsyncProcessIcon;
 import com.intellij.util.ui.JBUI;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -25,12 +33,10 @@ import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 // 使用固定颜色，不再依赖主题感知
-import java.util.List;
-import java.util.Map;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 备注搜索对话框
@@ -38,24 +44,34 @@ import java.util.Set;
  */
 public class SearchAnnotationsDialog extends DialogWrapper {
     
+    // 输入停顿多久后搜索（毫秒）及最多显示的结果数（按相关度取前 N 条）
+    private static final long SEARCH_DELAY_MS = 120L;
+    private static final int MAX_RESULTS = 500;
+    
     private final Project project;
-    private final AnnotationService annotationService;
-    private final MappingLibraryService mappingLibraryService;
+    private final AnnotationSearchIndex searchIndex;
     
     private JBTextField searchField;
     private JBList<SearchResult> resultsList;
     private DefaultListModel<SearchResult> listModel;
     private JLabel statusLabel;
+    private AsyncProcessIcon searchProgress;
+    
+    // 等待执行和正在执行的搜索，只在 EDT 上访问
+    private ScheduledFuture<?> pendingSearch;
+    private ProgressIndicator currentSearch;
     
     public SearchAnnotationsDialog(@NotNull Project project) {
         super(project);
         this.project = project;
-        this.annotationService = AnnotationService.getInstance(project);
-        this.mappingLibraryService = MappingLibraryService.getInstance();
+        this.searchIndex = AnnotationSearchIndex.getInstance(project);
         
         setTitle(I18nUtils.getText(project, "搜索项目树备注", "Search Project Tree Annotations"));
         setSize(1000, 700);
         init();
+        
+        // 打开对话框时预先在后台建立索引
+        searchIndex.ensureUpToDate(null);
     }
     
     @Override
@@ -91,17 +107,23 @@ public class SearchAnnotationsDialog extends DialogWrapper {
         // 添加实时搜索监听器
         searchField.getDocument().addDocumentListener(new DocumentListener() {
             @Override
-            public void insertUpdate(DocumentEvent e) { performSearch(); }
+            public void insertUpdate(DocumentEvent e) { scheduleSearch(); }
             
             @Override
-            public void removeUpdate(DocumentEvent e) { performSearch(); }
+            public void removeUpdate(DocumentEvent e) { scheduleSearch(); }
             
             @Override
-            public void changedUpdate(DocumentEvent e) { performSearch(); }
+            public void changedUpdate(DocumentEvent e) { scheduleSearch(); }
         });
         
+        // 搜索进行中的进度图标
+        searchProgress = new AsyncProcessIcon("TreeDescription.Search");
+        searchProgress.setVisible(false);
+        searchProgress.suspend();
+        
         panel.add(label, BorderLayout.WEST);
         panel.add(searchField, BorderLayout.CENTER);
+        panel.add(searchProgress, BorderLayout.EAST);
         
         return panel;
     }
@@ -146,547 +168,131 @@ public class SearchAnnotationsDialog extends DialogWrapper {
         return panel;
     }
     
-    private void performSearch() {
-        String keyword = searchField.getText().trim();
-        listModel.clear();
+    /**
+     * 安排一次搜索：输入停顿后在后台执行，并取消尚未完成的上一次搜索
+     */
+    private void scheduleSearch() {
+        cancelSearch();
         
+        String keyword = searchField.getText().trim();
         if (keyword.isEmpty()) {
+            listModel.clear();
             statusLabel.setText("请输入搜索关键词");
             return;
         }
         
-        List<SearchResult> results = new ArrayList<>();
-        Set<String> userAnnotatedPaths = new HashSet<>(); // 记录已有用户备注的文件路径
-        
-        // 1. 搜索用户自定义备注（files）
-        Map<String, String> userAnnotations = annotationService.getAllAnnotations();
-        for (Map.Entry<String, String> entry : userAnnotations.entrySet()) {
-            String filePath = entry.getKey();
-            String annotation = entry.getValue();
-            
-            // 检查备注内容是否包含关键词（忽略大小写）
-            if (annotation.toLowerCase().contains(keyword.toLowerCase())) {
-                                                SearchResult result = new SearchResult(filePath, annotation, keyword, "用户文件映射");
-                results.add(result);
-                userAnnotatedPaths.add(filePath); // 记录此路径已有用户备注
-            }
-        }
-        
-        // 2. 搜索用户自定义包备注（packages）
-        Map<String, String> userPackageAnnotations = annotationService.getAllPackageAnnotations();
-        for (Map.Entry<String, String> entry : userPackageAnnotations.entrySet()) {
-            String packagePath = entry.getKey();
-            String annotation = entry.getValue();
-            
-            if (annotation.toLowerCase().contains(keyword.toLowerCase())) {
-                SearchResult result = new SearchResult(packagePath, annotation, keyword, "用户包映射");
-                results.add(result);
-                userAnnotatedPaths.add(packagePath);
-            }
-        }
-        
-        // 3. 搜索用户自定义文件匹配模式匹配的文件
-        Map<String, String> userFileMatchAnnotations = annotationService.getAllFileMatchAnnotations();
-        for (Map.Entry<String, String> entry : userFileMatchAnnotations.entrySet()) {
-            String pattern = entry.getKey();
-            String annotation = entry.getValue();
-            
-            if (annotation.toLowerCase().contains(keyword.toLowerCase())) {
-                // 找到所有匹配该pattern的文件
-                List<String> matchedFiles = findFilesMatchingPattern(pattern);
-                for (String filePath : matchedFiles) {
-                    if (!userAnnotatedPaths.contains(filePath)) {
-                        SearchResult result = new SearchResult(filePath, annotation, keyword, "用户文件匹配映射");
-                        results.add(result);
-                        userAnnotatedPaths.add(filePath);
-                    }
-                }
-            }
-        }
-        
-        // 4. 搜索用户自定义包匹配模式匹配的包
-        Map<String, String> userPackageMatchAnnotations = annotationService.getAllPackageMatchAnnotations();
-        for (Map.Entry<String, String> entry : userPackageMatchAnnotations.entrySet()) {
-            String pattern = entry.getKey();
-            String annotation = entry.getValue();
-            
-            if (annotation.toLowerCase().contains(keyword.toLowerCase())) {
-                // 找到所有匹配该pattern的包
-                List<String> matchedPackages = findPackagesMatchingPattern(pattern);
-                for (String packagePath : matchedPackages) {
-                    if (!userAnnotatedPaths.contains(packagePath)) {
-                        SearchResult result = new SearchResult(packagePath, annotation, keyword, "用户包匹配映射");
-                        results.add(result);
-                        userAnnotatedPaths.add(packagePath);
-                    }
-                }
-            }
-        }
-        
-        // 5. 搜索内置映射库的files和packages（只搜索实际文件和包，不搜索模式匹配）
-        // 只有在启用内置映射库时才搜索
-        if (mappingLibraryService.isBuiltinMappingsEnabled()) {
-            Map<String, String> builtinMappings = mappingLibraryService.getAllMappings();
-            for (Map.Entry<String, String> entry : builtinMappings.entrySet()) {
-                String keyName = entry.getKey();
-                String annotation = entry.getValue();
-                
-                // 检查备注内容是否包含关键词（忽略大小写）
-                if (annotation.toLowerCase().contains(keyword.toLowerCase())) {
-                    // 判断是文件名还是包名
-                    if (isFileName(keyName)) {
-                        // 对于文件名，搜索项目中所有匹配的完整路径
-                        List<String> allPaths = findAllFilesInProject(keyName);
-                        if (!allPaths.isEmpty()) {
-                            for (String fullPath : allPaths) {
-                                // 只有当该文件路径没有用户备注时，才添加内置映射结果
-                                if (!userAnnotatedPaths.contains(fullPath)) {
-                                    // 再次验证文件确实存在
-                                    if (fileExistsInProject(fullPath)) {
-                                        SearchResult result = new SearchResult(fullPath, annotation, keyword, "内置文件映射");
-                                        results.add(result);
-                                    }
-                                }
-                            }
-                        } else {
-                            // 如果没找到匹配的文件，但该映射确实存在，则添加一个通用的结果
-                            if (fileExistsInProject(keyName)) {
-                                if (!userAnnotatedPaths.contains(keyName)) {
-                                    SearchResult result = new SearchResult(keyName, annotation, keyword, "内置文件映射");
-                                    results.add(result);
-                                }
-                            }
-                        }
-                    } else {
-                        // 对于包名，验证包路径是否真实存在于项目中
-                        if (!userAnnotatedPaths.contains(keyName) && packageExistsInProject(keyName)) {
-                            SearchResult result = new SearchResult(keyName, annotation, keyword, "内置包映射");
-                            results.add(result);
-                            userAnnotatedPaths.add(keyName);
-                        }
-                    }
-                }
-            }
-        }
-        
-        // 6. 搜索内置映射库的fileMatch模式匹配的文件
-        // 只有在启用内置映射库时才搜索
-        if (mappingLibraryService.isBuiltinMappingsEnabled()) {
-            Map<String, String> builtinFileMatchPatterns = mappingLibraryService.getAllFileMatchPatterns();
-            for (Map.Entry<String, String> entry : builtinFileMatchPatterns.entrySet()) {
-                String pattern = entry.getKey();
-                String annotation = entry.getValue();
-                
-                if (annotation.toLowerCase().contains(keyword.toLowerCase())) {
-                    // 找到所有匹配该pattern的文件
-                    List<String> matchedFiles = findFilesMatchingPattern(pattern);
-                    for (String filePath : matchedFiles) {
-                        if (!userAnnotatedPaths.contains(filePath)) {
-                            SearchResult result = new SearchResult(filePath, annotation, keyword, "内置文件匹配映射");
-                            results.add(result);
-                            userAnnotatedPaths.add(filePath);
-                        }
-                    }
-                }
-            }
-        }
-        
-        // 7. 搜索内置映射库的packageMatch模式匹配的包
-        // 只有在启用内置映射库时才搜索
-        if (mappingLibraryService.isBuiltinMappingsEnabled()) {
-            Map<String, String> builtinPackageMatchPatterns = mappingLibraryService.getAllPackageMatchPatterns();
-            for (Map.Entry<String, String> entry : builtinPackageMatchPatterns.entrySet()) {
-                String pattern = entry.getKey();
-                String annotation = entry.getValue();
-                
-                if (annotation.toLowerCase().contains(keyword.toLowerCase())) {
-                    // 找到所有匹配该pattern的包
-                    List<String> matchedPackages = findPackagesMatchingPattern(pattern);
-                    for (String packagePath : matchedPackages) {
-                        if (!userAnnotatedPaths.contains(packagePath)) {
-                            SearchResult result = new SearchResult(packagePath, annotation, keyword, "内置包匹配映射");
-                            results.add(result);
-                            userAnnotatedPaths.add(packagePath);
-                        }
-                    }
-                }
-            }
-        }
-        
-        // 按类型和文件路径排序 - 用户映射优先
-        results.sort((a, b) -> {
-            // 先按类型排序：用户文件映射 > 用户包映射 > 用户文件匹配映射 > 用户包匹配映射 > 内置文件映射 > 内置包映射 > 内置文件匹配映射 > 内置包匹配映射
-            String[] priorityOrder = {"用户文件映射", "用户包映射", "用户文件匹配映射", "用户包匹配映射", "内置文件映射", "内置包映射", "内置文件匹配映射", "内置包匹配映射"};
-            int aPriority = getPriority(a.source, priorityOrder);
-            int bPriority = getPriority(b.source, priorityOrder);
-            
-            if (aPriority != bPriority) {
-                return Integer.compare(aPriority, bPriority);
-            }
-            
-            // 同类型的按文件路径排序
-            return a.filePath.compareToIgnoreCase(b.filePath);
-        });
-        
-        // 添加到列表
-        for (SearchResult result : results) {
-            listModel.addElement(result);
-        }
-        
-        // 更新状态
-        if (results.isEmpty()) {
-            statusLabel.setText(I18nUtils.getText(project, 
-                "未找到包含 \"" + keyword + "\" 的备注",
-                "No annotations found containing \"" + keyword + "\""));
-        } else {
-            long userCount = results.stream().filter(r -> r.source.startsWith("用户")).count();
-            statusLabel.setText(I18nUtils.getText(project,
-                "找到 " + results.size() + " 个匹配的备注",
-                "Found " + results.size() + " matching annotations"));
-        }
-    }
-    
-    /**
-     * 获取优先级顺序
-     */
-    private int getPriority(String source, String[] priorityOrder) {
-        for (int i = 0; i < priorityOrder.length; i++) {
-            if (source.equals(priorityOrder[i])) {
-                return i;
-            }
-        }
-        return priorityOrder.length; // 未知类型排在最后
-    }
-    
-    /**
-     * 查找匹配指定pattern的所有文件
-     */
-    private List<String> findFilesMatchingPattern(String pattern) {
-        List<String> matchedFiles = new ArrayList<>();
-        
-        try {
-            String projectPath = project.getBasePath();
-            if (projectPath == null) return matchedFiles;
-            
-            VirtualFile projectRoot = VirtualFileManager.getInstance().findFileByUrl("file://" + projectPath);
-            if (projectRoot == null) return matchedFiles;
-            
-            // 递归搜索项目中的所有文件
-            findFilesMatchingPatternRecursive(projectRoot, pattern, matchedFiles);
-        } catch (Exception e) {
-            // 忽略异常，返回空列表
+        // 索引过期时在后台重建，重建完成后重新搜索；期间先使用上一版本的索引
+        searchIndex.ensureUpToDate(this::researchIfShowing);
+        AnnotationSearchIndex.Index index = searchIndex.getLatest();
+        if (index == null) {
+            listModel.clear();
+            statusLabel.setText(I18nUtils.getText(project, "正在建立搜索索引...", "Building search index..."));
+            return;
         }
         
-        return matchedFiles;
+        ProgressIndicator indicator = new EmptyProgressIndicator();
+        currentSearch = indicator;
+        pendingSearch = PluginTaskScheduler.getInstance().schedule("annotation-search", project,
+            () -> runSearch(index, keyword, indicator), SEARCH_DELAY_MS, TimeUnit.MILLISECONDS);
     }
     
     /**
-     * 递归搜索匹配pattern的文件
+     * 在后台执行搜索，只把相关度最高的前 MAX_RESULTS 条结果交给列表
+     * 索引不引用 PSI 和 VFS，搜索无需持有读锁，也不会阻塞写操作
      */
-    private void findFilesMatchingPatternRecursive(VirtualFile directory, String pattern, List<String> matchedFiles) {
-        if (directory == null || !directory.isDirectory()) return;
-        
+    private void runSearch(@NotNull AnnotationSearchIndex.Index index, @NotNull String keyword, @NotNull ProgressIndicator indicator) {
         try {
-            for (VirtualFile child : directory.getChildren()) {
-                if (child.isDirectory()) {
-                    // 递归搜索子目录
-                    findFilesMatchingPatternRecursive(child, pattern, matchedFiles);
-                } else {
-                    // 检查文件名是否匹配pattern - 使用完全匹配而不是包含匹配
-                    String fileName = child.getName();
-                    if (fileName.equalsIgnoreCase(pattern)) {
-                        // 获取相对于项目根目录的路径
-                        String projectPath = project.getBasePath();
-                        if (projectPath != null) {
-                            VirtualFile projectRoot = VirtualFileManager.getInstance().findFileByUrl("file://" + projectPath);
-                            if (projectRoot != null) {
-                                String relativePath = getRelativePath(projectRoot, child);
-                                if (relativePath != null) {
-                                    matchedFiles.add(relativePath);
-                                }
-                            }
-                        }
-                    }
+            ApplicationManager.getApplication().invokeLater(() -> {
+                if (indicator == currentSearch) {
+                    searchProgress.resume();
+                    searchProgress.setVisible(true);
+                    statusLabel.setText(I18nUtils.getText(project, "正在搜索...", "Searching..."));
                 }
-            }
-        } catch (Exception e) {
-            // 忽略异常，继续搜索
-        }
-    }
-    
-    /**
-     * 查找匹配指定pattern的所有包
-     */
-    private List<String> findPackagesMatchingPattern(String pattern) {
-        List<String> matchedPackages = new ArrayList<>();
-        
-        try {
-            String projectPath = project.getBasePath();
-            if (projectPath == null) return matchedPackages;
+            }, ModalityState.any());
             
-            VirtualFile projectRoot = VirtualFileManager.getInstance().findFileByUrl("file://" + projectPath);
-            if (projectRoot == null) return matchedPackages;
-            
-            // 递归搜索项目中的所有目录
-            findPackagesMatchingPatternRecursive(projectRoot, pattern, matchedPackages);
-        } catch (Exception e) {
-            // 忽略异常，返回空列表
-        }
-        
-        return matchedPackages;
-    }
-    
-    /**
-     * 递归搜索匹配pattern的包
-     */
-    private void findPackagesMatchingPatternRecursive(VirtualFile directory, String pattern, List<String> matchedPackages) {
-        if (directory == null || !directory.isDirectory()) return;
-        
-        try {
-            for (VirtualFile child : directory.getChildren()) {
-                if (child.isDirectory()) {
-                    // 检查目录名是否匹配pattern - 使用完全匹配而不是包含匹配
-                    String dirName = child.getName();
-                    if (dirName.equalsIgnoreCase(pattern)) {
-                        // 获取相对于项目根目录的路径
-                        String projectPath = project.getBasePath();
-                        if (projectPath != null) {
-                            VirtualFile projectRoot = VirtualFileManager.getInstance().findFileByUrl("file://" + projectPath);
-                            if (projectRoot != null) {
-                                String relativePath = getRelativePath(projectRoot, child);
-                                if (relativePath != null) {
-                                    matchedPackages.add(relativePath);
-                                }
-                            }
-                        }
-                    }
-                    
-                    // 递归搜索子目录
-                    findPackagesMatchingPatternRecursive(child, pattern, matchedPackages);
-                }
-            }
-        } catch (Exception e) {
-            // 忽略异常，继续搜索
-        }
-    }
-    
-    /**
-     * 获取文件相对于项目根目录的路径
-     */
-    private String getRelativePath(VirtualFile baseDir, VirtualFile file) {
-        try {
-            String basePath = baseDir.getPath();
-            String filePath = file.getPath();
+            AnnotationSearchIndex.Results results = ProgressManager.getInstance().runProcess(() ->
+                index.search(keyword, MAX_RESULTS), indicator);
             
-            if (filePath.startsWith(basePath)) {
-                String relativePath = filePath.substring(basePath.length());
-                if (relativePath.startsWith("/")) {
-                    relativePath = relativePath.substring(1);
-                }
-                return relativePath;
-            }
-        } catch (Exception e) {
-            // 忽略异常
+            ApplicationManager.getApplication().invokeLater(() -> showResults(indicator, keyword, results), ModalityState.any());
+        } catch (ProcessCanceledException e) {
+            // 已被更新的搜索取代
         }
-        return null;
     }
     
     /**
-     * 判断是否为文件名（而不是包名）
+     * 搜索完成后一次性填充结果列表并更新状态栏
      */
-    private boolean isFileName(String name) {
-        // 包含文件扩展名的肯定是文件
-        if (name.contains(".") && (name.endsWith(".xml") || name.endsWith(".yml") || name.endsWith(".yaml") || 
-            name.endsWith(".properties") || name.endsWith(".json") || name.endsWith(".gradle") || 
-            name.endsWith(".md") || name.endsWith(".txt") || name.endsWith(".gitignore") || 
-            name.endsWith(".java") || name.endsWith(".kt") || name.endsWith(".js") || name.endsWith(".ts"))) {
-            return true;
-        }
-        
-        // 特殊文件名（无扩展名）
-        if (name.equals(".gitignore") || name.equals("Dockerfile") || name.equals("Jenkinsfile") || 
-            name.equals("Makefile") || name.equals("README")) {
-            return true;
+    private void showResults(@NotNull ProgressIndicator indicator, @NotNull String keyword, @NotNull AnnotationSearchIndex.Results results) {
+        if (indicator != currentSearch || indicator.isCanceled()) {
+            return;
         }
+        currentSearch = null;
+        stopProgress();
         
-        // 包含多个点的通常是包名（如 org.springframework.boot）
-        if (name.contains(".") && name.split("\\.").length > 2) {
-            return false;
+        List<SearchResult> items = new ArrayList<>(results.hits.size());
+        for (AnnotationSearchIndex.Hit hit : results.hits) {
+            items.add(new SearchResult(hit.path, hit.annotation, keyword, hit.layer.label));
         }
+        listModel.clear();
+        listModel.addAll(items);
         
-
-        return false;
-    }
-    
-    /**
-     * 检查文件是否存在于当前项目中
-     */
-    private boolean fileExistsInProject(String relativePath) {
-        try {
-            String fullPath = project.getBasePath() + "/" + relativePath;
-            VirtualFile file = VirtualFileManager.getInstance().findFileByUrl("file://" + fullPath);
-            return file != null && file.exists();
-        } catch (Exception ex) {
-            return false;
+        if (results.matched == 0) {
+            statusLabel.setText(I18nUtils.getText(project, 
+                "未找到与 \"" + keyword + "\" 相关的备注",
+                "No annotations found matching \"" + keyword + "\""));
+        } else if (!results.complete) {
+            statusLabel.setText(I18nUtils.getText(project,
+                "找到至少 " + results.matched + " 个匹配的备注，仅显示最相关的 " + results.hits.size() + " 个",
+                "Found at least " + results.matched + " matching annotations, showing the " + results.hits.size() + " most relevant"));
+        } else if (results.isTruncated()) {
+            statusLabel.setText(I18nUtils.getText(project,
+                "找到 " + results.matched + " 个匹配的备注，仅显示最相关的 " + results.hits.size() + " 个",
+                "Found " + results.matched + " matching annotations, showing the " + results.hits.size() + " most relevant"));
+        } else {
+            statusLabel.setText(I18nUtils.getText(project,
+                "找到 " + results.matched + " 个匹配的备注",
+                "Found " + results.matched + " matching annotations"));
         }
     }
     
     /**
-     * 检查包路径是否存在于项目中
-     * 将包名转换为文件夹路径进行检查，例如：org.springframework.boot -> org/springframework/boot
-     * 性能优化：减少文件系统调用
+     * 取消等待中和正在执行的搜索
      */
-    private boolean packageExistsInProject(String packageName) {
-        if (packageName == null || packageName.isEmpty()) {
-            return false;
+    private void cancelSearch() {
+        if (pendingSearch != null) {
+            pendingSearch.cancel(false);
+            pendingSearch = null;
         }
-        
-        try {
-            // 将包名转换为路径格式
-            String packagePath = packageName.replace(".", "/");
-            String projectBasePath = project.getBasePath();
-            if (projectBasePath == null) {
-                return false;
-            }
-            
-            // 检查常见的源码目录下是否存在该包路径（按概率排序）
-            String[] basePaths = {
-                "src/main/java/" + packagePath,  // 最常见
-                "src/" + packagePath,            // 简化结构
-                "src/test/java/" + packagePath,
-                packagePath                      // 根目录
-            };
-            
-            VirtualFileManager vfm = VirtualFileManager.getInstance();
-            for (String basePath : basePaths) {
-                VirtualFile file = vfm.findFileByUrl("file://" + projectBasePath + "/" + basePath);
-                if (file != null && file.exists() && file.isDirectory()) {
-                    return true;
-                }
-            }
-            
-            return false;
-        } catch (Exception ex) {
-            return false;
+        if (currentSearch != null) {
+            currentSearch.cancel();
+            currentSearch = null;
         }
+        stopProgress();
     }
     
-    /**
-     * 在项目中递归搜索文件
-     */
-    private boolean searchFileInProject(VirtualFile directory, String fileName) {
-        if (directory == null || !directory.isDirectory()) {
-            return false;
-        }
-        
-        try {
-            for (VirtualFile child : directory.getChildren()) {
-                if (child.getName().equals(fileName)) {
-                    return true;
-                }
-                if (child.isDirectory() && searchFileInProject(child, fileName)) {
-                    return true;
-                }
-            }
-        } catch (Exception ex) {
-            // 忽略异常，继续搜索
-        }
-        
-        return false;
-    }
-    
-    /**
-     * 在项目中搜索文件并返回完整的相对路径
-     */
-    private String findFileInProject(String fileName) {
-        try {
-            // 首先检查根目录
-            String rootPath = fileName;
-            if (fileExistsInProject(rootPath)) {
-                return rootPath;
-            }
-            
-            // 递归搜索整个项目，返回第一个匹配的相对路径
-            String projectPath = project.getBasePath();
-            if (projectPath == null) return null;
-            VirtualFile projectRoot = VirtualFileManager.getInstance().findFileByUrl("file://" + projectPath);
-            if (projectRoot == null) return null;
-            return searchFilePathInProject(projectRoot, fileName, "");
-        } catch (Exception ex) {
-            return null;
+    private void stopProgress() {
+        if (searchProgress != null) {
+            searchProgress.suspend();
+            searchProgress.setVisible(false);
         }
     }
     
     /**
-     * 在项目中搜索所有匹配的文件并返回完整的相对路径列表
+     * 索引重建完成后，对话框仍打开时重新执行当前搜索
      */
-    private List<String> findAllFilesInProject(String fileName) {
-        Set<String> allPaths = new LinkedHashSet<>();
-        try {
-            String projectPath = project.getBasePath();
-            if (projectPath == null) return new ArrayList<>();
-            VirtualFile projectRoot = VirtualFileManager.getInstance().findFileByUrl("file://" + projectPath);
-            if (projectRoot == null) return new ArrayList<>();
-            searchAllFilePathsInProject(projectRoot, fileName, "", allPaths);
-        } catch (Exception ex) {
-            // 静默处理异常
+    private void researchIfShowing() {
+        if (!isDisposed()) {
+            scheduleSearch();
         }
-        return new ArrayList<>(allPaths);
     }
     
-    /**
-     * 递归搜索文件并返回相对路径
-     */
-    private String searchFilePathInProject(VirtualFile directory, String fileName, String currentPath) {
-        if (directory == null || !directory.isDirectory()) {
-            return null;
-        }
-        
-        try {
-            for (VirtualFile child : directory.getChildren()) {
-                String childPath = currentPath.isEmpty() ? child.getName() : currentPath + "/" + child.getName();
-                
-                if (child.getName().equals(fileName)) {
-                    return childPath;
-                }
-                
-                if (child.isDirectory()) {
-                    String result = searchFilePathInProject(child, fileName, childPath);
-                    if (result != null) {
-                        return result;
-                    }
-                }
-            }
-        } catch (Exception ex) {
-            // 忽略异常，继续搜索
-        }
-        
-        return null;
-    }
-    
-    /**
-     * 递归搜索所有匹配的文件并收集路径
-     */
-    private void searchAllFilePathsInProject(VirtualFile directory, String fileName, String currentPath, Set<String> results) {
-        if (directory == null || !directory.isDirectory()) {
-            return;
-        }
-        
-        try {
-            for (VirtualFile child : directory.getChildren()) {
-                String childPath = currentPath.isEmpty() ? child.getName() : currentPath + "/" + child.getName();
-                
-                if (child.getName().equals(fileName)) {
-                    results.add(childPath);
-                }
-                
-                if (child.isDirectory()) {
-                    searchAllFilePathsInProject(child, fileName, childPath, results);
-                }
-            }
-        } catch (Exception ex) {
-            // 静默处理异常
+    @Override
+    protected void dispose() {
+        cancelSearch();
+        if (searchProgress != null) {
+            Disposer.dispose(searchProgress);
         }
+        super.dispose();
     }
     
     private void navigateToSelectedFile() {
@@ -0,0 +1,92 @@
+package com.github.annotations.utils;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.Color;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 备注字体颜色解析工具类
+ * 同一颜色字符串只解析一次；无法解析的颜色记录一次警告，由调用方使用默认颜色
+ * 不依赖 UI 组件，服务层在发布新数据时预先解析，装饰器在绘制时复用解析结果
+ */
+public final class AnnotationColors {
+
+    private static final Logger LOG = Logger.getInstance(AnnotationColors.class);
+
+    // 缓存上限，超出后整体清空（实际使用的颜色通常只有几种）
+    private static final int MAX_ENTRIES = 256;
+
+    // 颜色字符串 -> 解析结果，无效颜色为空
+    private static final Map<String, Optional<Color>> CACHE = new ConcurrentHashMap<>();
+    // 已报告过的无效颜色，避免重复警告
+    private static final Set<String> REPORTED_INVALID = ConcurrentHashMap.newKeySet();
+
+    private AnnotationColors() {
+    }
+
+    /**
+     * 解析 #RRGGBB 格式的颜色，颜色为空或无效时返回null
+     */
+    @Nullable
+    public static Color parse(@Nullable String colorHex) {
+        return parse(colorHex, null);
+    }
+
+    /**
+     * 预先解析一组字体颜色（路径 -> 颜色），无效颜色在此时按路径报告
+     */
+    public static void prewarm(@NotNull Map<String, String> textColors) {
+        for (Map.Entry<String, String> entry : textColors.entrySet()) {
+            parse(entry.getValue(), entry.getKey());
+        }
+    }
+
+    /**
+     * 预先解析单个字体颜色
+     */
+    public static void prewarm(@NotNull String path, @Nullable String colorHex) {
+        parse(colorHex, path);
+    }
+
+    @Nullable
+    private static Color parse(@Nullable String colorHex, @Nullable String path) {
+        if (colorHex == null) {
+            return null;
+        }
+        Optional<Color> cached = CACHE.get(colorHex);
+        if (cached != null) {
+            return cached.orElse(null);
+        }
+        String trimmed = colorHex.trim();
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+
+        Color color;
+        try {
+            color = Color.decode(trimmed);
+        } catch (NumberFormatException e) {
+            reportInvalid(colorHex, path);
+            color = null;
+        }
+
+        if (CACHE.size() >= MAX_ENTRIES) {
+            CACHE.clear();
+        }
+        CACHE.putIfAbsent(colorHex, Optional.ofNullable(color));
+        return color;
+    }
+
+    private static void reportInvalid(@NotNull String colorHex, @Nullable String path) {
+        if (REPORTED_INVALID.size() < MAX_ENTRIES && REPORTED_INVALID.add(colorHex)) {
+            LOG.warn("无效的备注颜色 \"" + colorHex + "\"" + (path != null ? "（" + path + "）" : "")
+                + "，已使用默认颜色，请使用 #RRGGBB 格式");
+        }
+    }
+}
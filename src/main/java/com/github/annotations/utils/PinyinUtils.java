@@ -0,0 +1,103 @@
+package com.github.annotations.utils;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.Charset;
+
+/**
+ * 拼音首字母工具类
+ * 不引入拼音库：GB2312 一级汉字（3755 个常用字）按拼音排序，可由 GB2312 编码区间推出声母首字母；
+ * 二级汉字和繁体字无法推出，直接跳过
+ */
+public class PinyinUtils {
+
+    private static final char FIRST_HAN = '一';
+    private static final char LAST_HAN = '龥';
+
+    // GB2312 一级汉字中各首字母的起始编码，最后一项为一级汉字的结束位置
+    private static final int[] GB2312_BOUNDARIES = {
+        0xB0A1, 0xB0C5, 0xB2C1, 0xB4EE, 0xB6EA, 0xB7A2, 0xB8C1, 0xB9FE, 0xBBF7,
+        0xBFA6, 0xC0AC, 0xC2E8, 0xC4C3, 0xC5B6, 0xC5BE, 0xC6DA, 0xC8BB, 0xC8F6,
+        0xCBFA, 0xCDDA, 0xCEF4, 0xD1B9, 0xD4D1, 0xD7FA
+    };
+    private static final char[] GB2312_INITIALS = "abcdefghjklmnopqrstwxyz".toCharArray();
+
+    private PinyinUtils() {
+    }
+
+    /**
+     * 汉字的拼音首字母（小写），无法确定时返回 0
+     */
+    public static char initialOf(char ch) {
+        if (ch < FIRST_HAN || ch > LAST_HAN) {
+            return 0;
+        }
+        return Holder.TABLE[ch - FIRST_HAN];
+    }
+
+    /**
+     * 文本的拼音首字母串：汉字取拼音首字母，字母和数字转为小写保留，其余字符忽略
+     * 例如 "数据库配置" -> "sjkpz"；文本中没有可识别的汉字时返回null
+     */
+    @Nullable
+    public static String initials(@NotNull String text) {
+        StringBuilder builder = null;
+        for (int i = 0; i < text.length(); i++) {
+            char initial = initialOf(text.charAt(i));
+            if (initial != 0) {
+                if (builder == null) {
+                    builder = new StringBuilder(text.length());
+                    appendLettersAndDigits(builder, text, i);
+                }
+                builder.append(initial);
+            } else if (builder != null && Character.isLetterOrDigit(text.charAt(i))) {
+                builder.append(Character.toLowerCase(text.charAt(i)));
+            }
+        }
+        return builder != null ? builder.toString() : null;
+    }
+
+    private static void appendLettersAndDigits(@NotNull StringBuilder builder, @NotNull String text, int end) {
+        for (int i = 0; i < end; i++) {
+            char ch = text.charAt(i);
+            if (Character.isLetterOrDigit(ch)) {
+                builder.append(Character.toLowerCase(ch));
+            }
+        }
+    }
+
+    /**
+     * 首次使用时一次性建立 汉字 -> 首字母 的查找表
+     */
+    private static final class Holder {
+        static final char[] TABLE = buildTable();
+
+        private static char[] buildTable() {
+            char[] table = new char[LAST_HAN - FIRST_HAN + 1];
+            if (!Charset.isSupported("GB2312")) {
+                return table;
+            }
+            Charset gb2312 = Charset.forName("GB2312");
+            for (char ch = FIRST_HAN; ch <= LAST_HAN; ch++) {
+                byte[] bytes = String.valueOf(ch).getBytes(gb2312);
+                if (bytes.length == 2) {
+                    table[ch - FIRST_HAN] = lookup(((bytes[0] & 0xFF) << 8) | (bytes[1] & 0xFF));
+                }
+            }
+            return table;
+        }
+
+        private static char lookup(int code) {
+            if (code < GB2312_BOUNDARIES[0] || code >= GB2312_BOUNDARIES[GB2312_BOUNDARIES.length - 1]) {
+                return 0;
+            }
+            for (int i = GB2312_INITIALS.length - 1; i >= 0; i--) {
+                if (code >= GB2312_BOUNDARIES[i]) {
+                    return GB2312_INITIALS[i];
+                }
+            }
+            return 0;
+        }
+    }
+}
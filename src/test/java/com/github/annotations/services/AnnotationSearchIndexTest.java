@@ -0,0 +1,212 @@
+package com.github.annotations.services;
+
+import com.github.annotations.services.AnnotationSearchIndex.Hit;
+import com.github.annotations.services.AnnotationSearchIndex.Index;
+import com.github.annotations.services.AnnotationSearchIndex.Layer;
+import com.github.annotations.services.AnnotationSearchIndex.Query;
+import com.github.annotations.services.AnnotationSearchIndex.Results;
+import com.github.annotations.services.AnnotationSearchIndex.Rule;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * 搜索索引测试：与逐条打分的暴力实现比较结果，并覆盖拼音首字母、拼写纠错和同路径去重
+ * 搜索过程会检查取消状态，需要平台环境
+ */
+public class AnnotationSearchIndexTest extends BasePlatformTestCase {
+
+    private static final String[] WORDS = {"spring", "boot", "config", "配置", "数据库", "项目", "视图", "刷新", "服务",
+        "gradle", "maven", "build", "script", "test", "util", "service", "project", "view", "refresh", "main", "resource"};
+    private static final String[] NAMES = {"Project", "View", "Refresh", "Service", "Config", "App", "Main", "Util",
+        "Build", "Test", "Data", "Base", "pom", "gradle", "Spring", "Boot"};
+    private static final String[] EXTENSIONS = {".java", ".xml", ".yml", ".kt", "", ".gradle"};
+    private static final String[] DIRECTORIES = {"src", "main", "java", "com", "x", "resources", "test", "sub", "app",
+        "config", "util"};
+    private static final String[] QUERIES = {"p", "pvrs", "sjk", "xmpz", "configuraton", "projct", "pom", "refresh",
+        "gradle", "prjview", "配置", "sbc", "main/java", "java/proj", "/pom", "x/", "src/main/java/com", "servce",
+        "projectviewrefresh", "a", "-", "spring boot", "resources/app", "ut", "bs", "刷新服务", "pvs", "mn"};
+
+    private static final Comparator<Hit> BY_RELEVANCE = Comparator.<Hit>comparingInt(hit -> -hit.score)
+        .thenComparing(hit -> hit.layer)
+        .thenComparing(hit -> hit.path, String.CASE_INSENSITIVE_ORDER);
+
+    public void testPinyinInitialsMatchAnnotation() {
+        Index index = index(
+            new Rule(Layer.USER_FILE, "数据库配置", new String[]{"src/db.yml"}),
+            new Rule(Layer.USER_FILE, "项目视图", new String[]{"src/view.xml"}));
+
+        Results results = index.search("sjkpz", 10);
+        assertEquals(1, results.matched);
+        assertEquals("src/db.yml", results.hits.get(0).path);
+    }
+
+    public void testTypoMatchesFileName() {
+        Index index = index(new Rule(Layer.USER_FILE, "入口", new String[]{"src/Project.java"}));
+
+        Results results = index.search("projct", 10);
+        assertEquals(1, results.hits.size());
+        assertEquals("src/Project.java", results.hits.get(0).path);
+    }
+
+    public void testSamePathKeepsBestScore() {
+        // 用户规则只有路径匹配，内置规则的备注完全匹配，同一路径保留得分更高的内置规则
+        Index index = index(
+            new Rule(Layer.USER_FILE, "构建脚本", new String[]{"build.gradle"}),
+            new Rule(Layer.BUILTIN_FILE, "gradle", new String[]{"build.gradle", "settings.txt"}));
+
+        Results results = index.search("gradle", 10);
+        assertEquals(2, results.matched);
+        assertEquals(2, results.hits.size());
+        for (Hit hit : results.hits) {
+            assertEquals("gradle", hit.annotation);
+            assertEquals(Layer.BUILTIN_FILE, hit.layer);
+        }
+    }
+
+    public void testSameScoreKeepsHigherPriorityLayer() {
+        Index index = index(
+            new Rule(Layer.USER_FILE, "构建脚本", new String[]{"build.gradle"}),
+            new Rule(Layer.BUILTIN_FILE, "构建脚本", new String[]{"build.gradle"}));
+
+        Results results = index.search("构建", 10);
+        assertEquals(1, results.hits.size());
+        assertEquals(Layer.USER_FILE, results.hits.get(0).layer);
+    }
+
+    public void testMatchesBruteForce() {
+        Random random = new Random(7);
+        for (int round = 0; round < 30; round++) {
+            Rule[] rules = randomRules(random);
+            Index index = index(rules);
+            List<String> queries = new ArrayList<>(Arrays.asList(QUERIES));
+            for (int i = 0; i < 20; i++) {
+                queries.add(randomQuery(random));
+            }
+            for (String query : queries) {
+                List<Hit> expected = bruteForce(rules, query);
+                for (int limit : new int[]{3, 10, 1000}) {
+                    Results results = index.search(query, limit);
+                    String message = "query=" + query + ", limit=" + limit;
+                    assertEquals(message, describe(expected.subList(0, Math.min(limit, expected.size()))),
+                        describe(results.hits));
+                    if (results.complete) {
+                        assertEquals(message, expected.size(), results.matched);
+                    } else {
+                        assertTrue(message, results.matched <= expected.size());
+                    }
+                }
+            }
+        }
+    }
+
+    private static Index index(Rule... rules) {
+        return new Index(0L, 0L, rules);
+    }
+
+    /**
+     * 逐条为所有（规则，路径）打分，每个路径保留得分最高的一条，同分时保留优先级高的规则
+     */
+    private static List<Hit> bruteForce(Rule[] rules, String keyword) {
+        Query query = new Query(keyword);
+        if (query.text.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<String, Hit> best = new LinkedHashMap<>();
+        for (Rule rule : rules) {
+            int annotationScore = query.scoreAnnotation(rule, true);
+            for (int i = 0; i < rule.paths.length; i++) {
+                int pathScore = query.scorePath(rule, i);
+                if (annotationScore == 0 && pathScore == 0) {
+                    continue;
+                }
+                int score = Math.max(annotationScore, pathScore) + Math.min(annotationScore, pathScore) / 10;
+                Hit previous = best.get(rule.paths[i]);
+                if (previous == null || score > previous.score) {
+                    best.put(rule.paths[i], new Hit(rule.paths[i], rule.annotation, rule.layer, score));
+                }
+            }
+        }
+        List<Hit> hits = new ArrayList<>(best.values());
+        hits.sort(BY_RELEVANCE);
+        return hits;
+    }
+
+    /**
+     * 随机规则，约三分之一的路径与之前的规则共用；规则按来源层排列
+     */
+    private static Rule[] randomRules(Random random) {
+        int count = 5 + random.nextInt(120);
+        List<String> usedPaths = new ArrayList<>();
+        List<Rule> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder annotation = new StringBuilder();
+            int words = 1 + random.nextInt(4);
+            for (int w = 0; w < words; w++) {
+                if (w > 0 && random.nextBoolean()) {
+                    annotation.append(' ');
+                }
+                annotation.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            Set<String> paths = new LinkedHashSet<>();
+            int pathCount = 1 + random.nextInt(4);
+            for (int p = 0; p < pathCount; p++) {
+                if (!usedPaths.isEmpty() && random.nextInt(3) == 0) {
+                    paths.add(usedPaths.get(random.nextInt(usedPaths.size())));
+                } else {
+                    String path = randomPath(random);
+                    usedPaths.add(path);
+                    paths.add(path);
+                }
+            }
+            Layer layer = Layer.values()[random.nextInt(Layer.values().length)];
+            rules.add(new Rule(layer, annotation.toString(), paths.toArray(new String[0])));
+        }
+        rules.sort(Comparator.comparing(rule -> rule.layer));
+        return rules.toArray(new Rule[0]);
+    }
+
+    private static String randomPath(Random random) {
+        StringBuilder path = new StringBuilder();
+        int depth = random.nextInt(5);
+        for (int d = 0; d < depth; d++) {
+            path.append(DIRECTORIES[random.nextInt(DIRECTORIES.length)]).append('/');
+        }
+        int parts = 1 + random.nextInt(3);
+        for (int k = 0; k < parts; k++) {
+            path.append(NAMES[random.nextInt(NAMES.length)]);
+        }
+        return path.append(EXTENSIONS[random.nextInt(EXTENSIONS.length)]).toString();
+    }
+
+    /**
+     * 单词片段，三分之一的概率替换一个字符制造拼写错误
+     */
+    private static String randomQuery(Random random) {
+        String base = WORDS[random.nextInt(WORDS.length)] + NAMES[random.nextInt(NAMES.length)];
+        int start = random.nextInt(base.length());
+        int end = Math.min(base.length(), start + 1 + random.nextInt(9));
+        String query = base.substring(start, end).toLowerCase();
+        if (random.nextInt(3) == 0 && query.length() > 3) {
+            int k = random.nextInt(query.length());
+            query = query.substring(0, k) + "z" + query.substring(k + 1);
+        }
+        return query;
+    }
+
+    private static List<String> describe(List<Hit> hits) {
+        List<String> result = new ArrayList<>(hits.size());
+        for (Hit hit : hits) {
+            result.add(hit.path + "|" + hit.annotation + "|" + hit.layer + "=" + hit.score);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,164 @@
+package com.github.annotations.services;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PathTrieMapTest {
+
+    private static final String[] SEGMENTS = {"", "a", "b", "src", "main", "x.java"};
+
+    @Test
+    public void iteratesInInsertionOrder() {
+        PathTrieMap map = new PathTrieMap();
+        map.put("src/main/B.java", "b");
+        map.put("src", "src");
+        map.put("src/main/A.java", "a");
+        map.put("", "root");
+        // 替换已有键的值不改变其位置
+        map.put("src", "source");
+
+        assertEquals(List.of("src/main/B.java", "src", "src/main/A.java", ""), new ArrayList<>(map.keySet()));
+        assertEquals("source", map.get("src"));
+    }
+
+    @Test
+    public void removedKeyMovesToEndWhenReinserted() {
+        PathTrieMap map = new PathTrieMap();
+        map.put("a", "1");
+        map.put("b", "2");
+        map.remove("a");
+        map.put("a", "3");
+
+        assertEquals(List.of("b", "a"), new ArrayList<>(map.keySet()));
+    }
+
+    @Test
+    public void copyIsIsolatedFromLaterChanges() {
+        PathTrieMap original = new PathTrieMap();
+        original.put("src/main/A.java", "a");
+        original.put("src/main/B.java", "b");
+        PathTrieMap copy = original.copy();
+
+        copy.put("src/main/A.java", "changed");
+        copy.remove("src/main/B.java");
+        copy.put("src/test/C.java", "c");
+        original.put("src/main/D.java", "d");
+
+        assertEquals("a", original.get("src/main/A.java"));
+        assertEquals("b", original.get("src/main/B.java"));
+        assertNull(original.get("src/test/C.java"));
+        assertEquals(3, original.size());
+
+        assertEquals("changed", copy.get("src/main/A.java"));
+        assertFalse(copy.containsKey("src/main/B.java"));
+        assertNull(copy.get("src/main/D.java"));
+        assertEquals(List.of("src/main/A.java", "src/test/C.java"), new ArrayList<>(copy.keySet()));
+    }
+
+    @Test
+    public void iteratorRemoveDeletesCurrentEntry() {
+        PathTrieMap map = new PathTrieMap();
+        map.put("a", "1");
+        map.put("a/b", "2");
+        map.put("c", "3");
+
+        Iterator<Map.Entry<String, String>> iterator = map.entrySet().iterator();
+        iterator.next();
+        iterator.remove();
+
+        assertEquals(List.of("a/b", "c"), new ArrayList<>(map.keySet()));
+        assertEquals("2", map.get("a/b"));
+        assertTrue(iterator.hasNext());
+    }
+
+    @Test
+    public void behavesLikeLinkedHashMap() {
+        Random random = new Random(1);
+        PathTrieMap map = new PathTrieMap();
+        Map<String, String> expected = new LinkedHashMap<>();
+        for (int i = 0; i < 50000; i++) {
+            String key = randomKey(random);
+            if (random.nextInt(3) < 2) {
+                String value = random.nextInt(5) == 0 ? null : String.valueOf(i);
+                assertEquals(key, expected.put(key, value), map.put(key, value));
+            } else {
+                assertEquals(key, expected.remove(key), map.remove(key));
+            }
+            if (i % 500 == 0) {
+                assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(map.entrySet()));
+                assertEquals(expected, map);
+                // 迭代中随机删除
+                Iterator<Map.Entry<String, String>> actual = map.entrySet().iterator();
+                Iterator<Map.Entry<String, String>> reference = expected.entrySet().iterator();
+                while (actual.hasNext()) {
+                    actual.next();
+                    reference.next();
+                    if (random.nextInt(10) == 0) {
+                        actual.remove();
+                        reference.remove();
+                    }
+                }
+            }
+        }
+        assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(map.entrySet()));
+    }
+
+    @Test
+    public void copiesKeepTheirOwnContentsAndOrder() {
+        Random random = new Random(7);
+        List<PathTrieMap> versions = new ArrayList<>();
+        List<Map<String, String>> expectedVersions = new ArrayList<>();
+        PathTrieMap map = new PathTrieMap();
+        Map<String, String> expected = new LinkedHashMap<>();
+        for (int i = 0; i < 30000; i++) {
+            String key = randomKey(random);
+            if (random.nextInt(3) < 2) {
+                String value = String.valueOf(i);
+                assertTrue(Objects.equals(expected.put(key, value), map.put(key, value)));
+            } else {
+                assertTrue(Objects.equals(expected.remove(key), map.remove(key)));
+            }
+            if (i % 97 == 0) {
+                // 生成有序条目缓存，确认修改后不会被复用
+                new ArrayList<>(map.entrySet());
+            }
+            if (i % 2500 == 0) {
+                versions.add(map);
+                expectedVersions.add(expected);
+                map = map.copy();
+                expected = new LinkedHashMap<>(expected);
+            }
+        }
+        versions.add(map);
+        expectedVersions.add(expected);
+
+        for (int v = 0; v < versions.size(); v++) {
+            assertEquals("version " + v, new ArrayList<>(expectedVersions.get(v).entrySet()),
+                new ArrayList<>(versions.get(v).entrySet()));
+        }
+    }
+
+    private static String randomKey(Random random) {
+        int depth = random.nextInt(4);
+        StringBuilder key = new StringBuilder();
+        for (int j = 0; j < depth; j++) {
+            if (j > 0) {
+                key.append('/');
+            }
+            key.append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+        }
+        return key.toString();
+    }
+}
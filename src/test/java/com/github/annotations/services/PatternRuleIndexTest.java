@@ -0,0 +1,115 @@
+package com.github.annotations.services;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PatternRuleIndexTest {
+
+    @Test
+    public void userFileRulesPreferExactKey() {
+        Map<String, String> rules = new LinkedHashMap<>();
+        rules.put(".*\\.xml", "XML 文件");
+        rules.put("pom.xml", "Maven 配置");
+        PatternRuleIndex index = PatternRuleIndex.compileUserFileRules(rules);
+
+        assertEquals("Maven 配置", index.matchFile("pom.xml", null));
+        assertEquals("XML 文件", index.matchFile("web.xml", null));
+    }
+
+    @Test
+    public void libraryFileRulesUseFirstMatchInOrder() {
+        Map<String, String> rules = new LinkedHashMap<>();
+        rules.put(".*\\.xml", "XML 文件");
+        rules.put("pom.xml", "Maven 配置");
+        PatternRuleIndex index = PatternRuleIndex.compileLibraryFileRules(rules);
+
+        assertEquals("XML 文件", index.matchFile("pom.xml", null));
+        Map.Entry<String, String> match = index.matchFileRule("pom.xml", null);
+        assertEquals(".*\\.xml", match.getKey());
+    }
+
+    @Test
+    public void indexedRuleBeforeRegexWins() {
+        Map<String, String> rules = new LinkedHashMap<>();
+        rules.put("pom.xml", "Maven 配置");
+        rules.put(".*\\.xml", "XML 文件");
+        PatternRuleIndex index = PatternRuleIndex.compileLibraryFileRules(rules);
+
+        assertEquals("Maven 配置", index.matchFile("POM.XML", null));
+        assertEquals("XML 文件", index.matchFile("web.xml", null));
+    }
+
+    @Test
+    public void mixedRuleChecksParentDirectory() {
+        Map<String, String> rules = new LinkedHashMap<>();
+        rules.put("com/common/pom.xml", "公共模块配置");
+        rules.put(".*\\.xml", "XML 文件");
+        PatternRuleIndex index = PatternRuleIndex.compileUserFileRules(rules);
+
+        assertEquals("公共模块配置", index.matchFile("pom.xml", "app/com/common/pom.xml"));
+        assertEquals("XML 文件", index.matchFile("pom.xml", "app/other/pom.xml"));
+        // 没有路径信息时只比较文件名（忽略大小写）
+        assertEquals("公共模块配置", index.matchFile("Pom.xml", null));
+    }
+
+    @Test
+    public void invalidRegexFallsBackToContains() {
+        Map<String, String> rules = new LinkedHashMap<>();
+        rules.put("[.*", "非法正则");
+        PatternRuleIndex index = PatternRuleIndex.compileLibraryFileRules(rules);
+
+        assertEquals("非法正则", index.matchFile("A[.*B.txt", null));
+        assertNull(index.matchFile("plain.txt", null));
+    }
+
+    @Test
+    public void packageRulesFollowOrderAndSegments() {
+        Map<String, String> rules = new LinkedHashMap<>();
+        rules.put("service", "服务层");
+        rules.put("com.example.service", "示例服务");
+        PatternRuleIndex index = PatternRuleIndex.compileUserPackageRules(rules);
+
+        assertEquals("服务层", index.matchPackage("com/example/service"));
+        assertEquals("服务层", index.matchPackage("org.other.service"));
+        assertNull(index.matchPackage("com.example.service.impl"));
+
+        Map<String, String> reversed = new LinkedHashMap<>();
+        reversed.put("com.example.service", "示例服务");
+        reversed.put("service", "服务层");
+        PatternRuleIndex reversedIndex = PatternRuleIndex.compileUserPackageRules(reversed);
+
+        assertEquals("示例服务", reversedIndex.matchPackage("com/example/service"));
+        assertEquals("服务层", reversedIndex.matchPackage("org.other.service"));
+    }
+
+    @Test
+    public void userRulesSkipBlankAnnotations() {
+        Map<String, String> rules = new LinkedHashMap<>();
+        rules.put(".*\\.yml", " ");
+        rules.put("application.yml", "应用配置");
+        PatternRuleIndex index = PatternRuleIndex.compileLibraryFileRules(rules);
+        PatternRuleIndex userIndex = PatternRuleIndex.compileUserFileRules(rules);
+
+        assertEquals(" ", index.matchFile("application.yml", null));
+        assertEquals("应用配置", userIndex.matchFile("application.yml", null));
+        assertNull(userIndex.matchFile("other.yml", null));
+    }
+
+    @Test
+    public void fileAndPackageIndexesDoNotCross() {
+        Map<String, String> rules = new LinkedHashMap<>();
+        rules.put("service", "服务层");
+        PatternRuleIndex packageIndex = PatternRuleIndex.compileUserPackageRules(rules);
+        PatternRuleIndex fileIndex = PatternRuleIndex.compileUserFileRules(rules);
+
+        assertNull(packageIndex.matchFile("service", null));
+        assertNull(fileIndex.matchPackage("service"));
+        assertTrue(PatternRuleIndex.empty().isEmpty());
+    }
+}
@@ -0,0 +1,34 @@
+package com.github.annotations.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PinyinUtilsTest {
+
+    @Test
+    public void initialsOfCommonCharacters() {
+        assertEquals("sjkpz", PinyinUtils.initials("数据库配置"));
+        assertEquals("xmst", PinyinUtils.initials("项目视图"));
+    }
+
+    @Test
+    public void keepsLettersAndDigitsInLowerCase() {
+        assertEquals("springpz", PinyinUtils.initials("Spring 配置"));
+        assertEquals("v2fw", PinyinUtils.initials("V2-服务"));
+    }
+
+    @Test
+    public void returnsNullWithoutChineseCharacters() {
+        assertNull(PinyinUtils.initials("Spring Boot"));
+        assertNull(PinyinUtils.initials(""));
+    }
+
+    @Test
+    public void initialOfNonChineseIsZero() {
+        assertEquals('s', PinyinUtils.initialOf('数'));
+        assertEquals(0, PinyinUtils.initialOf('a'));
+        assertEquals(0, PinyinUtils.initialOf('1'));
+    }
+}